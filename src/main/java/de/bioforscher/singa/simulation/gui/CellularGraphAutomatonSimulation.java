@@ -7,7 +7,15 @@ import de.bioforscher.singa.simulation.gui.components.controlpanles.PlotControlP
 import de.bioforscher.singa.simulation.gui.components.panes.PlotPreferencesPane;
 import de.bioforscher.singa.simulation.gui.components.panes.ResizablePane;
 import de.bioforscher.singa.simulation.gui.components.panes.SimulationCanvas;
+import de.bioforscher.singa.simulation.gui.components.panes.SimulationPreferencesPane;
+import de.bioforscher.singa.simulation.gui.components.panes.SimulationStatusBar;
+import de.bioforscher.singa.simulation.gui.components.panes.SmallMultiplesPane;
 import de.bioforscher.singa.simulation.gui.components.panes.SpeciesOverviewPane;
+import de.bioforscher.singa.simulation.gui.components.panes.TimelinePane;
+import de.bioforscher.singa.simulation.gui.execution.RunMode;
+import de.bioforscher.singa.simulation.gui.recording.FrameEncoder;
+import de.bioforscher.singa.simulation.gui.recording.FrameRecorder;
+import de.bioforscher.singa.simulation.gui.snapshots.SnapshotRecorder;
 import de.bioforscher.singa.simulation.gui.wizards.AddSpeciesWizard;
 import de.bioforscher.singa.simulation.gui.wizards.NewGraphWizard;
 import de.bioforscher.singa.simulation.gui.wizards.NewReactionWizard;
@@ -17,6 +25,8 @@ import de.bioforscher.singa.simulation.modules.model.SimulationExamples;
 import de.bioforscher.singa.simulation.parser.graphs.GraphMLExportService;
 import de.bioforscher.singa.simulation.parser.graphs.GraphMLParserService;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
 import javafx.event.ActionEvent;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -27,7 +37,6 @@ import javafx.scene.input.KeyCombination;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.VBox;
-import javafx.scene.text.Text;
 import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
@@ -36,7 +45,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import tec.units.ri.quantity.Quantities;
 
+import javax.measure.Unit;
+import javax.measure.quantity.Time;
 import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static tec.units.ri.unit.MetricPrefix.NANO;
 import static tec.units.ri.unit.Units.SECOND;
@@ -45,6 +61,9 @@ public class CellularGraphAutomatonSimulation extends Application {
 
     private static final Logger logger = LoggerFactory.getLogger(CellularGraphAutomatonSimulation.class);
 
+    private static final String CHECKPOINT_EXTENSION = "ckpt";
+    private static final long RECORDING_COMPLETION_SECONDS = 10;
+
     private Stage stage;
 
     private SimulationCanvas simulationCanvas;
@@ -52,9 +71,15 @@ public class CellularGraphAutomatonSimulation extends Application {
 
     private CompartmentControlPanel compartmentControlPanel;
     private Slider concentrationSlider;
+    private CheckMenuItem mIPeriodicCheckpoints;
+    private CheckMenuItem mIRecordCanvas;
+    private FrameRecorder frameRecorder;
 
     public static Simulation simulation;
-    private SimulationManager simulationManager = new SimulationManager(simulation);
+    private SimulationManager simulationManager;
+    private SnapshotRecorder snapshotRecorder;
+    private TimelinePane timelinePane;
+    private SmallMultiplesPane smallMultiplesPane;
 
     public static void main(String[] args) {
         logger.info("Started simulation GUI.");
@@ -113,8 +138,25 @@ public class CellularGraphAutomatonSimulation extends Application {
         mIAddReaction.setAccelerator(new KeyCodeCombination(KeyCode.R, KeyCombination.CONTROL_DOWN, KeyCombination.ALT_DOWN));
         mIAddReaction.setOnAction(this::startReactionWizard);
 
-        menuFile.getItems().addAll(mINewGraph, mILoadBioGraph, mISaveGraph, new SeparatorMenuItem(), mIAddSpecies,
-                mIAddReaction);
+        // Checkpoints
+        MenuItem mISaveCheckpoint = new MenuItem("Save Checkpoint ...");
+        mISaveCheckpoint.setAccelerator(new KeyCodeCombination(KeyCode.S, KeyCombination.CONTROL_DOWN, KeyCombination.SHIFT_DOWN));
+        mISaveCheckpoint.setOnAction(this::saveCheckpoint);
+
+        MenuItem mIRestoreCheckpoint = new MenuItem("Restore Checkpoint ...");
+        mIRestoreCheckpoint.setAccelerator(new KeyCodeCombination(KeyCode.O, KeyCombination.CONTROL_DOWN, KeyCombination.SHIFT_DOWN));
+        mIRestoreCheckpoint.setOnAction(this::restoreCheckpoint);
+
+        this.mIPeriodicCheckpoints = new CheckMenuItem("Periodic Checkpoints ...");
+        this.mIPeriodicCheckpoints.setOnAction(this::togglePeriodicCheckpoints);
+
+        // Recording
+        this.mIRecordCanvas = new CheckMenuItem("Record Canvas ...");
+        this.mIRecordCanvas.setOnAction(this::toggleCanvasRecording);
+
+        menuFile.getItems().addAll(mINewGraph, mILoadBioGraph, mISaveGraph, new SeparatorMenuItem(), mISaveCheckpoint,
+                mIRestoreCheckpoint, this.mIPeriodicCheckpoints, this.mIRecordCanvas, new SeparatorMenuItem(),
+                mIAddSpecies, mIAddReaction);
 
         // Edit Menu
         Menu menuEdit = new Menu("Edit");
@@ -140,7 +182,10 @@ public class CellularGraphAutomatonSimulation extends Application {
         mIPlot.setAccelerator(new KeyCodeCombination(KeyCode.P, KeyCombination.ALT_DOWN));
         mIPlot.setOnAction(this::showPlotPreferencesControlPanel);
 
-        menuPreferences.getItems().add(mIPlot);
+        MenuItem mISimulation = new MenuItem("Simulation preferences");
+        mISimulation.setOnAction(this::showSimulationPreferencesControlPanel);
+
+        menuPreferences.getItems().addAll(mIPlot, mISimulation);
         menuBar.getMenus().addAll(menuFile, menuEdit, menuView, menuPreferences);
 
         logger.debug("Initializing graphs tab ...");
@@ -175,6 +220,19 @@ public class CellularGraphAutomatonSimulation extends Application {
         logger.debug("Initializing simulation canvas ...");
         this.simulationCanvas = new SimulationCanvas(this);
         this.simulationCanvas.getRenderer().getRenderingOptions().setNodeDiameter(8);
+        initializeSimulationManager();
+
+        // entities side by side
+        this.smallMultiplesPane = new SmallMultiplesPane(this);
+        this.simulationManager.addEventListener(this.smallMultiplesPane);
+        Tab smallMultiplesTab = new Tab();
+        smallMultiplesTab.setText("Entities");
+        smallMultiplesTab.setClosable(false);
+        smallMultiplesTab.setContent(this.smallMultiplesPane);
+        smallMultiplesTab.selectedProperty().addListener((observable, oldValue, newValue) ->
+                this.smallMultiplesPane.setActive(newValue));
+        rightPane.getTabs().add(smallMultiplesTab);
+
         ResizablePane anchorPane = new ResizablePane(this.simulationCanvas);
         // Simulation Half
         AnchorPane.setTopAnchor(this.simulationCanvas, 0.0);
@@ -198,13 +256,32 @@ public class CellularGraphAutomatonSimulation extends Application {
         btnStop.setOnAction(this::pauseSimulation);
         // rearrange button
         Button btnRearrange = IconProvider.FontAwesome.createIconButton(IconProvider.FontAwesome.ICON_EXCHANGE);
-        btnRearrange.setTooltip(new Tooltip("Starts a rearrangement cycle trying to optimize the graph layout."));
+        btnRearrange.setTooltip(new Tooltip("Starts a rearrangement cycle trying to optimize the graph layout or cancels the running one."));
         btnRearrange.setOnAction(this::arrangeGraph);
+        // step button
+        Button btnStep = IconProvider.FontAwesome.createIconButton(IconProvider.FontAwesome.ICON_STEP_FORWARD);
+        btnStep.setTooltip(new Tooltip("Calculates a single epoch."));
+        btnStep.setOnAction(this::stepSimulation);
+        // run menu
+        MenuButton btnRun = new MenuButton("", IconProvider.FontAwesome.createIconLabel(IconProvider.FontAwesome.ICON_FAST_FORWARD));
+        btnRun.setTooltip(new Tooltip("Calculates a given number of epochs or until a given time."));
+        MenuItem mIRunEpochs = new MenuItem("Run epochs ...");
+        mIRunEpochs.setOnAction(this::runEpochs);
+        MenuItem mIRunUntil = new MenuItem("Run until time ...");
+        mIRunUntil.setOnAction(this::runUntilTime);
+        btnRun.getItems().addAll(mIRunEpochs, mIRunUntil);
         // Concentration slider
         setupConcentrationSlider();
+        // run mode selection
+        ComboBox<RunMode> cbRunMode = new ComboBox<>(FXCollections.observableArrayList(RunMode.values()));
+        cbRunMode.setTooltip(new Tooltip("Visual: smooth updates, Throughput: occasional previews only, " +
+                "Paced: simulated time follows the wall time."));
+        cbRunMode.setValue(this.simulationManager.getRunMode());
+        cbRunMode.setOnAction(event -> updateRunMode(cbRunMode.getValue()));
 
         // Add toolbar components
-        toolBar.getItems().addAll(btnSimulate, btnStop, btnRearrange, this.concentrationSlider);
+        toolBar.getItems().addAll(btnSimulate, btnStop, btnStep, btnRun, cbRunMode, btnRearrange,
+                this.concentrationSlider);
 
         // Add toolbar and menu
         topContainer.getChildren().addAll(menuBar, toolBar);
@@ -214,7 +291,9 @@ public class CellularGraphAutomatonSimulation extends Application {
         root.setCenter(splitPane);
 
         // Anchor to the Bottom
-        root.setBottom(new VBox(new Text(" ")));
+        this.timelinePane = new TimelinePane(this, this.snapshotRecorder);
+        SimulationStatusBar statusBar = new SimulationStatusBar(this.simulationManager, this.simulationCanvas.getRenderer());
+        root.setBottom(new VBox(this.timelinePane, statusBar));
         root.bottomProperty().get().minHeight(10);
         // Scene
         Scene scene = new Scene(root);
@@ -224,32 +303,96 @@ public class CellularGraphAutomatonSimulation extends Application {
         stage.show();
     }
 
+    @Override
+    public void stop() {
+        // complete the file that is recorded, otherwise videos would lack their header
+        FrameRecorder frameRecorder = this.frameRecorder;
+        if (frameRecorder != null) {
+            stopCanvasRecording();
+            try {
+                frameRecorder.stop().get(RECORDING_COMPLETION_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                logger.warn("Could not finish recording.", e);
+            }
+        }
+    }
+
     private void startSimulation(ActionEvent event) {
         logger.debug("Starting simulation ...");
-        if (!this.simulationManager.isRunning()) {
-            initializeSimulationManager();
-            Thread thread = new Thread(this.simulationManager);
-            thread.setDaemon(true);
-            thread.start();
-            this.simulationCanvas.getRenderer().start();
-        }
+        this.simulationManager.runContinuously();
     }
 
     private void pauseSimulation(ActionEvent event) {
         logger.debug("Pausing simulation ...");
-        if (this.simulationManager.isRunning()) {
-            this.simulationManager.cancel();
-            this.simulationCanvas.getRenderer().stop();
-            initializeSimulationManager();
+        this.simulationManager.pause();
+    }
+
+    private void stepSimulation(ActionEvent event) {
+        logger.debug("Calculating single epoch ...");
+        this.simulationManager.step();
+    }
+
+    private void runEpochs(ActionEvent event) {
+        TextInputDialog dialog = new TextInputDialog("100");
+        dialog.setTitle("Run epochs");
+        dialog.setHeaderText(null);
+        dialog.setContentText("Number of epochs:");
+        dialog.showAndWait().ifPresent(value -> {
+            try {
+                this.simulationManager.runEpochs(Long.parseLong(value.trim()));
+            } catch (IllegalArgumentException e) {
+                logger.warn("Could not run {} epochs: {}", value, e.getMessage());
+            }
+        });
+    }
+
+    private void runUntilTime(ActionEvent event) {
+        Unit<Time> unit = simulation.getElapsedTime().getUnit();
+        TextInputDialog dialog = new TextInputDialog(String.valueOf(simulation.getElapsedTime().getValue()));
+        dialog.setTitle("Run until time");
+        dialog.setHeaderText(null);
+        dialog.setContentText("Elapsed time in " + unit + ":");
+        dialog.showAndWait().ifPresent(value -> {
+            try {
+                this.simulationManager.runUntil(Quantities.getQuantity(Double.parseDouble(value.trim()), unit));
+            } catch (NumberFormatException e) {
+                logger.warn("Could not run until {}: {}", value, e.getMessage());
+            }
+        });
+    }
+
+    private void updateRunMode(RunMode runMode) {
+        if (runMode == RunMode.PACED) {
+            this.simulationManager.setPace(new SingaPreferences().preferences.getDouble(SingaPreferences.Simulation.PACE,
+                    SingaPreferences.Simulation.PACE_VALUE));
         }
+        this.simulationManager.setRunMode(runMode);
+    }
+
+    private void updateEmissionRate() {
+        int emissionRate = new SingaPreferences().preferences.getInt(SingaPreferences.Simulation.EMISSION_RATE,
+                SingaPreferences.Simulation.EMISSION_RATE_VALUE);
+        logger.debug("Emitting {} snapshots per second ...", emissionRate);
+        this.simulationManager.getEmissionScheduler().setFramesPerSecond(emissionRate);
     }
 
     private void initializeSimulationManager() {
         this.simulationManager = new SimulationManager(simulation);
         this.simulationManager.addEventListener(this.simulationCanvas.getRenderer());
+        this.simulationCanvas.getRenderer().setMetrics(this.simulationManager.getMetrics());
+        this.snapshotRecorder = new SnapshotRecorder(simulation, this.simulationManager.getMetrics());
+        this.simulationManager.addEventListener(this.snapshotRecorder);
+        this.simulationCanvas.getRenderer().setFrameConsumedHandler(this.simulationManager.getEmissionScheduler()::frameConsumed);
+        updateEmissionRate();
+        this.simulationCanvas.getRenderer().start();
     }
 
     private void arrangeGraph(ActionEvent event) {
+        if (this.simulationCanvas.getRenderer().isArranging()) {
+            logger.debug("Cancelling rearrangement cycle ...");
+            this.simulationCanvas.getRenderer().cancelArrangement();
+            return;
+        }
         logger.debug("Starting rearrangement cycle ...");
         this.simulationCanvas.getRenderer().arrangeGraph(simulation.getGraph());
     }
@@ -277,6 +420,7 @@ public class CellularGraphAutomatonSimulation extends Application {
                 simulation.getChemicalEntities().add(species);
                 this.simulationCanvas.resetGraphContextMenu();
             });
+            this.smallMultiplesPane.refreshEntities();
         }
     }
 
@@ -321,6 +465,16 @@ public class CellularGraphAutomatonSimulation extends Application {
         plotPreferencesStage.showAndWait();
     }
 
+    private void showSimulationPreferencesControlPanel(ActionEvent event) {
+        int width = 400;
+        int height = 230;
+        Stage simulationPreferencesStage = prepareUtilityWindow(width, height, "Simulation preferences");
+        SimulationPreferencesPane simulationPreferencesPane = new SimulationPreferencesPane(simulationPreferencesStage);
+        simulationPreferencesStage.setScene(new Scene(simulationPreferencesPane));
+        simulationPreferencesStage.showAndWait();
+        updateEmissionRate();
+    }
+
     private FileChooser prepareFileChooser(String title, String... extensions) {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle(title);
@@ -350,6 +504,110 @@ public class CellularGraphAutomatonSimulation extends Application {
         }
     }
 
+    private void saveCheckpoint(ActionEvent event) {
+        FileChooser fileChooser = prepareFileChooser("Save checkpoint to file", CHECKPOINT_EXTENSION);
+        File file = fileChooser.showSaveDialog(this.stage);
+        if (file != null) {
+            this.simulationManager.requestCheckpoint(file.toPath()).whenComplete((path, throwable) -> {
+                // a request replaced by a newer one is written with the state of the newer one
+                if (throwable != null && !(throwable instanceof CancellationException)) {
+                    Platform.runLater(() -> showCheckpointError("Could not write checkpoint to " + file + ".", throwable));
+                }
+            });
+        }
+    }
+
+    private void restoreCheckpoint(ActionEvent event) {
+        FileChooser fileChooser = prepareFileChooser("Restore checkpoint from file", CHECKPOINT_EXTENSION);
+        File file = fileChooser.showOpenDialog(this.stage);
+        if (file != null) {
+            try {
+                this.simulationManager.restoreCheckpoint(file.toPath());
+                // the checkpoint restores the states of the nodes
+                this.simulationCanvas.getRenderer().invalidateNodeAttributes();
+                this.simulationCanvas.draw();
+            } catch (IOException e) {
+                showCheckpointError("Could not restore checkpoint from " + file + ".", e);
+            }
+        }
+    }
+
+    private void togglePeriodicCheckpoints(ActionEvent event) {
+        if (!this.mIPeriodicCheckpoints.isSelected()) {
+            this.simulationManager.stopPeriodicCheckpoints();
+            return;
+        }
+        FileChooser fileChooser = prepareFileChooser("Write periodic checkpoints to file", CHECKPOINT_EXTENSION);
+        File file = fileChooser.showSaveDialog(this.stage);
+        if (file == null) {
+            this.mIPeriodicCheckpoints.setSelected(false);
+            return;
+        }
+        int interval = new SingaPreferences().preferences.getInt(SingaPreferences.Simulation.CHECKPOINT_INTERVAL,
+                SingaPreferences.Simulation.CHECKPOINT_INTERVAL_VALUE);
+        this.simulationManager.startPeriodicCheckpoints(file.toPath(), interval);
+    }
+
+    private void toggleCanvasRecording(ActionEvent event) {
+        if (!this.mIRecordCanvas.isSelected()) {
+            stopCanvasRecording();
+            return;
+        }
+        FileChooser fileChooser = prepareFileChooser("Record canvas to file", "avi", "png");
+        File file = fileChooser.showSaveDialog(this.stage);
+        if (file == null) {
+            this.mIRecordCanvas.setSelected(false);
+            return;
+        }
+        SingaPreferences preferences = new SingaPreferences();
+        int interval = preferences.preferences.getInt(SingaPreferences.Simulation.RECORDING_INTERVAL,
+                SingaPreferences.Simulation.RECORDING_INTERVAL_VALUE);
+        double frameRate = preferences.preferences.getDouble(SingaPreferences.Simulation.RECORDING_FRAME_RATE,
+                SingaPreferences.Simulation.RECORDING_FRAME_RATE_VALUE);
+        try {
+            this.frameRecorder = new FrameRecorder(FrameEncoder.forFile(file.toPath(), frameRate), interval);
+        } catch (IOException e) {
+            this.mIRecordCanvas.setSelected(false);
+            showRecordingError("Could not record canvas to " + file + ".", e);
+            return;
+        }
+        this.frameRecorder.setMetrics(this.simulationManager.getMetrics());
+        this.simulationCanvas.getRenderer().setFrameRecorder(this.frameRecorder);
+        logger.debug("Recording canvas to {} ...", file);
+    }
+
+    private void stopCanvasRecording() {
+        if (this.frameRecorder == null) {
+            return;
+        }
+        this.simulationCanvas.getRenderer().setFrameRecorder(null);
+        this.frameRecorder.stop().whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                Platform.runLater(() -> showRecordingError("Could not finish recording.", throwable));
+            }
+        });
+        this.frameRecorder = null;
+    }
+
+    private void showRecordingError(String message, Throwable throwable) {
+        logger.error(message, throwable);
+        this.mIRecordCanvas.setSelected(false);
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Recording");
+        alert.setHeaderText(message);
+        alert.setContentText(throwable.getMessage());
+        alert.showAndWait();
+    }
+
+    private void showCheckpointError(String message, Throwable throwable) {
+        logger.error(message, throwable);
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Checkpoint");
+        alert.setHeaderText(message);
+        alert.setContentText(throwable.getMessage());
+        alert.showAndWait();
+    }
+
     private void setupConcentrationSlider() {
         this.concentrationSlider = new Slider();
         this.concentrationSlider.setMin(0);
@@ -362,10 +620,13 @@ public class CellularGraphAutomatonSimulation extends Application {
     }
 
     private void resetGraph(AutomatonGraph graph) {
+        this.simulationManager.pause();
+        this.timelinePane.reset();
         simulation.setGraph(graph);
         this.simulationCanvas.getRenderer().getBioRenderingOptions().setNodeHighlightEntity(null);
         this.simulationCanvas.getRenderer().getBioRenderingOptions().setEdgeHighlightEntity(null);
         this.simulationCanvas.resetGraphContextMenu();
+        this.smallMultiplesPane.refreshEntities();
         this.simulationCanvas.draw();
     }
 
@@ -421,4 +682,12 @@ public class CellularGraphAutomatonSimulation extends Application {
         return simulation;
     }
 
+    public SimulationCanvas getSimulationCanvas() {
+        return this.simulationCanvas;
+    }
+
+    public SimulationManager getSimulationManager() {
+        return this.simulationManager;
+    }
+
 }
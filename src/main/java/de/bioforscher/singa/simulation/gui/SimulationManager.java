@@ -2,86 +2,553 @@ package de.bioforscher.singa.simulation.gui;
 
 import de.bioforscher.singa.core.events.UpdateEventEmitter;
 import de.bioforscher.singa.core.events.UpdateEventListener;
-import de.bioforscher.singa.simulation.events.GraphUpdatedEvent;
+import de.bioforscher.singa.simulation.gui.checkpoints.SimulationCheckpoint;
+import de.bioforscher.singa.simulation.gui.execution.EmissionScheduler;
+import de.bioforscher.singa.simulation.gui.execution.RunMode;
+import de.bioforscher.singa.simulation.gui.metrics.MetricsRegistry;
+import de.bioforscher.singa.simulation.gui.snapshots.SimulationSnapshot;
+import de.bioforscher.singa.simulation.gui.snapshots.SnapshotPool;
 import de.bioforscher.singa.simulation.model.graphs.AutomatonNode;
 import de.bioforscher.singa.simulation.modules.model.Simulation;
-import javafx.concurrent.Task;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import tec.units.ri.quantity.Quantities;
 
+import javax.measure.Quantity;
+import javax.measure.quantity.Time;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static tec.units.ri.unit.Units.SECOND;
 
 /**
+ * Calculates the epochs of a {@link Simulation} on a single, long-lived worker thread. The worker sleeps until a
+ * command (single step, a number of epochs, until a certain time or continuously) is submitted and returns to sleep
+ * if the command is completed or the simulation is paused. The state of the simulation is published as
+ * {@link SimulationSnapshot}s taken between two epochs, so listeners never observe a graph that is being modified.
+ * {@link SimulationCheckpoint}s are captured between two epochs as well and written by a separate thread, such that
+ * writing them does not stall the calculation. How often the state is emitted depends on the {@link RunMode}, that
+ * can be changed while the simulation is running.
+ *
  * @author cl
  */
-public class SimulationManager extends Task<Simulation> implements UpdateEventEmitter<GraphUpdatedEvent> {
+public class SimulationManager implements UpdateEventEmitter<SimulationSnapshot> {
 
     private static final Logger logger = LoggerFactory.getLogger(SimulationManager.class);
 
+    /**
+     * The number of remaining epochs if the simulation should run until it is paused.
+     */
+    private static final long CONTINUOUS = Long.MAX_VALUE;
+
+    /**
+     * The wall time between two preview frames in {@link RunMode#THROUGHPUT} mode.
+     */
+    private static final long PREVIEW_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    /**
+     * The number of epochs between two reads of the clock in {@link RunMode#THROUGHPUT} mode (minus one).
+     */
+    private static final int PREVIEW_CHECK_MASK = 1023;
+
+    /**
+     * The longest time the worker sleeps at once in {@link RunMode#PACED} mode, before checking for a pause.
+     */
+    private static final long MAXIMAL_PACING_SLEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /**
+     * The number of epochs between two updates of the published progress (minus one).
+     */
+    private static final int PROGRESS_MASK = 255;
+
+    /**
+     * The number of epochs between two epochs whose duration is measured (minus one).
+     */
+    private static final int DURATION_SAMPLE_MASK = 15;
+
+    public static final String CALCULATED_EPOCHS = "simulation.epochs.calculated";
+    public static final String EPOCH_DURATION = "simulation.epoch.nanos";
+    public static final String FAN_OUT_DURATION = "emission.fanout.nanos";
+    public static final String WRITTEN_CHECKPOINTS = "checkpoints.written";
+    public static final String SKIPPED_CHECKPOINTS = "checkpoints.skipped";
+    public static final String FAILED_CHECKPOINTS = "checkpoints.failed";
+
     private final Simulation simulation;
-    private CopyOnWriteArrayList<UpdateEventListener<GraphUpdatedEvent>> listeners;
+    private CopyOnWriteArrayList<UpdateEventListener<SimulationSnapshot>> listeners;
+
+    private final MetricsRegistry metrics;
+    private final EmissionScheduler emissionScheduler;
+    private final SnapshotPool snapshotPool;
+    private volatile RunMode runMode;
+    private volatile double pace;
+    private volatile long publishedEpoch;
+    private volatile double publishedElapsedSeconds;
 
-    private final int TICKS_PER_SECOND = 20;
-    private final int SKIP_TICKS = 1000 / TICKS_PER_SECOND;
-    // final int MAX_FRAMESKIP = 5;
+    private final Object lock;
+    private final AtomicLong remainingEpochs;
+    private volatile double timeLimit;
+    private boolean running;
+    private Thread worker;
+
+    private final ExecutorService checkpointWriter;
+    private final ScheduledExecutorService checkpointTimer;
+    private final AtomicInteger checkpointsInProgress;
+    private final AtomicReference<PendingCheckpoint> pendingCheckpoint;
+    private ScheduledFuture<?> periodicCheckpoints;
 
     public SimulationManager(Simulation simulation) {
         logger.debug("Initializing simulation manager ...");
         this.simulation = simulation;
         this.listeners = new CopyOnWriteArrayList<>();
+        this.metrics = new MetricsRegistry();
+        this.emissionScheduler = new EmissionScheduler(this.metrics);
+        this.snapshotPool = new SnapshotPool(simulation);
+        this.runMode = RunMode.VISUAL;
+        this.pace = 1.0;
+        this.lock = new Object();
+        this.remainingEpochs = new AtomicLong();
+        this.timeLimit = Double.POSITIVE_INFINITY;
+        this.checkpointWriter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.checkpointTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pendingCheckpoint = new AtomicReference<>();
+        this.checkpointsInProgress = new AtomicInteger();
+    }
+
+    public MetricsRegistry getMetrics() {
+        return this.metrics;
+    }
+
+    public EmissionScheduler getEmissionScheduler() {
+        return this.emissionScheduler;
+    }
+
+    public RunMode getRunMode() {
+        return this.runMode;
+    }
+
+    /**
+     * Sets the mode that determines how often the state is emitted. The mode can be changed while the simulation is
+     * running, the current command continues with the new mode.
+     *
+     * @param runMode The run mode.
+     */
+    public void setRunMode(RunMode runMode) {
+        logger.debug("Switching to {} run mode.", runMode);
+        this.runMode = runMode;
+    }
+
+    /**
+     * Returns the number of simulated seconds that pass per second of wall time in {@link RunMode#PACED} mode.
+     *
+     * @return The pace.
+     */
+    public double getPace() {
+        return this.pace;
+    }
+
+    public void setPace(double pace) {
+        if (!(pace > 0)) {
+            throw new IllegalArgumentException("The pace has to be positive.");
+        }
+        this.pace = pace;
+    }
+
+    /**
+     * Returns the epoch the simulation reached when the progress was published the last time. The progress is
+     * published every few epochs and whenever a command is completed, it can be read from any thread.
+     *
+     * @return The epoch.
+     */
+    public long getPublishedEpoch() {
+        return this.publishedEpoch;
+    }
+
+    /**
+     * Returns the elapsed time in seconds the simulation reached when the progress was published the last time.
+     *
+     * @return The elapsed time in seconds.
+     */
+    public double getPublishedElapsedSeconds() {
+        return this.publishedElapsedSeconds;
+    }
+
+    /**
+     * Takes a snapshot of the current state, if the simulation is paused. The caller is responsible to release the
+     * snapshot.
+     *
+     * @return The snapshot or null, if the simulation is running or epochs have been submitted to the worker.
+     */
+    public SimulationSnapshot captureSnapshot() {
+        synchronized (this.lock) {
+            // submitted epochs are pending until the worker wakes up and starts running
+            if (this.running || this.remainingEpochs.get() != 0) {
+                return null;
+            }
+            // holding the lock keeps the worker from starting during the capture
+            return this.snapshotPool.capture();
+        }
+    }
+
+    /**
+     * Writes a checkpoint of the current state to the given file. If the simulation is running, the state is captured
+     * after the epoch that is currently calculated, otherwise it is captured immediately. The file is written in the
+     * background.
+     *
+     * @param file The file.
+     * @return A future that is completed as soon as the checkpoint is written, or cancelled with a
+     * {@link CancellationException} if a newer request replaces it before it is captured.
+     */
+    public CompletableFuture<Path> requestCheckpoint(Path file) {
+        PendingCheckpoint checkpoint = new PendingCheckpoint(file);
+        synchronized (this.lock) {
+            if (this.running) {
+                PendingCheckpoint replacedCheckpoint = this.pendingCheckpoint.getAndSet(checkpoint);
+                if (replacedCheckpoint != null) {
+                    // the newer request covers a later state
+                    replacedCheckpoint.future.completeExceptionally(
+                            new CancellationException("Replaced by a newer checkpoint request."));
+                }
+                return checkpoint.future;
+            }
+            // holding the lock keeps the worker from starting during the capture
+            writeCheckpoint(checkpoint, this.snapshotPool.capture());
+        }
+        return checkpoint.future;
+    }
+
+    /**
+     * Writes checkpoints to the given file in regular intervals, replacing former periodic checkpoints. If the former
+     * checkpoint is still being written, the checkpoint is skipped.
+     *
+     * @param file The file.
+     * @param intervalSeconds The interval between two checkpoints in seconds.
+     */
+    public synchronized void startPeriodicCheckpoints(Path file, long intervalSeconds) {
+        if (intervalSeconds < 1) {
+            throw new IllegalArgumentException("The interval between two checkpoints has to be positive.");
+        }
+        stopPeriodicCheckpoints();
+        logger.info("Writing checkpoints to {} every {} seconds.", file, intervalSeconds);
+        this.periodicCheckpoints = this.checkpointTimer.scheduleAtFixedRate(() -> {
+            if (this.checkpointsInProgress.get() > 0 || this.pendingCheckpoint.get() != null) {
+                this.metrics.increment(SKIPPED_CHECKPOINTS);
+                return;
+            }
+            // the state only changes while the simulation is running
+            if (isRunning()) {
+                requestCheckpoint(file);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopPeriodicCheckpoints() {
+        if (this.periodicCheckpoints != null) {
+            this.periodicCheckpoints.cancel(false);
+            this.periodicCheckpoints = null;
+        }
+    }
+
+    public synchronized boolean isWritingPeriodicCheckpoints() {
+        return this.periodicCheckpoints != null;
+    }
+
+    /**
+     * Pauses the simulation and restores the state stored in the given checkpoint. The restored state is emitted to
+     * all listeners. Checkpoints that were written at another epoch or with other compartments are refused.
+     *
+     * @param file The file.
+     * @return The restored checkpoint.
+     * @throws IOException If the checkpoint could not be read or does not fit the simulation.
+     */
+    public SimulationCheckpoint restoreCheckpoint(Path file) throws IOException {
+        pause();
+        SimulationCheckpoint checkpoint = SimulationCheckpoint.restore(file, this.simulation);
+        emitState();
+        return checkpoint;
+    }
+
+    private void writePendingCheckpoint() {
+        // taken in one step, such that a request replacing it concurrently is written with the next epoch
+        PendingCheckpoint checkpoint = this.pendingCheckpoint.getAndSet(null);
+        if (checkpoint != null) {
+            writeCheckpoint(checkpoint, this.snapshotPool.capture());
+        }
+    }
+
+    private void writeCheckpoint(PendingCheckpoint checkpoint, SimulationSnapshot snapshot) {
+        this.checkpointsInProgress.incrementAndGet();
+        this.checkpointWriter.execute(() -> {
+            try {
+                SimulationCheckpoint.write(snapshot, checkpoint.file);
+                this.metrics.increment(WRITTEN_CHECKPOINTS);
+                checkpoint.future.complete(checkpoint.file);
+            } catch (IOException | RuntimeException e) {
+                logger.error("Could not write checkpoint to {}.", checkpoint.file, e);
+                this.metrics.increment(FAILED_CHECKPOINTS);
+                checkpoint.future.completeExceptionally(e);
+            } finally {
+                snapshot.release();
+                this.checkpointsInProgress.decrementAndGet();
+            }
+        });
     }
 
     @Override
-    public void addEventListener(UpdateEventListener<GraphUpdatedEvent> listener) {
+    public void addEventListener(UpdateEventListener<SimulationSnapshot> listener) {
         logger.info("Added {} to registered update listeners.", listener.getClass().getSimpleName());
         this.listeners.add(listener);
     }
 
     @Override
-    public CopyOnWriteArrayList<UpdateEventListener<GraphUpdatedEvent>> getListeners() {
+    public CopyOnWriteArrayList<UpdateEventListener<SimulationSnapshot>> getListeners() {
         return this.listeners;
     }
 
-    @Override
-    protected Simulation call() {
-        long nextTick = System.currentTimeMillis();
-        int skips = 0;
-        while (!isCancelled()) {
-            long currentMillis = System.currentTimeMillis();
-            this.simulation.nextEpoch();
-            if (currentMillis > nextTick) {
-                nextTick = currentMillis + SKIP_TICKS;
-                this.emitEvent(new GraphUpdatedEvent(this.simulation.getGraph()));
-                for (AutomatonNode automatonNode : this.simulation.getGraph().getNodes()) {
-                    if (automatonNode.isObserved()) {
-                        simulation.emitNextEpochEvent(automatonNode);
-                        System.out.println("emitted event after "+skips+" skips");
+    /**
+     * Calculates epochs until the simulation is paused.
+     */
+    public void runContinuously() {
+        submit(CONTINUOUS, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Calculates a single epoch.
+     */
+    public void step() {
+        runEpochs(1);
+    }
+
+    /**
+     * Calculates the given number of epochs.
+     *
+     * @param epochs The number of epochs.
+     */
+    public void runEpochs(long epochs) {
+        if (epochs < 1) {
+            throw new IllegalArgumentException("The number of epochs to calculate has to be positive.");
+        }
+        submit(epochs, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Calculates epochs until the elapsed time of the simulation reaches the given time.
+     *
+     * @param time The time.
+     */
+    public void runUntil(Quantity<Time> time) {
+        double limit = time.to(this.simulation.getElapsedTime().getUnit()).getValue().doubleValue();
+        submit(CONTINUOUS, limit);
+    }
+
+    /**
+     * Pauses the simulation. This method blocks until the epoch that is currently calculated is finished, afterwards
+     * the graph can be modified safely.
+     */
+    public void pause() {
+        synchronized (this.lock) {
+            this.remainingEpochs.set(0);
+            while (this.running) {
+                try {
+                    this.lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        synchronized (this.lock) {
+            return this.running;
+        }
+    }
+
+    private void submit(long epochs, double timeLimit) {
+        synchronized (this.lock) {
+            if (this.worker == null) {
+                this.worker = new Thread(this::work, "simulation-worker");
+                this.worker.setDaemon(true);
+                this.worker.start();
+            }
+            this.timeLimit = timeLimit;
+            this.remainingEpochs.set(epochs);
+            this.lock.notifyAll();
+        }
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            synchronized (this.lock) {
+                while (this.remainingEpochs.get() == 0) {
+                    try {
+                        this.lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
                     }
                 }
-                skips = 0;
-            } else {
-                skips++;
+                this.running = true;
+            }
+            try {
+                calculateEpochs();
+            } catch (RuntimeException e) {
+                logger.error("Encountered an exception during simulation.", e);
+                this.remainingEpochs.set(0);
+            }
+            // always show the state the simulation stopped in
+            publishProgress();
+            emitState();
+            synchronized (this.lock) {
+                // requests are only deferred while running
+                writePendingCheckpoint();
+                this.running = false;
+                this.lock.notifyAll();
             }
         }
-        return this.simulation;
     }
 
-    @Override
-    protected void done() {
+    private void calculateEpochs() {
+        this.emissionScheduler.reset();
+        RunMode currentMode = null;
+        long epochs = 0;
+        long countedEpochs = 0;
+        long nextPreviewNanos = 0;
+        long paceStartNanos = 0;
+        double paceStartTime = 0;
+        double pace = 0;
+        double secondsPerTimeUnit = 0;
         try {
-            if (!isCancelled()) {
-                get();
+            while (true) {
+                long remaining = this.remainingEpochs.get();
+                if (remaining <= 0) {
+                    return;
+                }
+                if (remaining != CONTINUOUS && !this.remainingEpochs.compareAndSet(remaining, remaining - 1)) {
+                    // paused or replaced by a new command
+                    continue;
+                }
+                RunMode mode = this.runMode;
+                if (mode != currentMode || (mode == RunMode.PACED && pace != this.pace)) {
+                    // restart the clocks of the new mode
+                    currentMode = mode;
+                    this.emissionScheduler.reset();
+                    nextPreviewNanos = System.nanoTime() + PREVIEW_INTERVAL_NANOS;
+                    pace = this.pace;
+                    paceStartNanos = System.nanoTime();
+                    paceStartTime = this.simulation.getElapsedTime().getValue().doubleValue();
+                    secondsPerTimeUnit = Quantities.getQuantity(1, this.simulation.getElapsedTime().getUnit())
+                            .to(SECOND).getValue().doubleValue();
+                }
+                if ((epochs & DURATION_SAMPLE_MASK) == 0) {
+                    // only some epochs are measured, such that the clock is not read twice per epoch
+                    long epochStart = System.nanoTime();
+                    this.simulation.nextEpoch();
+                    this.metrics.record(EPOCH_DURATION, System.nanoTime() - epochStart);
+                } else {
+                    this.simulation.nextEpoch();
+                }
+                epochs++;
+                if ((epochs & PROGRESS_MASK) == 0) {
+                    this.metrics.add(CALCULATED_EPOCHS, epochs - countedEpochs);
+                    countedEpochs = epochs;
+                    publishProgress();
+                }
+                double timeLimit = this.timeLimit;
+                if (timeLimit != Double.POSITIVE_INFINITY || mode == RunMode.PACED) {
+                    double elapsedTime = this.simulation.getElapsedTime().getValue().doubleValue();
+                    if (elapsedTime >= timeLimit) {
+                        this.remainingEpochs.set(0);
+                        return;
+                    }
+                    if (mode == RunMode.PACED) {
+                        long dueNanos = paceStartNanos + (long) ((elapsedTime - paceStartTime) * secondsPerTimeUnit / pace * 1e9);
+                        awaitPace(dueNanos, pace);
+                    }
+                }
+                if (mode == RunMode.THROUGHPUT) {
+                    if ((epochs & PREVIEW_CHECK_MASK) == 0 && System.nanoTime() >= nextPreviewNanos) {
+                        nextPreviewNanos = System.nanoTime() + PREVIEW_INTERVAL_NANOS;
+                        // plots are detached, only the renderer receives a preview
+                        emitState(false);
+                    }
+                } else if (this.emissionScheduler.shouldEmit()) {
+                    emitState(true);
+                }
+                if (this.pendingCheckpoint.get() != null) {
+                    writePendingCheckpoint();
+                }
+            }
+        } finally {
+            this.metrics.add(CALCULATED_EPOCHS, epochs - countedEpochs);
+        }
+    }
+
+    private void awaitPace(long dueNanos, double pace) {
+        long waitingNanos;
+        // stop waiting as soon as the simulation is paused or the pace is changed
+        while ((waitingNanos = dueNanos - System.nanoTime()) > 0 && this.remainingEpochs.get() > 0 &&
+                this.runMode == RunMode.PACED && this.pace == pace) {
+            LockSupport.parkNanos(Math.min(waitingNanos, MAXIMAL_PACING_SLEEP_NANOS));
+        }
+    }
+
+    private void emitState() {
+        emitState(true);
+    }
+
+    private void emitState(boolean notifyObservers) {
+        SimulationSnapshot snapshot = this.snapshotPool.capture();
+        long fanOutStart = System.nanoTime();
+        this.emitEvent(snapshot);
+        snapshot.release();
+        if (notifyObservers) {
+            for (AutomatonNode automatonNode : this.simulation.getGraph().getNodes()) {
+                if (automatonNode.isObserved()) {
+                    this.simulation.emitNextEpochEvent(automatonNode);
+                }
             }
-        } catch (ExecutionException e) {
-            // Exception occurred, deal with it
-            logger.error("Encountered an exception during simulation: " + e.getCause());
-            e.printStackTrace();
-        } catch (InterruptedException e) {
-            // Shouldn't happen, we're invoked when computation is finished
-            throw new AssertionError(e);
         }
+        this.metrics.record(FAN_OUT_DURATION, System.nanoTime() - fanOutStart);
     }
 
+    private void publishProgress() {
+        this.publishedEpoch = this.simulation.getEpoch();
+        this.publishedElapsedSeconds = this.simulation.getElapsedTime().to(SECOND).getValue().doubleValue();
+    }
+
+    /**
+     * A checkpoint that has been requested while the simulation was running.
+     */
+    private static class PendingCheckpoint {
+
+        private final Path file;
+        private final CompletableFuture<Path> future;
+
+        PendingCheckpoint(Path file) {
+            this.file = file;
+            this.future = new CompletableFuture<>();
+        }
+
+    }
 
 }
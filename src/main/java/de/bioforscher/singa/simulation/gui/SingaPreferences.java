@@ -12,6 +12,7 @@ public class SingaPreferences {
 
     public void restoreDefaults() {
         restorePlotDefaults();
+        restoreSimulationDefaults();
     }
 
     public void restorePlotDefaults() {
@@ -20,6 +21,12 @@ public class SingaPreferences {
         this.preferences.remove(Plot.SCROLL_PLOT);
     }
 
+    public void restoreSimulationDefaults() {
+        this.preferences.remove(Simulation.CHECKPOINT_INTERVAL);
+        this.preferences.remove(Simulation.PACE);
+        this.preferences.remove(Simulation.EMISSION_RATE);
+    }
+
     public static class Plot {
 
         /**
@@ -52,4 +59,53 @@ public class SingaPreferences {
 
     }
 
+    public static class Simulation {
+
+        /**
+         * Seconds between two periodic checkpoints.
+         */
+        public static final String CHECKPOINT_INTERVAL = "SIMULATION_CHECKPOINT_INTERVAL";
+        /**
+         * Five minutes
+         */
+        public static final int CHECKPOINT_INTERVAL_VALUE = 300;
+
+        /**
+         * Simulated seconds per second of wall time in paced mode.
+         */
+        public static final String PACE = "SIMULATION_PACE";
+        /**
+         * One microsecond per second
+         */
+        public static final double PACE_VALUE = 1.0E-6;
+
+        /**
+         * Snapshots emitted to the user interface per second.
+         */
+        public static final String EMISSION_RATE = "SIMULATION_EMISSION_RATE";
+        /**
+         * Twenty snapshots per second
+         */
+        public static final int EMISSION_RATE_VALUE = 20;
+
+        /**
+         * Number of drawn frames per recorded frame.
+         */
+        public static final String RECORDING_INTERVAL = "SIMULATION_RECORDING_INTERVAL";
+        /**
+         * Every frame
+         */
+        public static final int RECORDING_INTERVAL_VALUE = 1;
+
+        /**
+         * Frames per second of recorded videos.
+         */
+        public static final String RECORDING_FRAME_RATE = "SIMULATION_RECORDING_FRAME_RATE";
+        /**
+         * Twenty-five frames per second
+         */
+        public static final double RECORDING_FRAME_RATE_VALUE = 25.0;
+
+    }
+
 }
@@ -0,0 +1,107 @@
+package de.bioforscher.singa.simulation.gui.batch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line entry point for {@link ParameterSweep}s. Usage:
+ * <pre>
+ *     HeadlessParameterSweep --output directory [--model diffusion|membrane|iodine] [--graph graph.xml]
+ *                            (--epochs n | --time seconds) [--observe id,id,...] [--observe-every n]
+ *                            [--time-steps seconds,...] [--temperatures celsius,...]
+ *                            [--viscosities millipascal-seconds,...] [--parallel n]
+ * </pre>
+ *
+ * @author cl
+ */
+public class HeadlessParameterSweep {
+
+    private static final String USAGE = "Usage: HeadlessParameterSweep --output directory " +
+            "[--model diffusion|membrane|iodine] [--graph graph.xml] (--epochs n | --time seconds) " +
+            "[--observe id,id,...] [--observe-every n] [--time-steps seconds,...] [--temperatures celsius,...] " +
+            "[--viscosities millipascal-seconds,...] [--parallel n]";
+
+    public static void main(String[] args) {
+        ParameterSweep sweep = new ParameterSweep();
+        String outputPath = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String argument = args[i];
+                switch (argument) {
+                    case "--output":
+                        outputPath = requireValue(args, ++i, argument);
+                        break;
+                    case "--model":
+                        sweep.setModel(requireValue(args, ++i, argument));
+                        break;
+                    case "--graph":
+                        sweep.setGraphFile(Paths.get(requireValue(args, ++i, argument)));
+                        break;
+                    case "--epochs":
+                        sweep.setEpochs(Long.parseLong(requireValue(args, ++i, argument)));
+                        break;
+                    case "--time":
+                        sweep.setTime(Double.parseDouble(requireValue(args, ++i, argument)));
+                        break;
+                    case "--observe":
+                        sweep.setObservedNodes(requireValue(args, ++i, argument));
+                        break;
+                    case "--observe-every":
+                        sweep.setObservationInterval(Integer.parseInt(requireValue(args, ++i, argument)));
+                        break;
+                    case "--time-steps":
+                        sweep.setTimeSteps(parseValues(requireValue(args, ++i, argument)));
+                        break;
+                    case "--temperatures":
+                        sweep.setTemperatures(parseValues(requireValue(args, ++i, argument)));
+                        break;
+                    case "--viscosities":
+                        sweep.setViscosities(parseValues(requireValue(args, ++i, argument)));
+                        break;
+                    case "--parallel":
+                        sweep.setParallelism(Integer.parseInt(requireValue(args, ++i, argument)));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown argument " + argument + ".");
+                }
+            }
+            if (outputPath == null) {
+                throw new IllegalArgumentException("The output directory has to be given.");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        try {
+            List<SweepRun> runs = sweep.run(Paths.get(outputPath));
+            if (runs.stream().anyMatch(run -> !run.isSuccessful())) {
+                System.exit(2);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the results of the parameter sweep.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<Double> parseValues(String values) {
+        List<Double> parsedValues = new ArrayList<>();
+        for (String value : values.split(",")) {
+            parsedValues.add(Double.parseDouble(value.trim()));
+        }
+        return parsedValues;
+    }
+
+    private static String requireValue(String[] args, int index, String argument) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + argument + ".");
+        }
+        return args[index];
+    }
+
+}
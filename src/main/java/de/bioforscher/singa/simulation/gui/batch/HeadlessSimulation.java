@@ -0,0 +1,227 @@
+package de.bioforscher.singa.simulation.gui.batch;
+
+import de.bioforscher.singa.features.parameters.EnvironmentalParameters;
+import de.bioforscher.singa.simulation.gui.recording.FrameEncoder;
+import de.bioforscher.singa.simulation.gui.recording.FrameRecorder;
+import de.bioforscher.singa.simulation.gui.renderer.BioGraphRenderOptions;
+import de.bioforscher.singa.simulation.model.graphs.AutomatonGraph;
+import de.bioforscher.singa.simulation.model.graphs.AutomatonNode;
+import de.bioforscher.singa.simulation.modules.model.Simulation;
+import de.bioforscher.singa.simulation.modules.model.SimulationExamples;
+import de.bioforscher.singa.simulation.parser.graphs.GraphMLParserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tec.units.ri.quantity.Quantities;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static de.bioforscher.singa.features.units.UnitProvider.PASCAL_SECOND;
+import static tec.units.ri.unit.MetricPrefix.MILLI;
+import static tec.units.ri.unit.MetricPrefix.NANO;
+import static tec.units.ri.unit.Units.CELSIUS;
+import static tec.units.ri.unit.Units.SECOND;
+
+/**
+ * Command line entry point for simulations without graphical user interface. Usage:
+ * <pre>
+ *     HeadlessSimulation [--model diffusion|membrane|iodine] [--graph graph.xml] (--epochs n | --time seconds)
+ *                        [--output directory] [--observe id,id,...] [--observe-every n]
+ *                        [--time-step seconds] [--temperature celsius] [--viscosity millipascal-seconds]
+ *                        [--record video.avi|frame.png] [--record-every n] [--record-size widthxheight]
+ * </pre>
+ * If a graph is given, it replaces the graph of the selected example model, just as loading a graph in the user
+ * interface does. Environmental parameters that are given override the ones set up by the model. Recorded frames show
+ * the nodes colored by their state.
+ *
+ * @author cl
+ */
+public class HeadlessSimulation {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeadlessSimulation.class);
+
+    private static final String USAGE = "Usage: HeadlessSimulation [--model diffusion|membrane|iodine] " +
+            "[--graph graph.xml] (--epochs n | --time seconds) [--output directory] [--observe id,id,...] " +
+            "[--observe-every n] [--time-step seconds] [--temperature celsius] [--viscosity millipascal-seconds] " +
+            "[--record video.avi|frame.png] [--record-every n] [--record-size widthxheight]";
+
+    private static final double RECORDING_FRAME_RATE = 25.0;
+    private static final double RECORDING_NODE_DIAMETER = 8.0;
+    private static final double RECORDING_EDGE_THICKNESS = 1.0;
+
+    public static void main(String[] args) {
+        try {
+            HeadlessSimulationRunner runner = prepareRunner(args);
+            runner.run();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Parses the command line arguments and sets up a runner accordingly.
+     *
+     * @param args The command line arguments.
+     * @return The configured runner.
+     */
+    public static HeadlessSimulationRunner prepareRunner(String[] args) {
+        String model = "diffusion";
+        String graphPath = null;
+        String outputPath = null;
+        String observedNodes = null;
+        Long epochs = null;
+        Double time = null;
+        int observationInterval = 1;
+        Double timeStep = null;
+        Double temperature = null;
+        Double viscosity = null;
+        String recordingPath = null;
+        int recordingInterval = 1;
+        String recordingSize = "800x800";
+        for (int i = 0; i < args.length; i++) {
+            String argument = args[i];
+            switch (argument) {
+                case "--model":
+                    model = requireValue(args, ++i, argument);
+                    break;
+                case "--graph":
+                    graphPath = requireValue(args, ++i, argument);
+                    break;
+                case "--epochs":
+                    epochs = Long.parseLong(requireValue(args, ++i, argument));
+                    break;
+                case "--time":
+                    time = Double.parseDouble(requireValue(args, ++i, argument));
+                    break;
+                case "--output":
+                    outputPath = requireValue(args, ++i, argument);
+                    break;
+                case "--observe":
+                    observedNodes = requireValue(args, ++i, argument);
+                    break;
+                case "--observe-every":
+                    observationInterval = Integer.parseInt(requireValue(args, ++i, argument));
+                    break;
+                case "--time-step":
+                    timeStep = Double.parseDouble(requireValue(args, ++i, argument));
+                    break;
+                case "--temperature":
+                    temperature = Double.parseDouble(requireValue(args, ++i, argument));
+                    break;
+                case "--viscosity":
+                    viscosity = Double.parseDouble(requireValue(args, ++i, argument));
+                    break;
+                case "--record":
+                    recordingPath = requireValue(args, ++i, argument);
+                    break;
+                case "--record-every":
+                    recordingInterval = Integer.parseInt(requireValue(args, ++i, argument));
+                    break;
+                case "--record-size":
+                    recordingSize = requireValue(args, ++i, argument);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + argument + ".");
+            }
+        }
+        if (epochs == null && time == null) {
+            throw new IllegalArgumentException("Either --epochs or --time has to be given.");
+        }
+
+        Simulation simulation = createSimulation(model);
+        // the model sets up its own environment, given parameters take precedence
+        if (timeStep != null) {
+            EnvironmentalParameters.getInstance().setTimeStep(Quantities.getQuantity(timeStep, SECOND));
+        }
+        if (temperature != null) {
+            EnvironmentalParameters.getInstance().setSystemTemperature(Quantities.getQuantity(temperature, CELSIUS));
+        }
+        if (viscosity != null) {
+            EnvironmentalParameters.getInstance().setSystemViscosity(Quantities.getQuantity(viscosity,
+                    MILLI(PASCAL_SECOND)));
+        }
+        if (graphPath != null) {
+            logger.info("Loading graph from {} ...", graphPath);
+            AutomatonGraph graph = new GraphMLParserService(graphPath).parse();
+            simulation.setGraph(graph);
+        }
+
+        HeadlessSimulationRunner runner = new HeadlessSimulationRunner(simulation);
+        if (epochs != null) {
+            runner.setMaximalEpochs(epochs);
+        }
+        if (time != null) {
+            runner.setMaximalTime(Quantities.getQuantity(time, SECOND));
+        }
+        runner.setObservationInterval(observationInterval);
+        if (observedNodes != null) {
+            for (String identifier : observedNodes.split(",")) {
+                AutomatonNode node = simulation.getGraph().getNode(Integer.parseInt(identifier.trim()));
+                if (node == null) {
+                    throw new IllegalArgumentException("The graph contains no node with identifier " + identifier + ".");
+                }
+                runner.observeNode(node);
+            }
+        }
+        if (outputPath != null) {
+            Path outputDirectory = Paths.get(outputPath);
+            try {
+                Files.createDirectories(outputDirectory);
+                runner.writeObservationsTo(outputDirectory);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not use " + outputPath + " to write observed nodes.", e);
+            }
+        }
+        if (recordingPath != null) {
+            runner.recordFramesTo(createFrameRecorder(recordingPath, recordingSize), recordingInterval);
+        }
+        return runner;
+    }
+
+    private static FrameRecorder createFrameRecorder(String recordingPath, String recordingSize) {
+        String[] dimensions = recordingSize.toLowerCase().split("x");
+        if (dimensions.length != 2) {
+            throw new IllegalArgumentException("The recording size has to be given as widthxheight.");
+        }
+        int width = Integer.parseInt(dimensions[0].trim());
+        int height = Integer.parseInt(dimensions[1].trim());
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("The recording size has to be positive.");
+        }
+        FrameRecorder recorder;
+        try {
+            recorder = new FrameRecorder(FrameEncoder.forFile(Paths.get(recordingPath), RECORDING_FRAME_RATE), 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not record frames to " + recordingPath + ".", e);
+        }
+        recorder.setFrameFormat(new BioGraphRenderOptions().getColoring(), width, height, RECORDING_NODE_DIAMETER,
+                RECORDING_EDGE_THICKNESS);
+        return recorder;
+    }
+
+    private static Simulation createSimulation(String model) {
+        switch (model) {
+            case "diffusion":
+                return SimulationExamples.createDiffusionModuleExample(10, Quantities.getQuantity(500, NANO(SECOND)));
+            case "membrane":
+                return SimulationExamples.createDiffusionAndMembraneTransportExample();
+            case "iodine":
+                return SimulationExamples.createIodineMultiReactionExample();
+            default:
+                throw new IllegalArgumentException("Unknown model " + model + ".");
+        }
+    }
+
+    private static String requireValue(String[] args, int index, String argument) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + argument + ".");
+        }
+        return args[index];
+    }
+
+}
@@ -0,0 +1,208 @@
+package de.bioforscher.singa.simulation.gui.batch;
+
+import de.bioforscher.singa.simulation.events.EpochUpdateWriter;
+import de.bioforscher.singa.simulation.gui.recording.FrameRecorder;
+import de.bioforscher.singa.simulation.gui.snapshots.SimulationSnapshot;
+import de.bioforscher.singa.simulation.gui.snapshots.SnapshotPool;
+import de.bioforscher.singa.simulation.model.graphs.AutomatonNode;
+import de.bioforscher.singa.simulation.modules.model.Simulation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.measure.Quantity;
+import javax.measure.quantity.Time;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a {@link Simulation} without any graphical user interface. Epochs are calculated in a tight loop until
+ * either the maximal number of epochs or the maximal simulated time is reached. The JavaFX toolkit is never started
+ * (frames are recorded without a canvas), so the runner can be used on machines without a display.
+ *
+ * @author cl
+ */
+public class HeadlessSimulationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeadlessSimulationRunner.class);
+
+    /**
+     * The number of epochs between two checks of the wall clock for progress reports.
+     */
+    private static final int PROGRESS_CHECK_EPOCHS = 1024;
+
+    /**
+     * The wall time between two progress reports.
+     */
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final Simulation simulation;
+    private final Set<AutomatonNode> observedNodes;
+
+    private long maximalEpochs = Long.MAX_VALUE;
+    private Quantity<Time> maximalTime;
+    private int observationInterval = 1;
+    private FrameRecorder frameRecorder;
+    private int recordingInterval = 1;
+
+    public HeadlessSimulationRunner(Simulation simulation) {
+        this.simulation = simulation;
+        this.observedNodes = new LinkedHashSet<>();
+    }
+
+    public Simulation getSimulation() {
+        return this.simulation;
+    }
+
+    public long getMaximalEpochs() {
+        return this.maximalEpochs;
+    }
+
+    public void setMaximalEpochs(long maximalEpochs) {
+        if (maximalEpochs < 1) {
+            throw new IllegalArgumentException("The number of epochs to calculate has to be positive.");
+        }
+        this.maximalEpochs = maximalEpochs;
+    }
+
+    public Quantity<Time> getMaximalTime() {
+        return this.maximalTime;
+    }
+
+    public void setMaximalTime(Quantity<Time> maximalTime) {
+        this.maximalTime = maximalTime;
+    }
+
+    public int getObservationInterval() {
+        return this.observationInterval;
+    }
+
+    /**
+     * Sets the number of epochs between two emissions of the observed nodes.
+     *
+     * @param observationInterval The number of epochs.
+     */
+    public void setObservationInterval(int observationInterval) {
+        if (observationInterval < 1) {
+            throw new IllegalArgumentException("The observation interval has to be positive.");
+        }
+        this.observationInterval = observationInterval;
+    }
+
+    /**
+     * Adds a node, whose concentrations are emitted to the listeners of the simulation. Nodes that are flagged as
+     * observed in the graph are always emitted.
+     *
+     * @param node The node.
+     */
+    public void observeNode(AutomatonNode node) {
+        node.setObserved(true);
+        this.observedNodes.add(node);
+    }
+
+    /**
+     * Writes the concentrations of all observed nodes to the given directory. Call this after all nodes to observe
+     * have been added.
+     *
+     * @param directory The target directory.
+     * @throws IOException If the directory could not be used by the writer.
+     */
+    public void writeObservationsTo(Path directory) throws IOException {
+        EpochUpdateWriter writer = new EpochUpdateWriter(directory, Paths.get("Headless Simulation"),
+                this.simulation.getChemicalEntities());
+        collectObservedNodes().forEach(writer::addNodeToObserve);
+        this.simulation.addEventListener(writer);
+    }
+
+    /**
+     * Passes a snapshot to the given recorder every given number of epochs. The recorder has to rasterize snapshots
+     * itself (see {@link FrameRecorder#setFrameFormat}), it is stopped after the last epoch.
+     *
+     * @param frameRecorder The recorder.
+     * @param recordingInterval The number of epochs between two recorded frames.
+     */
+    public void recordFramesTo(FrameRecorder frameRecorder, int recordingInterval) {
+        if (recordingInterval < 1) {
+            throw new IllegalArgumentException("The recording interval has to be positive.");
+        }
+        this.frameRecorder = frameRecorder;
+        this.recordingInterval = recordingInterval;
+    }
+
+    /**
+     * Calculates epochs until one of the termination criteria is reached.
+     *
+     * @return The number of calculated epochs.
+     */
+    public long run() {
+        if (this.maximalEpochs == Long.MAX_VALUE && this.maximalTime == null) {
+            throw new IllegalStateException("Either the maximal number of epochs or the maximal time has to be set.");
+        }
+        AutomatonNode[] observed = collectObservedNodes().toArray(new AutomatonNode[0]);
+        double timeLimit = Double.POSITIVE_INFINITY;
+        if (this.maximalTime != null) {
+            // convert once, comparisons in the loop are done on plain values
+            timeLimit = this.maximalTime.to(this.simulation.getElapsedTime().getUnit()).getValue().doubleValue();
+        }
+        logger.info("Starting headless simulation with {} nodes, {} observed.",
+                this.simulation.getGraph().getNodes().size(), observed.length);
+
+        SnapshotPool snapshotPool = this.frameRecorder != null ? new SnapshotPool(this.simulation) : null;
+        final long startNanos = System.nanoTime();
+        long nextReport = startNanos + PROGRESS_INTERVAL_NANOS;
+        long epochs = 0;
+        while (epochs < this.maximalEpochs &&
+                this.simulation.getElapsedTime().getValue().doubleValue() < timeLimit) {
+            this.simulation.nextEpoch();
+            epochs++;
+            if (observed.length > 0 && epochs % this.observationInterval == 0) {
+                for (AutomatonNode node : observed) {
+                    this.simulation.emitNextEpochEvent(node);
+                }
+            }
+            if (snapshotPool != null && epochs % this.recordingInterval == 0) {
+                SimulationSnapshot snapshot = snapshotPool.capture();
+                this.frameRecorder.onEventReceived(snapshot);
+                snapshot.release();
+            }
+            if (epochs % PROGRESS_CHECK_EPOCHS == 0) {
+                long currentNanos = System.nanoTime();
+                if (currentNanos > nextReport) {
+                    nextReport = currentNanos + PROGRESS_INTERVAL_NANOS;
+                    logger.info("Calculated {} epochs ({} epochs per second), elapsed time {}.", epochs,
+                            epochsPerSecond(epochs, currentNanos - startNanos), this.simulation.getElapsedTime());
+                }
+            }
+        }
+        logger.info("Finished headless simulation after {} epochs ({} epochs per second), elapsed time {}.", epochs,
+                epochsPerSecond(epochs, System.nanoTime() - startNanos), this.simulation.getElapsedTime());
+        if (this.frameRecorder != null) {
+            // wait for the encoder to write the remaining frames
+            this.frameRecorder.stop().join();
+        }
+        return epochs;
+    }
+
+    private List<AutomatonNode> collectObservedNodes() {
+        List<AutomatonNode> nodes = new ArrayList<>(this.observedNodes);
+        for (AutomatonNode node : this.simulation.getGraph().getNodes()) {
+            if (node.isObserved() && !this.observedNodes.contains(node)) {
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    private static long epochsPerSecond(long epochs, long nanos) {
+        if (nanos <= 0) {
+            return 0;
+        }
+        return epochs * TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+}
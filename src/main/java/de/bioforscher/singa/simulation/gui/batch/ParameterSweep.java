@@ -0,0 +1,385 @@
+package de.bioforscher.singa.simulation.gui.batch;
+
+import de.bioforscher.singa.simulation.model.graphs.AutomatonGraph;
+import de.bioforscher.singa.simulation.parser.graphs.GraphMLExportService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs a simulation for every point of a grid of environmental parameters (time step, temperature and viscosity).
+ * The environmental parameters are a singleton per virtual machine, therefore every run is calculated in a separate
+ * {@link HeadlessSimulation} process, that parses its own copy of the graph and sets up its own entities and
+ * environment. At most {@link #getParallelism()} runs are calculated concurrently. The observed trajectories of every
+ * run are written to a directory of its own, a summary of all runs is written to {@value #SUMMARY_FILE_NAME}. Once all
+ * runs are finished, the trajectories of all successful runs are merged into {@value #TRAJECTORIES_FILE_NAME}, one
+ * row per observation keyed by the run, its parameters and the observed node.
+ *
+ * @author cl
+ */
+public class ParameterSweep {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParameterSweep.class);
+
+    public static final String SUMMARY_FILE_NAME = "sweep.tsv";
+    public static final String TRAJECTORIES_FILE_NAME = "sweep_trajectories.tsv";
+    private static final String GRAPH_FILE_NAME = "graph.xml";
+    private static final String LOG_FILE_NAME = "run.log";
+
+    private String model = "diffusion";
+    private Path graphFile;
+    private AutomatonGraph graph;
+    private Long epochs;
+    private Double time;
+    private String observedNodes;
+    private int observationInterval = 1;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private List<Double> timeSteps = Collections.emptyList();
+    private List<Double> temperatures = Collections.emptyList();
+    private List<Double> viscosities = Collections.emptyList();
+
+    public String getModel() {
+        return this.model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public Path getGraphFile() {
+        return this.graphFile;
+    }
+
+    /**
+     * Sets a GraphML file every run parses its graph from.
+     *
+     * @param graphFile The file.
+     */
+    public void setGraphFile(Path graphFile) {
+        this.graphFile = graphFile;
+        this.graph = null;
+    }
+
+    /**
+     * Sets a graph that is exported once to the output directory and parsed by every run.
+     *
+     * @param graph The graph.
+     */
+    public void setGraph(AutomatonGraph graph) {
+        this.graph = graph;
+        this.graphFile = null;
+    }
+
+    public void setEpochs(long epochs) {
+        this.epochs = epochs;
+    }
+
+    /**
+     * Sets the simulated time in seconds every run is calculated for.
+     *
+     * @param time The time.
+     */
+    public void setTime(double time) {
+        this.time = time;
+    }
+
+    /**
+     * Sets the identifiers of the nodes to observe, separated by commas.
+     *
+     * @param observedNodes The identifiers.
+     */
+    public void setObservedNodes(String observedNodes) {
+        this.observedNodes = observedNodes;
+    }
+
+    public void setObservationInterval(int observationInterval) {
+        this.observationInterval = observationInterval;
+    }
+
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The number of concurrent runs has to be positive.");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the time steps in seconds.
+     *
+     * @param timeSteps The time steps.
+     */
+    public void setTimeSteps(List<Double> timeSteps) {
+        this.timeSteps = timeSteps;
+    }
+
+    /**
+     * Sets the temperatures in degree celsius.
+     *
+     * @param temperatures The temperatures.
+     */
+    public void setTemperatures(List<Double> temperatures) {
+        this.temperatures = temperatures;
+    }
+
+    /**
+     * Sets the viscosities in millipascal seconds.
+     *
+     * @param viscosities The viscosities.
+     */
+    public void setViscosities(List<Double> viscosities) {
+        this.viscosities = viscosities;
+    }
+
+    /**
+     * Calculates all runs of the grid and blocks until they are finished.
+     *
+     * @param outputDirectory The directory the results are written to.
+     * @return The runs in the order of the grid.
+     * @throws IOException If the output could not be written.
+     * @throws InterruptedException If the thread was interrupted while waiting for the runs.
+     */
+    public List<SweepRun> run(Path outputDirectory) throws IOException, InterruptedException {
+        if (this.epochs == null && this.time == null) {
+            throw new IllegalStateException("Either the number of epochs or the time has to be set.");
+        }
+        Files.createDirectories(outputDirectory);
+        Path sharedGraphFile = this.graphFile;
+        if (this.graph != null) {
+            sharedGraphFile = outputDirectory.resolve(GRAPH_FILE_NAME);
+            GraphMLExportService.exportGraph(this.graph, sharedGraphFile.toFile());
+        }
+        List<SweepRun> runs = createRuns(outputDirectory);
+        logger.info("Starting parameter sweep with {} runs, {} at a time ...", runs.size(), this.parallelism);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.parallelism, runs.size()));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (SweepRun run : runs) {
+                Path runGraphFile = sharedGraphFile;
+                futures.add(executor.submit(() -> {
+                    execute(run, runGraphFile);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    logger.error("A run of the parameter sweep failed.", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        writeSummary(outputDirectory.resolve(SUMMARY_FILE_NAME), runs);
+        writeTrajectories(outputDirectory.resolve(TRAJECTORIES_FILE_NAME), runs);
+        logger.info("Finished parameter sweep, results are summarized in {}.", outputDirectory.resolve(SUMMARY_FILE_NAME));
+        return runs;
+    }
+
+    private List<SweepRun> createRuns(Path outputDirectory) {
+        List<SweepRun> runs = new ArrayList<>();
+        for (Double timeStep : valuesOrDefault(this.timeSteps)) {
+            for (Double temperature : valuesOrDefault(this.temperatures)) {
+                for (Double viscosity : valuesOrDefault(this.viscosities)) {
+                    int index = runs.size();
+                    Path runDirectory = outputDirectory.resolve(String.format("run-%04d", index));
+                    runs.add(new SweepRun(index, timeStep, temperature, viscosity, runDirectory));
+                }
+            }
+        }
+        return runs;
+    }
+
+    private static List<Double> valuesOrDefault(List<Double> values) {
+        if (values == null || values.isEmpty()) {
+            // keep the value of the model
+            return Collections.singletonList(null);
+        }
+        return values;
+    }
+
+    private void execute(SweepRun run, Path graphFile) throws IOException, InterruptedException {
+        Files.createDirectories(run.getOutputDirectory());
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(HeadlessSimulation.class.getName());
+        command.add("--model");
+        command.add(this.model);
+        if (graphFile != null) {
+            command.add("--graph");
+            command.add(graphFile.toString());
+        }
+        if (this.epochs != null) {
+            command.add("--epochs");
+            command.add(String.valueOf(this.epochs));
+        }
+        if (this.time != null) {
+            command.add("--time");
+            command.add(String.valueOf(this.time));
+        }
+        if (this.observedNodes != null) {
+            command.add("--observe");
+            command.add(this.observedNodes);
+        }
+        command.add("--observe-every");
+        command.add(String.valueOf(this.observationInterval));
+        command.add("--output");
+        command.add(run.getOutputDirectory().toString());
+        if (run.getTimeStep() != null) {
+            command.add("--time-step");
+            command.add(String.valueOf(run.getTimeStep()));
+        }
+        if (run.getTemperature() != null) {
+            command.add("--temperature");
+            command.add(String.valueOf(run.getTemperature()));
+        }
+        if (run.getViscosity() != null) {
+            command.add("--viscosity");
+            command.add(String.valueOf(run.getViscosity()));
+        }
+
+        logger.debug("Starting {} ...", run);
+        long start = System.currentTimeMillis();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(run.getOutputDirectory().resolve(LOG_FILE_NAME).toFile())
+                .start();
+        try {
+            run.setExitCode(process.waitFor());
+        } finally {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }
+        run.setWallTimeMillis(System.currentTimeMillis() - start);
+        if (run.isSuccessful()) {
+            logger.info("Finished {} after {} ms.", run, run.getWallTimeMillis());
+        } else {
+            logger.warn("Failed {}, see {} for details.", run, run.getOutputDirectory().resolve(LOG_FILE_NAME));
+        }
+    }
+
+    private static void writeSummary(Path summaryFile, List<SweepRun> runs) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(summaryFile)) {
+            writer.write("run\ttime_step_s\ttemperature_celsius\tviscosity_mpas\texit_code\twall_time_ms\tdirectory");
+            writer.newLine();
+            for (SweepRun run : runs) {
+                writer.write(run.getIndex() + "\t" + valueOrEmpty(run.getTimeStep()) + "\t" +
+                        valueOrEmpty(run.getTemperature()) + "\t" + valueOrEmpty(run.getViscosity()) + "\t" +
+                        run.getExitCode() + "\t" + run.getWallTimeMillis() + "\t" +
+                        summaryFile.getParent().relativize(run.getOutputDirectory()));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Merges the trajectories of all successful runs into a single table. Every observation file of a run is expected
+     * to start with a header, the node is named after the file. Files with other columns than the first file are
+     * skipped. The table is not written if no trajectories have been observed.
+     */
+    private static void writeTrajectories(Path trajectoriesFile, List<SweepRun> runs) throws IOException {
+        List<String> columns = null;
+        try (BufferedWriter writer = Files.newBufferedWriter(trajectoriesFile)) {
+            for (SweepRun run : runs) {
+                if (!run.isSuccessful()) {
+                    continue;
+                }
+                String runKey = run.getIndex() + "\t" + valueOrEmpty(run.getTimeStep()) + "\t" +
+                        valueOrEmpty(run.getTemperature()) + "\t" + valueOrEmpty(run.getViscosity()) + "\t";
+                for (Path observationFile : listObservationFiles(run.getOutputDirectory())) {
+                    try (BufferedReader reader = Files.newBufferedReader(observationFile)) {
+                        String header = readDataLine(reader);
+                        if (header == null) {
+                            continue;
+                        }
+                        String separator = header.contains("\t") ? "\t" : ",";
+                        List<String> fileColumns = Arrays.stream(header.split(separator, -1))
+                                .map(String::trim)
+                                .collect(Collectors.toList());
+                        if (columns == null) {
+                            columns = fileColumns;
+                            writer.write("run\ttime_step_s\ttemperature_celsius\tviscosity_mpas\tnode\t" +
+                                    String.join("\t", columns));
+                            writer.newLine();
+                        } else if (!columns.equals(fileColumns)) {
+                            logger.warn("Skipping {}, its columns differ from the other trajectories.", observationFile);
+                            continue;
+                        }
+                        String rowKey = runKey + nodeName(observationFile) + "\t";
+                        String line;
+                        while ((line = readDataLine(reader)) != null) {
+                            writer.write(rowKey + line.replace(separator, "\t"));
+                            writer.newLine();
+                        }
+                    }
+                }
+            }
+        }
+        if (columns == null) {
+            Files.delete(trajectoriesFile);
+        } else {
+            logger.info("Merged the observed trajectories into {}.", trajectoriesFile);
+        }
+    }
+
+    private static List<Path> listObservationFiles(Path runDirectory) throws IOException {
+        if (!Files.isDirectory(runDirectory)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> files = Files.walk(runDirectory)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> !file.getFileName().toString().equals(LOG_FILE_NAME))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Returns the next line that is neither empty nor a comment.
+     */
+    private static String readDataLine(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.trim().isEmpty() && !line.startsWith("#")) {
+                return line;
+            }
+        }
+        return null;
+    }
+
+    private static String nodeName(Path observationFile) {
+        String fileName = observationFile.getFileName().toString();
+        int extension = fileName.lastIndexOf('.');
+        return extension > 0 ? fileName.substring(0, extension) : fileName;
+    }
+
+    private static String valueOrEmpty(Double value) {
+        return value == null ? "" : value.toString();
+    }
+
+}
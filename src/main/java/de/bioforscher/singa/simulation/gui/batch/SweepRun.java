@@ -0,0 +1,101 @@
+package de.bioforscher.singa.simulation.gui.batch;
+
+import java.nio.file.Path;
+
+/**
+ * A single point of a {@link ParameterSweep}. Parameters that are {@code null} were not varied and keep the values
+ * set up by the model.
+ *
+ * @author cl
+ */
+public class SweepRun {
+
+    private final int index;
+    private final Double timeStep;
+    private final Double temperature;
+    private final Double viscosity;
+    private final Path outputDirectory;
+
+    private int exitCode = -1;
+    private long wallTimeMillis;
+
+    SweepRun(int index, Double timeStep, Double temperature, Double viscosity, Path outputDirectory) {
+        this.index = index;
+        this.timeStep = timeStep;
+        this.temperature = temperature;
+        this.viscosity = viscosity;
+        this.outputDirectory = outputDirectory;
+    }
+
+    public int getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Returns the time step in seconds.
+     *
+     * @return The time step.
+     */
+    public Double getTimeStep() {
+        return this.timeStep;
+    }
+
+    /**
+     * Returns the temperature in degree celsius.
+     *
+     * @return The temperature.
+     */
+    public Double getTemperature() {
+        return this.temperature;
+    }
+
+    /**
+     * Returns the viscosity in millipascal seconds.
+     *
+     * @return The viscosity.
+     */
+    public Double getViscosity() {
+        return this.viscosity;
+    }
+
+    /**
+     * Returns the directory the observed trajectories of this run are written to.
+     *
+     * @return The directory.
+     */
+    public Path getOutputDirectory() {
+        return this.outputDirectory;
+    }
+
+    public int getExitCode() {
+        return this.exitCode;
+    }
+
+    void setExitCode(int exitCode) {
+        this.exitCode = exitCode;
+    }
+
+    public boolean isSuccessful() {
+        return this.exitCode == 0;
+    }
+
+    public long getWallTimeMillis() {
+        return this.wallTimeMillis;
+    }
+
+    void setWallTimeMillis(long wallTimeMillis) {
+        this.wallTimeMillis = wallTimeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "SweepRun{" +
+                "index=" + this.index +
+                ", timeStep=" + this.timeStep +
+                ", temperature=" + this.temperature +
+                ", viscosity=" + this.viscosity +
+                ", exitCode=" + this.exitCode +
+                '}';
+    }
+
+}
@@ -0,0 +1,383 @@
+package de.bioforscher.singa.simulation.gui.checkpoints;
+
+import de.bioforscher.singa.chemistry.descriptive.entities.ChemicalEntity;
+import de.bioforscher.singa.simulation.gui.snapshots.SimulationSnapshot;
+import de.bioforscher.singa.simulation.model.compartments.NodeState;
+import de.bioforscher.singa.simulation.model.graphs.AutomatonGraph;
+import de.bioforscher.singa.simulation.model.graphs.AutomatonNode;
+import de.bioforscher.singa.simulation.modules.model.Simulation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the state of a simulation to a compact binary file and restores it. The structure of the graph is not part
+ * of a checkpoint (it is stored by the GraphML export), a checkpoint can only be restored into a graph that contains
+ * the nodes it was written from. The file is laid out as follows:
+ * <pre>
+ *     int     length of the header
+ *     header  magic number, version, epoch, elapsed time and its unit, number of nodes and entities,
+ *             identifiers of all sections and entities
+ *     tables  identifier, state ordinal and section index (int) and observation flag (byte) of every node
+ *     chunks  one block of concentrations (double) per entity and node
+ * </pre>
+ * The tables and every chunk of concentrations are aligned to eight bytes. They are written to a temporary file with
+ * positional writes and flushed to the disk once, the temporary file then replaces the checkpoint. No memory mapping is
+ * held while the file is moved, as some platforms can not move mapped files.
+ *
+ * @author cl
+ */
+public class SimulationCheckpoint {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimulationCheckpoint.class);
+
+    private static final int MAGIC_NUMBER = 0x53434B50;
+    private static final int VERSION = 1;
+
+    private final long epoch;
+    private final double elapsedTime;
+    private final String elapsedTimeUnit;
+    private final int nodeCount;
+    private final List<String> entityIdentifiers;
+
+    private SimulationCheckpoint(long epoch, double elapsedTime, String elapsedTimeUnit, int nodeCount,
+                                 List<String> entityIdentifiers) {
+        this.epoch = epoch;
+        this.elapsedTime = elapsedTime;
+        this.elapsedTimeUnit = elapsedTimeUnit;
+        this.nodeCount = nodeCount;
+        this.entityIdentifiers = entityIdentifiers;
+    }
+
+    public long getEpoch() {
+        return this.epoch;
+    }
+
+    public double getElapsedTime() {
+        return this.elapsedTime;
+    }
+
+    public String getElapsedTimeUnit() {
+        return this.elapsedTimeUnit;
+    }
+
+    public int getNodeCount() {
+        return this.nodeCount;
+    }
+
+    public List<String> getEntityIdentifiers() {
+        return this.entityIdentifiers;
+    }
+
+    /**
+     * Writes the snapshot to the given file. The checkpoint is written to a temporary file first and moved to the
+     * target afterwards, so an existing checkpoint is never left in a broken state.
+     *
+     * @param snapshot The snapshot.
+     * @param file The file.
+     * @throws IOException If the file could not be written.
+     */
+    public static void write(SimulationSnapshot snapshot, Path file) throws IOException {
+        long start = System.nanoTime();
+        int nodes = snapshot.getNodeCount();
+        List<ChemicalEntity<?>> entities = snapshot.getEntities();
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        try (DataOutputStream header = new DataOutputStream(headerBytes)) {
+            header.writeInt(MAGIC_NUMBER);
+            header.writeInt(VERSION);
+            header.writeLong(snapshot.getEpoch());
+            header.writeDouble(snapshot.getElapsedTime());
+            header.writeUTF(String.valueOf(snapshot.getElapsedTimeUnit()));
+            header.writeInt(nodes);
+            header.writeInt(entities.size());
+            header.writeInt(snapshot.getSectionCount());
+            for (int section = 0; section < snapshot.getSectionCount(); section++) {
+                header.writeUTF(snapshot.getSectionIdentifier(section));
+            }
+            for (ChemicalEntity<?> entity : entities) {
+                header.writeUTF(entity.getIdentifier().toString());
+            }
+        }
+        byte[] header = headerBytes.toByteArray();
+        Layout layout = new Layout(header.length, nodes);
+
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer tables = ByteBuffer.allocate((int) layout.chunkOffset);
+            tables.putInt(header.length);
+            tables.put(header);
+            tables.position((int) layout.tableOffset);
+            for (int row = 0; row < nodes; row++) {
+                tables.putInt(snapshot.getIdentifier(row));
+            }
+            for (int row = 0; row < nodes; row++) {
+                tables.putInt(snapshot.getStateOrdinal(row));
+            }
+            for (int row = 0; row < nodes; row++) {
+                tables.putInt(snapshot.getSectionIndex(row));
+            }
+            for (int row = 0; row < nodes; row++) {
+                tables.put(snapshot.isObserved(row) ? (byte) 1 : (byte) 0);
+            }
+            tables.clear();
+            writeFully(channel, tables, 0);
+            // one buffer is reused for all chunks
+            ByteBuffer chunk = ByteBuffer.allocateDirect((int) layout.chunkSize);
+            for (int entity = 0; entity < entities.size(); entity++) {
+                chunk.clear();
+                chunk.asDoubleBuffer().put(snapshot.getConcentrations(entity), 0, nodes);
+                writeFully(channel, chunk, layout.getChunkOffset(entity));
+            }
+            // a single flush for the whole file, the file is closed before it is moved
+            channel.force(true);
+        }
+        try {
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        logger.debug("Wrote checkpoint of epoch {} with {} nodes and {} entities in {} ms.", snapshot.getEpoch(),
+                nodes, entities.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Restores the concentrations, states and observation flags of all nodes of the simulation from the given file.
+     * The clock of the simulation and the compartments of the nodes can not be restored, a checkpoint is only restored
+     * if it was written at the current epoch and the nodes are assigned to the same sections. The file is validated
+     * completely before any node is changed. Must only be called while the simulation is paused.
+     *
+     * @param file The file.
+     * @param simulation The simulation.
+     * @return The checkpoint that has been restored.
+     * @throws IOException If the file could not be read, is no checkpoint or does not fit the simulation.
+     */
+    public static SimulationCheckpoint restore(Path file, Simulation simulation) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+            while (lengthBuffer.hasRemaining()) {
+                if (channel.read(lengthBuffer) < 0) {
+                    throw new IOException(file + " is no simulation checkpoint.");
+                }
+            }
+            lengthBuffer.flip();
+            int headerLength = lengthBuffer.getInt();
+            if (headerLength <= 0 || headerLength > channel.size()) {
+                throw new IOException(file + " is no simulation checkpoint.");
+            }
+            ByteBuffer headerBuffer = channel.map(FileChannel.MapMode.READ_ONLY, Integer.BYTES, headerLength);
+            byte[] headerBytes = new byte[headerLength];
+            headerBuffer.get(headerBytes);
+
+            SimulationCheckpoint checkpoint;
+            List<String> sectionIdentifiers = new ArrayList<>();
+            try (DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBytes))) {
+                if (header.readInt() != MAGIC_NUMBER) {
+                    throw new IOException(file + " is no simulation checkpoint.");
+                }
+                int version = header.readInt();
+                if (version != VERSION) {
+                    throw new IOException("Checkpoints of version " + version + " are not supported.");
+                }
+                long epoch = header.readLong();
+                double elapsedTime = header.readDouble();
+                String elapsedTimeUnit = header.readUTF();
+                int nodes = header.readInt();
+                int entities = header.readInt();
+                int sections = header.readInt();
+                if (nodes < 0 || entities < 0 || sections < 0) {
+                    throw new IOException(file + " is corrupt.");
+                }
+                for (int section = 0; section < sections; section++) {
+                    sectionIdentifiers.add(header.readUTF());
+                }
+                List<String> entityIdentifiers = new ArrayList<>();
+                for (int entity = 0; entity < entities; entity++) {
+                    entityIdentifiers.add(header.readUTF());
+                }
+                checkpoint = new SimulationCheckpoint(epoch, elapsedTime, elapsedTimeUnit, nodes, entityIdentifiers);
+            }
+            checkClock(checkpoint, simulation);
+
+            Layout layout = new Layout(headerLength, checkpoint.nodeCount);
+            if (channel.size() < layout.getChunkOffset(checkpoint.entityIdentifiers.size())) {
+                throw new IOException(file + " is truncated.");
+            }
+            NodeTables tables = readNodeTables(file, channel, layout, simulation.getGraph(), sectionIdentifiers);
+            tables.apply();
+            restoreConcentrations(channel, layout, checkpoint, simulation, tables.nodes);
+            logger.info("Restored checkpoint of epoch {} ({} {}) from {}.", checkpoint.epoch, checkpoint.elapsedTime,
+                    checkpoint.elapsedTimeUnit, file);
+            return checkpoint;
+        }
+    }
+
+    /**
+     * Refuses checkpoints that were written at another time than the current time of the simulation, as the clock of
+     * the simulation can not be set.
+     */
+    private static void checkClock(SimulationCheckpoint checkpoint, Simulation simulation) throws IOException {
+        long epoch = simulation.getEpoch();
+        double elapsedTime = simulation.getElapsedTime().getValue().doubleValue();
+        String elapsedTimeUnit = String.valueOf(simulation.getElapsedTime().getUnit());
+        if (checkpoint.epoch != epoch || Double.compare(checkpoint.elapsedTime, elapsedTime) != 0 ||
+                !checkpoint.elapsedTimeUnit.equals(elapsedTimeUnit)) {
+            throw new IOException(String.format("The checkpoint was written at epoch %d (%s %s), but the simulation " +
+                            "is at epoch %d (%s %s). The clock of the simulation can not be restored.",
+                    checkpoint.epoch, checkpoint.elapsedTime, checkpoint.elapsedTimeUnit, epoch, elapsedTime,
+                    elapsedTimeUnit));
+        }
+    }
+
+    private static NodeTables readNodeTables(Path file, FileChannel channel, Layout layout, AutomatonGraph graph,
+                                             List<String> sectionIdentifiers) throws IOException {
+        int nodeCount = layout.nodeCount;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, layout.tableOffset,
+                layout.chunkOffset - layout.tableOffset);
+        NodeTables tables = new NodeTables(nodeCount);
+        int missingNodes = 0;
+        for (int row = 0; row < nodeCount; row++) {
+            tables.nodes[row] = graph.getNode(buffer.getInt());
+            if (tables.nodes[row] == null) {
+                missingNodes++;
+            }
+        }
+        if (missingNodes == nodeCount && nodeCount > 0) {
+            throw new IOException("The checkpoint does not belong to the current graph.");
+        }
+        NodeState[] states = NodeState.values();
+        for (int row = 0; row < nodeCount; row++) {
+            int state = buffer.getInt();
+            if (state < 0 || state >= states.length) {
+                throw new IOException(file + " is corrupt, node " + row + " has the unknown state " + state + ".");
+            }
+            tables.states[row] = states[state];
+        }
+        int differingSections = 0;
+        for (int row = 0; row < nodeCount; row++) {
+            int section = buffer.getInt();
+            if (section < 0 || section >= sectionIdentifiers.size()) {
+                throw new IOException(file + " is corrupt, node " + row + " has the unknown section " + section + ".");
+            }
+            if (tables.nodes[row] != null &&
+                    !tables.nodes[row].getCellSection().getIdentifier().equals(sectionIdentifiers.get(section))) {
+                differingSections++;
+            }
+        }
+        if (differingSections > 0) {
+            throw new IOException(differingSections + " nodes are assigned to other sections than in the checkpoint. " +
+                    "The compartments of the nodes can not be restored.");
+        }
+        for (int row = 0; row < nodeCount; row++) {
+            tables.observed[row] = buffer.get() != 0;
+        }
+        if (missingNodes > 0) {
+            logger.warn("{} nodes of the checkpoint are not part of the current graph and are skipped.", missingNodes);
+        }
+        return tables;
+    }
+
+    private static void restoreConcentrations(FileChannel channel, Layout layout, SimulationCheckpoint checkpoint,
+                                              Simulation simulation, AutomatonNode[] nodes) throws IOException {
+        Map<String, ChemicalEntity<?>> entities = new HashMap<>();
+        for (ChemicalEntity<?> entity : simulation.getChemicalEntities()) {
+            entities.put(entity.getIdentifier().toString(), entity);
+        }
+        double[] concentrations = new double[layout.nodeCount];
+        for (int entityIndex = 0; entityIndex < checkpoint.entityIdentifiers.size(); entityIndex++) {
+            ChemicalEntity<?> entity = entities.get(checkpoint.entityIdentifiers.get(entityIndex));
+            if (entity == null) {
+                logger.warn("The simulation does not contain the entity {}, its concentrations are skipped.",
+                        checkpoint.entityIdentifiers.get(entityIndex));
+                continue;
+            }
+            DoubleBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, layout.getChunkOffset(entityIndex),
+                    layout.chunkSize).asDoubleBuffer();
+            chunk.get(concentrations, 0, layout.nodeCount);
+            for (int row = 0; row < layout.nodeCount; row++) {
+                if (nodes[row] != null) {
+                    nodes[row].setConcentration(entity, concentrations[row]);
+                }
+            }
+        }
+    }
+
+    /**
+     * The states and observation flags of the nodes of a checkpoint, read completely before they are applied.
+     */
+    private static class NodeTables {
+
+        private final AutomatonNode[] nodes;
+        private final NodeState[] states;
+        private final boolean[] observed;
+
+        NodeTables(int nodeCount) {
+            this.nodes = new AutomatonNode[nodeCount];
+            this.states = new NodeState[nodeCount];
+            this.observed = new boolean[nodeCount];
+        }
+
+        void apply() {
+            for (int row = 0; row < this.nodes.length; row++) {
+                if (this.nodes[row] != null) {
+                    this.nodes[row].setState(this.states[row]);
+                    this.nodes[row].setObserved(this.observed[row]);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * The offsets of the sections of a checkpoint file.
+     */
+    private static class Layout {
+
+        private final int nodeCount;
+        private final long tableOffset;
+        private final long chunkOffset;
+        private final long chunkSize;
+
+        Layout(int headerLength, int nodeCount) {
+            this.nodeCount = nodeCount;
+            this.tableOffset = align(Integer.BYTES + headerLength);
+            this.chunkOffset = align(this.tableOffset + (3L * Integer.BYTES + 1L) * nodeCount);
+            this.chunkSize = (long) Double.BYTES * nodeCount;
+        }
+
+        long getChunkOffset(int entityIndex) {
+            return this.chunkOffset + entityIndex * this.chunkSize;
+        }
+
+        private static long align(long offset) {
+            return (offset + 7) & ~7L;
+        }
+
+    }
+
+}
@@ -73,6 +73,15 @@ public class PlotControlPanel extends GridPane {
         }
     }
 
+    /**
+     * Limits the time axes of all plots to the time of a recorded frame.
+     *
+     * @param time The time or null to follow the simulation again.
+     */
+    public void setReplayTime(Double time) {
+        this.plotCards.getItems().forEach(plotCard -> plotCard.getPlot().setReplayTime(time));
+    }
+
     public ObservableList<PlotCard> getPlotCards() {
         return this.plotCards.getItems();
     }
@@ -3,6 +3,10 @@ package de.bioforscher.singa.simulation.gui.components.menus;
 import de.bioforscher.singa.chemistry.descriptive.entities.ChemicalEntities;
 import de.bioforscher.singa.chemistry.descriptive.entities.ChemicalEntity;
 import de.bioforscher.singa.simulation.gui.components.panes.SimulationCanvas;
+import de.bioforscher.singa.simulation.gui.renderer.BioGraphRenderOptions;
+import de.bioforscher.singa.simulation.gui.renderer.ConcentrationScaling;
+import de.bioforscher.singa.simulation.gui.renderer.NodeStyle;
+import de.bioforscher.singa.simulation.gui.renderer.RenderingBackend;
 import de.bioforscher.singa.simulation.gui.renderer.RenderingMode;
 import de.bioforscher.singa.simulation.modules.model.Simulation;
 import javafx.event.ActionEvent;
@@ -26,6 +30,13 @@ public class AutomatonContextMenu extends ContextMenu {
     private MenuItem colorByCompartment = new MenuItem();
     private Menu colorByChemicalEntityMenu;
     private ToggleGroup chemicalEntitiesGrouping;
+    private CheckMenuItem logarithmicScaleItem = new CheckMenuItem();
+    private CheckMenuItem automaticRangeItem = new CheckMenuItem();
+    private Menu nodeStyleMenu;
+    private Menu renderingBackendMenu;
+    private CheckMenuItem backgroundRenderingItem = new CheckMenuItem();
+    private CheckMenuItem interpolationItem = new CheckMenuItem();
+    private MenuItem resetViewItem = new MenuItem();
 
     public AutomatonContextMenu(Simulation simulation, SimulationCanvas canvas) {
         this.simulation = simulation;
@@ -33,6 +44,11 @@ public class AutomatonContextMenu extends ContextMenu {
         configureColorByStateItem();
         configureColorByCompartmentItem();
         configureColorByChemicalEntityMenu();
+        configureScaleItems();
+        configureNodeStyleMenu();
+        configureRenderingBackendMenu();
+        this.resetViewItem.setText("Reset view");
+        this.resetViewItem.setOnAction(event -> this.owner.resetView());
         addItemsToMenu();
     }
 
@@ -62,6 +78,50 @@ public class AutomatonContextMenu extends ContextMenu {
         }
     }
 
+    private void configureScaleItems() {
+        BioGraphRenderOptions options = this.owner.getRenderer().getBioRenderingOptions();
+        this.logarithmicScaleItem.setText("Logarithmic concentrations");
+        this.logarithmicScaleItem.setSelected(options.getConcentrationScaling() == ConcentrationScaling.LOGARITHMIC);
+        this.logarithmicScaleItem.setOnAction(this::toggleLogarithmicScale);
+        this.automaticRangeItem.setText("Fit range to concentrations");
+        this.automaticRangeItem.setSelected(options.isAutomaticRange());
+        this.automaticRangeItem.setOnAction(this::toggleAutomaticRange);
+    }
+
+    private void configureNodeStyleMenu() {
+        this.nodeStyleMenu = new Menu("Draw nodes as ...");
+        ToggleGroup nodeStyleGrouping = new ToggleGroup();
+        NodeStyle selectedStyle = this.owner.getRenderer().getBioRenderingOptions().getNodeStyle();
+        for (NodeStyle nodeStyle : NodeStyle.values()) {
+            RadioMenuItem styleItem = new RadioMenuItem(nodeStyle.getRepresentativeName());
+            styleItem.setUserData(nodeStyle);
+            styleItem.setToggleGroup(nodeStyleGrouping);
+            styleItem.setSelected(nodeStyle == selectedStyle);
+            styleItem.setOnAction(this::selectNodeStyle);
+            this.nodeStyleMenu.getItems().add(styleItem);
+        }
+    }
+
+    private void configureRenderingBackendMenu() {
+        this.renderingBackendMenu = new Menu("Draw nodes ...");
+        ToggleGroup renderingBackendGrouping = new ToggleGroup();
+        RenderingBackend selectedBackend = this.owner.getRenderer().getBioRenderingOptions().getRenderingBackend();
+        for (RenderingBackend renderingBackend : RenderingBackend.values()) {
+            RadioMenuItem backendItem = new RadioMenuItem(renderingBackend.getRepresentativeName());
+            backendItem.setUserData(renderingBackend);
+            backendItem.setToggleGroup(renderingBackendGrouping);
+            backendItem.setSelected(renderingBackend == selectedBackend);
+            backendItem.setOnAction(this::selectRenderingBackend);
+            this.renderingBackendMenu.getItems().add(backendItem);
+        }
+        this.backgroundRenderingItem.setText("Draw in background");
+        this.backgroundRenderingItem.setSelected(this.owner.getRenderer().getBioRenderingOptions().isBackgroundRendering());
+        this.backgroundRenderingItem.setOnAction(this::toggleBackgroundRendering);
+        this.interpolationItem.setText("Interpolate between snapshots");
+        this.interpolationItem.setSelected(this.owner.getRenderer().getBioRenderingOptions().isInterpolated());
+        this.interpolationItem.setOnAction(this::toggleInterpolation);
+    }
+
     private void fillSpeciesMenu(Map<String, ChemicalEntity<?>> speciesMap) {
         for (Entry<String, ChemicalEntity<?>> species : speciesMap.entrySet()) {
             RadioMenuItem speciesMenuItem = setupSpeciesMenuItem(species.getValue());
@@ -78,7 +138,10 @@ public class AutomatonContextMenu extends ContextMenu {
     }
 
     private void addItemsToMenu() {
-        this.getItems().addAll(this.colorByStateItem, this.colorByCompartment, this.colorByChemicalEntityMenu);
+        this.getItems().addAll(this.colorByStateItem, this.colorByCompartment, this.colorByChemicalEntityMenu,
+                new SeparatorMenuItem(), this.logarithmicScaleItem, this.automaticRangeItem, new SeparatorMenuItem(),
+                this.nodeStyleMenu, this.renderingBackendMenu, this.backgroundRenderingItem, this.interpolationItem,
+                this.resetViewItem);
     }
 
     private void colorBySpecies(ActionEvent event) {
@@ -99,6 +162,39 @@ public class AutomatonContextMenu extends ContextMenu {
         this.owner.draw();
     }
 
+    private void toggleLogarithmicScale(ActionEvent event) {
+        this.owner.getRenderer().getBioRenderingOptions().setConcentrationScaling(this.logarithmicScaleItem.isSelected() ?
+                ConcentrationScaling.LOGARITHMIC : ConcentrationScaling.LINEAR);
+        this.owner.draw();
+    }
+
+    private void toggleAutomaticRange(ActionEvent event) {
+        this.owner.getRenderer().getBioRenderingOptions().setAutomaticRange(this.automaticRangeItem.isSelected());
+        this.owner.draw();
+    }
+
+    private void selectNodeStyle(ActionEvent event) {
+        NodeStyle nodeStyle = (NodeStyle) ((RadioMenuItem) event.getSource()).getUserData();
+        this.owner.getRenderer().getBioRenderingOptions().setNodeStyle(nodeStyle);
+        this.owner.draw();
+    }
+
+    private void selectRenderingBackend(ActionEvent event) {
+        RenderingBackend renderingBackend = (RenderingBackend) ((RadioMenuItem) event.getSource()).getUserData();
+        this.owner.getRenderer().getBioRenderingOptions().setRenderingBackend(renderingBackend);
+        this.owner.draw();
+    }
+
+    private void toggleBackgroundRendering(ActionEvent event) {
+        this.owner.getRenderer().getBioRenderingOptions().setBackgroundRendering(this.backgroundRenderingItem.isSelected());
+        this.owner.draw();
+    }
+
+    private void toggleInterpolation(ActionEvent event) {
+        this.owner.getRenderer().getBioRenderingOptions().setInterpolated(this.interpolationItem.isSelected());
+        this.owner.draw();
+    }
+
     public Simulation getSimulation() {
         return this.simulation;
     }
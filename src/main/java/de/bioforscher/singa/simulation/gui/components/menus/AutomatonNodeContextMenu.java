@@ -86,11 +86,13 @@ public class AutomatonNodeContextMenu extends ContextMenu {
         ConcentrationPlot plot = new ConcentrationPlot(simulation.getChemicalEntities(), this.node);
         simulation.getListeners().add(plot);
         this.owner.getPlotControlPanel().getPlotCards().add(new PlotCard(this.owner.getSimulation(), plot));
+        this.owner.getSimulationCanvas().getRenderer().invalidateNodeAttributes();
         this.owner.redrawGraph();
     }
 
     private void setState(ActionEvent event) {
         this.node.setState(((NodeState)((RadioMenuItem)event.getSource()).getUserData()));
+        this.owner.getSimulationCanvas().getRenderer().invalidateNodeAttributes();
         this.owner.redrawGraph();
     }
 
@@ -0,0 +1,178 @@
+package de.bioforscher.singa.simulation.gui.components.panes;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+
+import java.util.Arrays;
+
+/**
+ * A transparent canvas stacked over the {@link SimulationCanvas}, that shows transient graphics while the user
+ * interacts with the graph: the hovered node (filled with the color a click would set, if concentrations are
+ * edited), the dragged selection rectangle or lasso and the measured distance. The overlay is cleared and redrawn
+ * completely on every change, which only costs a few shapes, such that the graph itself is not repainted while
+ * dragging. All coordinates are coordinates of the canvas. The overlay does not receive mouse events.
+ *
+ * @author cl
+ */
+public class OverlayCanvas extends Canvas {
+
+    private static final Color SELECTION_COLOR = Color.DARKOLIVEGREEN.deriveColor(1, 1, 1, 0.5);
+    private static final Color HOVER_COLOR = Color.BLUEVIOLET;
+    private static final Color MEASUREMENT_COLOR = Color.BLACK;
+
+    private boolean hoverVisible;
+    private double hoverX;
+    private double hoverY;
+    private double hoverDiameter;
+    private Color hoverFill;
+
+    private boolean rectangleVisible;
+    private double rectangleStartX;
+    private double rectangleStartY;
+    private double rectangleEndX;
+    private double rectangleEndY;
+
+    private double[] lassoXs = new double[0];
+    private double[] lassoYs = new double[0];
+    private int lassoVertices;
+
+    private boolean measurementVisible;
+    private double measurementStartX;
+    private double measurementStartY;
+    private double measurementEndX;
+    private double measurementEndY;
+    private String measurementLabel;
+
+    public OverlayCanvas() {
+        setMouseTransparent(true);
+        this.widthProperty().addListener(observable -> redraw());
+        this.heightProperty().addListener(observable -> redraw());
+    }
+
+    /**
+     * Highlights a node.
+     *
+     * @param x The x coordinate of the center of the node.
+     * @param y The y coordinate of the center of the node.
+     * @param diameter The diameter of the node on the canvas.
+     * @param fill The color the node is filled with, may be null to only outline it.
+     */
+    public void showHover(double x, double y, double diameter, Color fill) {
+        this.hoverVisible = true;
+        this.hoverX = x;
+        this.hoverY = y;
+        this.hoverDiameter = diameter;
+        this.hoverFill = fill;
+        redraw();
+    }
+
+    public void hideHover() {
+        if (this.hoverVisible) {
+            this.hoverVisible = false;
+            redraw();
+        }
+    }
+
+    public void showRectangle(double startX, double startY, double endX, double endY) {
+        this.rectangleVisible = true;
+        this.rectangleStartX = startX;
+        this.rectangleStartY = startY;
+        this.rectangleEndX = endX;
+        this.rectangleEndY = endY;
+        redraw();
+    }
+
+    public void hideRectangle() {
+        this.rectangleVisible = false;
+        redraw();
+    }
+
+    /**
+     * Shows a lasso. The vertices are copied.
+     *
+     * @param xs The x coordinates of the vertices.
+     * @param ys The y coordinates of the vertices.
+     * @param vertexCount The number of vertices.
+     */
+    public void showLasso(double[] xs, double[] ys, int vertexCount) {
+        if (this.lassoXs.length < vertexCount) {
+            this.lassoXs = Arrays.copyOf(xs, xs.length);
+            this.lassoYs = Arrays.copyOf(ys, ys.length);
+        } else {
+            System.arraycopy(xs, 0, this.lassoXs, 0, vertexCount);
+            System.arraycopy(ys, 0, this.lassoYs, 0, vertexCount);
+        }
+        this.lassoVertices = vertexCount;
+        redraw();
+    }
+
+    public void hideLasso() {
+        this.lassoVertices = 0;
+        redraw();
+    }
+
+    /**
+     * Shows a measured distance as a line with a label at its end.
+     *
+     * @param startX The x coordinate of the start.
+     * @param startY The y coordinate of the start.
+     * @param endX The x coordinate of the end.
+     * @param endY The y coordinate of the end.
+     * @param label The measured distance.
+     */
+    public void showMeasurement(double startX, double startY, double endX, double endY, String label) {
+        this.measurementVisible = true;
+        this.measurementStartX = startX;
+        this.measurementStartY = startY;
+        this.measurementEndX = endX;
+        this.measurementEndY = endY;
+        this.measurementLabel = label;
+        redraw();
+    }
+
+    public void hideMeasurement() {
+        this.measurementVisible = false;
+        redraw();
+    }
+
+    private void redraw() {
+        GraphicsContext graphicsContext = getGraphicsContext2D();
+        graphicsContext.clearRect(0, 0, getWidth(), getHeight());
+        if (this.hoverVisible) {
+            double radius = this.hoverDiameter / 2.0;
+            if (this.hoverFill != null) {
+                graphicsContext.setFill(this.hoverFill);
+                graphicsContext.fillOval(this.hoverX - radius, this.hoverY - radius, this.hoverDiameter,
+                        this.hoverDiameter);
+            }
+            graphicsContext.setStroke(HOVER_COLOR);
+            graphicsContext.setLineWidth(2);
+            graphicsContext.strokeOval(this.hoverX - radius - 2, this.hoverY - radius - 2, this.hoverDiameter + 4,
+                    this.hoverDiameter + 4);
+        }
+        if (this.rectangleVisible) {
+            graphicsContext.setFill(SELECTION_COLOR);
+            graphicsContext.fillRect(Math.min(this.rectangleStartX, this.rectangleEndX),
+                    Math.min(this.rectangleStartY, this.rectangleEndY), Math.abs(this.rectangleEndX - this.rectangleStartX),
+                    Math.abs(this.rectangleEndY - this.rectangleStartY));
+        }
+        if (this.lassoVertices > 0) {
+            graphicsContext.setFill(SELECTION_COLOR);
+            graphicsContext.fillPolygon(this.lassoXs, this.lassoYs, this.lassoVertices);
+        }
+        if (this.measurementVisible) {
+            graphicsContext.setStroke(MEASUREMENT_COLOR);
+            graphicsContext.setLineWidth(1);
+            graphicsContext.strokeLine(this.measurementStartX, this.measurementStartY, this.measurementEndX,
+                    this.measurementEndY);
+            graphicsContext.setFill(MEASUREMENT_COLOR);
+            graphicsContext.setTextAlign(TextAlignment.LEFT);
+            graphicsContext.setTextBaseline(VPos.BOTTOM);
+            graphicsContext.fillText(this.measurementLabel, this.measurementEndX + 6, this.measurementEndY - 6);
+        }
+    }
+
+}
@@ -3,6 +3,8 @@ package de.bioforscher.singa.simulation.gui.components.panes;
 import javafx.scene.layout.AnchorPane;
 
 /**
+ * Resizes the {@link SimulationCanvas} and its {@link OverlayCanvas}, that is stacked on top of it, with the pane.
+ *
  * @author cl
  */
 public class ResizablePane extends AnchorPane {
@@ -11,8 +13,9 @@ public class ResizablePane extends AnchorPane {
 
     public ResizablePane(SimulationCanvas canvas) {
         this.canvas = canvas;
-        getChildren().add(canvas);
+        getChildren().addAll(canvas, canvas.getOverlay());
         canvas.setManaged(false);
+        canvas.getOverlay().setManaged(false);
     }
 
     @Override
@@ -20,6 +23,8 @@ public class ResizablePane extends AnchorPane {
         super.resize(width, height);
         this.canvas.setWidth(width);
         this.canvas.setHeight(height);
+        this.canvas.getOverlay().setWidth(width);
+        this.canvas.getOverlay().setHeight(height);
     }
 
 }
@@ -1,31 +1,64 @@
 package de.bioforscher.singa.simulation.gui.components.panes;
 
 import de.bioforscher.singa.chemistry.descriptive.entities.ChemicalEntity;
+import de.bioforscher.singa.features.parameters.EnvironmentalParameters;
 import de.bioforscher.singa.mathematics.geometry.faces.Rectangle;
 import de.bioforscher.singa.mathematics.vectors.Vector2D;
 import de.bioforscher.singa.simulation.gui.CellularGraphAutomatonSimulation;
+import de.bioforscher.singa.simulation.gui.SimulationManager;
 import de.bioforscher.singa.simulation.gui.components.menus.AutomatonNodeContextMenu;
 import de.bioforscher.singa.simulation.gui.components.menus.AutomatonContextMenu;
 import de.bioforscher.singa.simulation.gui.renderer.BioGraphRenderer;
+import de.bioforscher.singa.simulation.gui.renderer.Camera;
+import de.bioforscher.singa.simulation.gui.renderer.GraphGeometry;
+import de.bioforscher.singa.simulation.gui.renderer.RenderingMode;
+import de.bioforscher.singa.simulation.gui.snapshots.SimulationSnapshot;
+import de.bioforscher.singa.simulation.gui.spatial.NodeIndex;
 import de.bioforscher.singa.simulation.model.compartments.CellSection;
 import de.bioforscher.singa.simulation.model.compartments.EnclosedCompartment;
+import de.bioforscher.singa.simulation.model.graphs.AutomatonGraph;
 import de.bioforscher.singa.simulation.model.graphs.AutomatonNode;
+import javafx.scene.Cursor;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.paint.Color;
 
+import javax.measure.Quantity;
+import javax.measure.quantity.Length;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The canvas the graph is drawn on. Nodes are picked, hovered and selected through the {@link NodeIndex} of the
+ * renderer. Dragging a rectangle adds the enclosed nodes to the selected compartment, dragging a lasso while shift is
+ * pressed sets the concentration of the highlighted entity in the enclosed nodes and dragging while control is
+ * pressed measures distances. The mouse wheel zooms and dragging with the middle button pans the {@link Camera} of the
+ * renderer. Hovered nodes and dragged shapes are drawn on the {@link OverlayCanvas}, such that the graph is only
+ * repainted if it actually changed.
+ */
 public class SimulationCanvas extends Canvas {
 
     private CellularGraphAutomatonSimulation owner;
     private BioGraphRenderer renderer;
     private AutomatonContextMenu graphContextMenu;
+    private final OverlayCanvas overlay;
 
     private Vector2D dragStart;
+    private boolean lassoDrag;
+    private boolean measurementDrag;
+    private double[] lassoXs = new double[64];
+    private double[] lassoYs = new double[64];
+    private int lassoVertices;
+    private double panX;
+    private double panY;
 
     public SimulationCanvas(CellularGraphAutomatonSimulation owner) {
         this.owner = owner;
         this.renderer = new BioGraphRenderer();
+        this.overlay = new OverlayCanvas();
         this.graphContextMenu = new AutomatonContextMenu(this.owner.getSimulation(), this);
 
         this.addEventHandler(MouseEvent.MOUSE_CLICKED, this::handleClick);
@@ -33,6 +66,9 @@ public class SimulationCanvas extends Canvas {
         this.addEventHandler(MouseEvent.MOUSE_PRESSED, this::handleDrag);
         this.addEventHandler(MouseEvent.MOUSE_DRAGGED, this::handleDrag);
         this.addEventHandler(MouseEvent.MOUSE_RELEASED, this::handleDrag);
+        this.addEventHandler(MouseEvent.MOUSE_MOVED, this::handleHover);
+        this.addEventHandler(MouseEvent.MOUSE_EXITED, event -> this.overlay.hideHover());
+        this.addEventHandler(ScrollEvent.SCROLL, this::handleScroll);
 
         this.widthProperty().addListener(observable -> draw());
         this.heightProperty().addListener(observable -> draw());
@@ -42,27 +78,197 @@ public class SimulationCanvas extends Canvas {
         this.renderer.setGraphicsContext(this.getGraphicsContext2D());
     }
 
+    /**
+     * Returns the canvas transient graphics are drawn on. It has to be stacked over this canvas with the same size.
+     *
+     * @return The overlay.
+     */
+    public OverlayCanvas getOverlay() {
+        return this.overlay;
+    }
+
+    private void handleScroll(ScrollEvent event) {
+        if (event.getDeltaY() != 0) {
+            this.renderer.getCamera().zoom(Math.pow(1.1, event.getDeltaY() / 40.0), event.getX(), event.getY());
+            this.overlay.hideHover();
+            draw();
+        }
+        event.consume();
+    }
+
+    private void handlePan(MouseEvent event) {
+        if (event.getEventType() == MouseEvent.MOUSE_DRAGGED) {
+            this.renderer.getCamera().pan(event.getX() - this.panX, event.getY() - this.panY);
+            this.overlay.hideHover();
+            draw();
+        }
+        this.panX = event.getX();
+        this.panY = event.getY();
+    }
+
+    /**
+     * Moves the camera back to the arranged view of the whole graph.
+     */
+    public void resetView() {
+        this.renderer.getCamera().reset();
+        draw();
+    }
+
     private void handleDrag(MouseEvent event) {
-        if (event.getButton().equals(MouseButton.PRIMARY)) {
+        if (event.getButton().equals(MouseButton.MIDDLE)) {
+            handlePan(event);
+        } else if (event.getButton().equals(MouseButton.PRIMARY)) {
             if (event.getEventType() == MouseEvent.MOUSE_PRESSED) {
                 this.dragStart = new Vector2D(event.getX(), event.getY());
+                this.lassoDrag = event.isShiftDown();
+                this.measurementDrag = !this.lassoDrag && event.isShortcutDown();
+                this.lassoVertices = 0;
+                this.overlay.hideHover();
+            } else if (this.dragStart == null) {
+                // the drag started outside of the canvas
+                return;
+            } else if (this.lassoDrag) {
+                handleLassoDrag(event);
+            } else if (this.measurementDrag) {
+                handleMeasurementDrag(event);
             } else if (event.getEventType() == MouseEvent.MOUSE_DRAGGED) {
-                this.draw();
-                this.renderer.getGraphicsContext().setFill(Color.DARKOLIVEGREEN.deriveColor(1, 1, 1, 0.5));
-                this.renderer.drawDraggedRectangle(this.dragStart, new Vector2D(event.getX(), event.getY()));
+                this.overlay.showRectangle(this.dragStart.getX(), this.dragStart.getY(), event.getX(), event.getY());
             } else if (event.getEventType() == MouseEvent.MOUSE_RELEASED) {
-                this.renderer.getGraphicsContext().setFill(Color.DARKOLIVEGREEN.deriveColor(1, 1, 1, 0.5));
-                Rectangle rectangle = this.renderer.drawDraggedRectangle(this.dragStart, new Vector2D(event.getX(), event.getY()));
+                this.overlay.hideRectangle();
                 CellSection cellSection = this.owner.getCompartmentControlPanel().getSelectedCellSection();
                 if (cellSection != null && cellSection instanceof EnclosedCompartment) {
-                    this.owner.getGraph().addNodesToCompartment((EnclosedCompartment) cellSection, rectangle);
-                    this.owner.getCompartmentControlPanel().updateData(this.owner.getGraph().getCellSections());
+                    assignToCompartment((EnclosedCompartment) cellSection, event);
+                }
+                this.dragStart = null;
+            }
+        }
+    }
+
+    /**
+     * Assigns the nodes in the rectangle dragged on the canvas to the compartment. The index is only used to skip
+     * rectangles without nodes, the nodes are assigned by the graph, such that the compartment is registered the same
+     * way as for any other assignment. The simulation is paused before the graph is changed.
+     */
+    private void assignToCompartment(EnclosedCompartment compartment, MouseEvent event) {
+        AutomatonGraph graph = this.owner.getGraph();
+        Camera camera = this.renderer.getCamera();
+        double firstX = camera.toGraphX(this.dragStart.getX());
+        double firstY = camera.toGraphY(this.dragStart.getY());
+        double secondX = camera.toGraphX(event.getX());
+        double secondY = camera.toGraphY(event.getY());
+        Vector2D topLeft = new Vector2D(Math.min(firstX, secondX), Math.min(firstY, secondY));
+        Vector2D bottomRight = new Vector2D(Math.max(firstX, secondX), Math.max(firstY, secondY));
+        boolean[] candidates = new boolean[1];
+        this.renderer.getNodeIndex(graph).forEachInRectangle(topLeft.getX(), topLeft.getY(), bottomRight.getX(),
+                bottomRight.getY(), row -> candidates[0] = true);
+        if (!candidates[0]) {
+            return;
+        }
+        pauseSimulation();
+        graph.addNodesToCompartment(compartment, new Rectangle(topLeft, bottomRight));
+        this.owner.getCompartmentControlPanel().updateData(graph.getCellSections());
+        this.renderer.invalidateNodeAttributes();
+        this.draw();
+    }
+
+    /**
+     * Waits for the epoch that is currently calculated, such that nodes can be changed safely.
+     */
+    private void pauseSimulation() {
+        SimulationManager simulationManager = this.owner.getSimulationManager();
+        if (simulationManager != null) {
+            simulationManager.pause();
+        }
+    }
+
+    private void handleMeasurementDrag(MouseEvent event) {
+        if (event.getEventType() == MouseEvent.MOUSE_DRAGGED) {
+            this.overlay.showMeasurement(this.dragStart.getX(), this.dragStart.getY(), event.getX(), event.getY(),
+                    measure(this.dragStart.getX(), this.dragStart.getY(), event.getX(), event.getY()));
+        } else if (event.getEventType() == MouseEvent.MOUSE_RELEASED) {
+            this.overlay.hideMeasurement();
+            this.measurementDrag = false;
+            this.dragStart = null;
+        }
+    }
+
+    /**
+     * Returns the distance between the given points of the canvas, converted to the node distance of the environment
+     * by the mean length of the edges.
+     */
+    private String measure(double startX, double startY, double endX, double endY) {
+        Camera camera = this.renderer.getCamera();
+        double distance = Math.hypot(endX - startX, endY - startY) / camera.getScale();
+        if (this.owner.getGraph() == null) {
+            return String.format("%.1f", distance);
+        }
+        double edgeLength = this.renderer.getNodeIndex(this.owner.getGraph()).getGeometry().getMeanEdgeLength();
+        if (Double.isNaN(edgeLength) || edgeLength == 0) {
+            return String.format("%.1f", distance);
+        }
+        Quantity<Length> nodeDistance = EnvironmentalParameters.getInstance().getNodeDistance();
+        return String.format("%.2f %s", distance / edgeLength * nodeDistance.getValue().doubleValue(),
+                nodeDistance.getUnit());
+    }
+
+    private void handleLassoDrag(MouseEvent event) {
+        if (this.lassoVertices == this.lassoXs.length) {
+            this.lassoXs = Arrays.copyOf(this.lassoXs, this.lassoVertices * 2);
+            this.lassoYs = Arrays.copyOf(this.lassoYs, this.lassoVertices * 2);
+        }
+        this.lassoXs[this.lassoVertices] = event.getX();
+        this.lassoYs[this.lassoVertices] = event.getY();
+        this.lassoVertices++;
+        if (event.getEventType() == MouseEvent.MOUSE_DRAGGED) {
+            this.overlay.showLasso(this.lassoXs, this.lassoYs, this.lassoVertices);
+        } else if (event.getEventType() == MouseEvent.MOUSE_RELEASED) {
+            this.overlay.hideLasso();
+            ChemicalEntity species = this.renderer.getBioRenderingOptions().getNodeHighlightEntity();
+            if (species != null) {
+                double concentration = this.owner.getConcentrationSlider().getValue();
+                Camera camera = this.renderer.getCamera();
+                for (int vertex = 0; vertex < this.lassoVertices; vertex++) {
+                    this.lassoXs[vertex] = camera.toGraphX(this.lassoXs[vertex]);
+                    this.lassoYs[vertex] = camera.toGraphY(this.lassoYs[vertex]);
+                }
+                NodeIndex nodeIndex = this.renderer.getNodeIndex(this.owner.getGraph());
+                List<AutomatonNode> enclosedNodes = new ArrayList<>();
+                nodeIndex.forEachInPolygon(this.lassoXs, this.lassoYs, this.lassoVertices,
+                        row -> enclosedNodes.add(nodeIndex.getGeometry().getNode(row)));
+                if (!enclosedNodes.isEmpty()) {
+                    // the concentrations must not change during an epoch
+                    pauseSimulation();
+                    for (AutomatonNode node : enclosedNodes) {
+                        node.setConcentration(species, concentration);
+                    }
+                    this.draw();
                 }
-                this.draw();
             }
+            this.lassoDrag = false;
+            this.dragStart = null;
         }
     }
 
+    private void handleHover(MouseEvent event) {
+        AutomatonNode node = pickNode(event);
+        if (node == null) {
+            setCursor(Cursor.DEFAULT);
+            this.overlay.hideHover();
+            return;
+        }
+        setCursor(Cursor.HAND);
+        Camera camera = this.renderer.getCamera();
+        double diameter = this.renderer.getRenderingOptions().getNodeDiameter() * camera.getScale();
+        // preview the concentration a click would set
+        Color brushColor = null;
+        if (this.renderer.getBioRenderingOptions().getRenderingMode() == RenderingMode.ENTITY_BASED &&
+                this.renderer.getBioRenderingOptions().getNodeHighlightEntity() != null) {
+            brushColor = this.renderer.getBioRenderingOptions().getNodeColor(this.owner.getConcentrationSlider().getValue());
+        }
+        this.overlay.showHover(camera.toCanvasX(node.getPosition().getX()), camera.toCanvasY(node.getPosition().getY()),
+                diameter, brushColor);
+    }
+
     private void handleClick(MouseEvent event) {
         if (event.getButton().equals(MouseButton.SECONDARY)) {
             handleRightClick(event);
@@ -72,35 +278,42 @@ public class SimulationCanvas extends Canvas {
     }
 
     private void handleRightClick(MouseEvent event) {
-        boolean isNode = false;
-        for (AutomatonNode node : this.owner.getGraph().getNodes()) {
-            if (isClickedOnNode(event, node)) {
-                AutomatonNodeContextMenu bioNodeContextMenu = new AutomatonNodeContextMenu(node, this.owner);
-                bioNodeContextMenu.show(this.owner.getPlotControlPanel(), event.getScreenX(), event.getScreenY());
-                isNode = true;
-                break;
-            }
-        }
-        if (!isNode) {
+        AutomatonNode node = pickNode(event);
+        if (node != null) {
+            AutomatonNodeContextMenu bioNodeContextMenu = new AutomatonNodeContextMenu(node, this.owner);
+            bioNodeContextMenu.show(this.owner.getPlotControlPanel(), event.getScreenX(), event.getScreenY());
+        } else {
             this.graphContextMenu.show(this.owner.getPlotControlPanel(), event.getScreenX(), event.getScreenY());
         }
     }
 
     private void handleLeftClick(MouseEvent event) {
-        for (AutomatonNode node : this.owner.getGraph().getNodes()) {
-            if (isClickedOnNode(event, node)) {
+        if (event.isStillSincePress()) {
+            AutomatonNode node = pickNode(event);
+            if (node != null) {
                 ChemicalEntity species = this.renderer.getBioRenderingOptions().getNodeHighlightEntity();
                 node.setConcentration(species, this.owner.getConcentrationSlider().getValue());
                 draw();
-                break;
             }
         }
     }
 
-    private boolean isClickedOnNode(MouseEvent event, AutomatonNode node) {
-        return node.getPosition().isNearVector(new Vector2D(event.getX() + this.renderer.getRenderingOptions().getNodeDiameter() / 2,
-                        event.getY() + this.renderer.getRenderingOptions().getNodeDiameter() / 2),
-                this.renderer.getRenderingOptions().getNodeDiameter() / 2);
+    /**
+     * Returns the node under the mouse.
+     *
+     * @param event The mouse event.
+     * @return The node or null if there is no node under the mouse.
+     */
+    private AutomatonNode pickNode(MouseEvent event) {
+        if (this.owner.getGraph() == null) {
+            return null;
+        }
+        double radius = this.renderer.getRenderingOptions().getNodeDiameter() / 2;
+        Camera camera = this.renderer.getCamera();
+        NodeIndex nodeIndex = this.renderer.getNodeIndex(this.owner.getGraph());
+        // nodes are drawn centered on their position
+        int row = nodeIndex.nearest(camera.toGraphX(event.getX()), camera.toGraphY(event.getY()), radius);
+        return row == GraphGeometry.UNKNOWN_ROW ? null : nodeIndex.getGeometry().getNode(row);
     }
 
     public BioGraphRenderer getRenderer() {
@@ -112,6 +325,19 @@ public class SimulationCanvas extends Canvas {
     }
 
     public void draw() {
+        if (!this.renderer.isLiveUpdates() && this.renderer.getCurrentSnapshot() != null) {
+            // a recorded frame is displayed
+            this.renderer.render(this.renderer.getCurrentSnapshot().getGraph());
+            return;
+        }
+        SimulationManager simulationManager = this.owner.getSimulationManager();
+        if (simulationManager != null) {
+            // the graph may have been edited, concentrations are read from a fresh snapshot while paused
+            SimulationSnapshot snapshot = simulationManager.captureSnapshot();
+            if (snapshot != null) {
+                this.renderer.display(snapshot);
+            }
+        }
         this.renderer.render(this.owner.getGraph());
     }
 
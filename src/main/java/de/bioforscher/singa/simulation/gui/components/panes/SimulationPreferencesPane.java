@@ -0,0 +1,128 @@
+package de.bioforscher.singa.simulation.gui.components.panes;
+
+import de.bioforscher.singa.simulation.gui.SingaPreferences;
+import javafx.event.ActionEvent;
+import javafx.geometry.HPos;
+import javafx.geometry.Insets;
+import javafx.geometry.Orientation;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.Separator;
+import javafx.scene.control.Spinner;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.ColumnConstraints;
+import javafx.scene.layout.GridPane;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
+import javafx.stage.Stage;
+
+public class SimulationPreferencesPane extends GridPane {
+
+    private Spinner<Integer> spCheckpointInterval;
+    private TextField tfPace;
+    private Spinner<Integer> spEmissionRate;
+
+    private Stage owner;
+    private SingaPreferences preferences;
+
+    public SimulationPreferencesPane(Stage owner) {
+        this.preferences = new SingaPreferences();
+        this.owner = owner;
+        this.initialize();
+    }
+
+    private void initialize() {
+
+        this.setAlignment(Pos.CENTER);
+        this.setHgap(10);
+        this.setVgap(10);
+        this.setPadding(new Insets(10, 10, 10, 10));
+
+        ColumnConstraints column1 = new ColumnConstraints();
+        column1.setHalignment(HPos.LEFT);
+        this.getColumnConstraints().add(column1);
+
+        ColumnConstraints column2 = new ColumnConstraints();
+        column2.setHalignment(HPos.RIGHT);
+        this.getColumnConstraints().add(column2);
+
+        int checkpointInterval = this.preferences.preferences.getInt(SingaPreferences.Simulation.CHECKPOINT_INTERVAL, SingaPreferences.Simulation.CHECKPOINT_INTERVAL_VALUE);
+        double pace = this.preferences.preferences.getDouble(SingaPreferences.Simulation.PACE, SingaPreferences.Simulation.PACE_VALUE);
+        int emissionRate = this.preferences.preferences.getInt(SingaPreferences.Simulation.EMISSION_RATE, SingaPreferences.Simulation.EMISSION_RATE_VALUE);
+
+        TextFlow description = new TextFlow();
+        description.getChildren().add(new Text("The provided options can be used to customize the execution of simulations."));
+        this.add(description, 0, 0, 2, 1);
+
+        Separator separator1 = new Separator();
+        separator1.setOrientation(Orientation.HORIZONTAL);
+        this.add(separator1, 0, 1, 2, 1);
+
+        Label labCheckpointInterval = new Label("Seconds between periodic checkpoints:");
+        this.add(labCheckpointInterval, 0, 2, 1, 1);
+
+        this.spCheckpointInterval = new Spinner<>(1, 86400, checkpointInterval, 10);
+        this.spCheckpointInterval.setEditable(true);
+        this.add(this.spCheckpointInterval, 1, 2, 1, 1);
+
+        Label labPace = new Label("Simulated seconds per second (paced):");
+        this.add(labPace, 0, 3, 1, 1);
+
+        this.tfPace = new TextField(String.valueOf(pace));
+        this.add(this.tfPace, 1, 3, 1, 1);
+
+        Label labEmissionRate = new Label("Emitted snapshots per second:");
+        this.add(labEmissionRate, 0, 4, 1, 1);
+
+        this.spEmissionRate = new Spinner<>(1, 60, emissionRate);
+        this.spEmissionRate.setEditable(true);
+        this.add(this.spEmissionRate, 1, 4, 1, 1);
+
+        Separator separator2 = new Separator();
+        separator2.setOrientation(Orientation.HORIZONTAL);
+        this.add(separator2, 0, 6, 2, 1);
+
+        Button btnDefaults = new Button("Restore Defaults");
+        btnDefaults.setMaxWidth(Double.MAX_VALUE);
+        btnDefaults.setOnAction(this::restoreDefault);
+        this.add(btnDefaults, 1, 5, 1, 1);
+
+        Button btnApply = new Button("Apply");
+        btnApply.setMaxWidth(Double.MAX_VALUE);
+        btnApply.setStyle("-fx-font-weight: bold;");
+        btnApply.setOnAction(this::applyChanges);
+        this.add(btnApply, 1, 7, 1, 1);
+
+        Button btnCancel = new Button("Cancel");
+        btnCancel.setOnAction(this::discardChanges);
+        btnCancel.setMaxWidth(Double.MAX_VALUE);
+        this.add(btnCancel, 0, 7, 1, 1);
+    }
+
+    public void applyChanges(ActionEvent event) {
+        this.preferences.preferences.putInt(SingaPreferences.Simulation.CHECKPOINT_INTERVAL, this.spCheckpointInterval.getValue());
+        this.preferences.preferences.putInt(SingaPreferences.Simulation.EMISSION_RATE, this.spEmissionRate.getValue());
+        try {
+            double pace = Double.parseDouble(this.tfPace.getText().trim());
+            if (pace > 0) {
+                this.preferences.preferences.putDouble(SingaPreferences.Simulation.PACE, pace);
+            }
+        } catch (NumberFormatException e) {
+            // keep the former pace
+        }
+        this.owner.close();
+    }
+
+    public void restoreDefault(ActionEvent event) {
+        this.preferences.restoreSimulationDefaults();
+        this.spCheckpointInterval.getValueFactory().setValue(SingaPreferences.Simulation.CHECKPOINT_INTERVAL_VALUE);
+        this.tfPace.setText(String.valueOf(SingaPreferences.Simulation.PACE_VALUE));
+        this.spEmissionRate.getValueFactory().setValue(SingaPreferences.Simulation.EMISSION_RATE_VALUE);
+    }
+
+    public void discardChanges(ActionEvent event) {
+        this.owner.close();
+    }
+
+}
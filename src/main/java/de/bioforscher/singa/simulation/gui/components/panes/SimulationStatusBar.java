@@ -0,0 +1,145 @@
+package de.bioforscher.singa.simulation.gui.components.panes;
+
+import de.bioforscher.singa.simulation.gui.SimulationManager;
+import de.bioforscher.singa.simulation.gui.execution.EmissionScheduler;
+import de.bioforscher.singa.simulation.gui.metrics.Histogram;
+import de.bioforscher.singa.simulation.gui.metrics.MetricsRegistry;
+import de.bioforscher.singa.simulation.gui.renderer.BioGraphRenderer;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.geometry.Insets;
+import javafx.geometry.Orientation;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.Separator;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.HBox;
+import javafx.util.Duration;
+
+/**
+ * Shows the throughput of the simulation, the cost of emitting its state and the cost of drawing it, such that a slow
+ * down can be attributed to the simulation, the fan out of events or the renderer. All values are calculated from the
+ * {@link MetricsRegistry} of the {@link SimulationManager} over the last refresh interval.
+ *
+ * @author cl
+ */
+public class SimulationStatusBar extends HBox {
+
+    private static final long REFRESH_INTERVAL_MILLIS = 500;
+
+    private final SimulationManager simulationManager;
+    private final BioGraphRenderer renderer;
+    private final MetricsRegistry metrics;
+
+    private final Label labEpoch = new Label();
+    private final Label labThroughput = new Label();
+    private final Label labEpochDuration = new Label();
+    private final Label labSimulatedTime = new Label();
+    private final Label labFrames = new Label();
+    private final Label labFanOut = new Label();
+    private final Label labRenderer = new Label();
+
+    private long lastRefreshNanos;
+    private long lastEpochs;
+    private double lastElapsedSeconds;
+    private long lastEmittedFrames;
+    private long lastSkippedFrames;
+    private long lastCoalescedFrames;
+    private Histogram.Snapshot lastEpochDurations;
+    private Histogram.Snapshot lastFanOutDurations;
+    private Histogram.Snapshot lastFrameLatencies;
+    private Histogram.Snapshot lastFrameDurations;
+
+    public SimulationStatusBar(SimulationManager simulationManager, BioGraphRenderer renderer) {
+        this.simulationManager = simulationManager;
+        this.renderer = renderer;
+        this.metrics = simulationManager.getMetrics();
+        initialize();
+        refresh();
+        Timeline refreshTimeline = new Timeline(new KeyFrame(Duration.millis(REFRESH_INTERVAL_MILLIS), event -> refresh()));
+        refreshTimeline.setCycleCount(Animation.INDEFINITE);
+        refreshTimeline.play();
+    }
+
+    private void initialize() {
+        this.setSpacing(8);
+        this.setAlignment(Pos.CENTER_LEFT);
+        this.setPadding(new Insets(2, 10, 2, 10));
+        this.setStyle("-fx-border-color: #dcdcdc; -fx-border-width: 1 0 0 0;");
+
+        this.labThroughput.setTooltip(new Tooltip("Calculated epochs per second of wall time."));
+        this.labEpochDuration.setTooltip(new Tooltip("Mean and 99th percentile of the time needed to calculate an epoch."));
+        this.labSimulatedTime.setTooltip(new Tooltip("Simulated time per second of wall time."));
+        this.labFrames.setTooltip(new Tooltip("Frames emitted to the user interface and frames skipped, because the renderer was busy."));
+        this.labFanOut.setTooltip(new Tooltip("Mean time needed to notify all listeners of an emitted frame."));
+        this.labRenderer.setTooltip(new Tooltip("Frames replaced by newer ones before they were drawn, mean latency between capturing and drawing a frame and mean time needed to draw it."));
+
+        this.getChildren().addAll(this.labEpoch, separator(), this.labThroughput, separator(), this.labEpochDuration,
+                separator(), this.labSimulatedTime, separator(), this.labFrames, separator(), this.labFanOut,
+                separator(), this.labRenderer);
+    }
+
+    private static Separator separator() {
+        return new Separator(Orientation.VERTICAL);
+    }
+
+    private void refresh() {
+        long now = System.nanoTime();
+        double seconds = this.lastRefreshNanos == 0 ? 0 : (now - this.lastRefreshNanos) / 1e9;
+        this.lastRefreshNanos = now;
+
+        long epochs = this.metrics.get(SimulationManager.CALCULATED_EPOCHS);
+        double elapsedSeconds = this.simulationManager.getPublishedElapsedSeconds();
+        long emittedFrames = this.metrics.get(EmissionScheduler.EMITTED_FRAMES);
+        long skippedFrames = this.metrics.get(EmissionScheduler.BACKPRESSURED_FRAMES);
+        long coalescedFrames = this.metrics.get(BioGraphRenderer.COALESCED_FRAMES);
+        Histogram.Snapshot epochDurations = this.metrics.histogram(SimulationManager.EPOCH_DURATION).getSnapshot();
+        Histogram.Snapshot fanOutDurations = this.metrics.histogram(SimulationManager.FAN_OUT_DURATION).getSnapshot();
+        Histogram.Snapshot frameLatencies = this.metrics.histogram(BioGraphRenderer.FRAME_LATENCY).getSnapshot();
+        Histogram.Snapshot frameDurations = this.metrics.histogram(BioGraphRenderer.FRAME_DURATION).getSnapshot();
+
+        this.labEpoch.setText(String.format("Epoch %d", this.simulationManager.getPublishedEpoch()));
+        if (seconds > 0) {
+            Histogram.Snapshot epochWindow = epochDurations.since(this.lastEpochDurations);
+            Histogram.Snapshot fanOutWindow = fanOutDurations.since(this.lastFanOutDurations);
+            Histogram.Snapshot latencyWindow = frameLatencies.since(this.lastFrameLatencies);
+            Histogram.Snapshot frameWindow = frameDurations.since(this.lastFrameDurations);
+            this.labThroughput.setText(String.format("%.0f epochs/s", (epochs - this.lastEpochs) / seconds));
+            this.labEpochDuration.setText(String.format("epoch %s mean, %s p99",
+                    formatNanos(epochWindow.getMean()), formatNanos(epochWindow.getPercentile(99))));
+            this.labSimulatedTime.setText(String.format("%.3e s simulated/s",
+                    Math.max(0, elapsedSeconds - this.lastElapsedSeconds) / seconds));
+            this.labFrames.setText(String.format("%.1f frames/s, %d skipped",
+                    (emittedFrames - this.lastEmittedFrames) / seconds, skippedFrames - this.lastSkippedFrames));
+            this.labFanOut.setText(String.format("fan out %s", formatNanos(fanOutWindow.getMean())));
+            this.labRenderer.setText(String.format("%s%d coalesced, latency %s, draw %s",
+                    this.renderer.isFramePending() ? "frame waiting, " : "", coalescedFrames - this.lastCoalescedFrames, formatNanos(latencyWindow.getMean()),
+                    formatNanos(frameWindow.getMean())));
+        }
+
+        this.lastEpochs = epochs;
+        this.lastElapsedSeconds = elapsedSeconds;
+        this.lastEmittedFrames = emittedFrames;
+        this.lastSkippedFrames = skippedFrames;
+        this.lastCoalescedFrames = coalescedFrames;
+        this.lastEpochDurations = epochDurations;
+        this.lastFanOutDurations = fanOutDurations;
+        this.lastFrameLatencies = frameLatencies;
+        this.lastFrameDurations = frameDurations;
+    }
+
+    private static String formatNanos(double nanos) {
+        if (nanos >= 1e9) {
+            return String.format("%.2f s", nanos / 1e9);
+        }
+        if (nanos >= 1e6) {
+            return String.format("%.2f ms", nanos / 1e6);
+        }
+        if (nanos >= 1e3) {
+            return String.format("%.1f \u00b5s", nanos / 1e3);
+        }
+        return String.format("%.0f ns", nanos);
+    }
+
+}
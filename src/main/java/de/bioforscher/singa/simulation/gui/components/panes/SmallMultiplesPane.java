@@ -0,0 +1,228 @@
+package de.bioforscher.singa.simulation.gui.components.panes;
+
+import de.bioforscher.singa.chemistry.descriptive.entities.ChemicalEntity;
+import de.bioforscher.singa.core.events.UpdateEventListener;
+import de.bioforscher.singa.simulation.gui.CellularGraphAutomatonSimulation;
+import de.bioforscher.singa.simulation.gui.renderer.SmallMultiplesRenderer;
+import de.bioforscher.singa.simulation.gui.snapshots.SimulationSnapshot;
+import javafx.animation.AnimationTimer;
+import javafx.geometry.Insets;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.FlowPane;
+import javafx.scene.layout.Pane;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Shows the concentrations of several entities side by side, one small canvas per selected entity, drawn by a
+ * {@link SmallMultiplesRenderer}. Like the simulation canvas, the pane only keeps the latest emitted snapshot and draws
+ * it with the next pulse. Snapshots are only received while the pane is active, i.e. while it is visible.
+ *
+ * @author cl
+ */
+public class SmallMultiplesPane extends BorderPane implements UpdateEventListener<SimulationSnapshot> {
+
+    /**
+     * The number of entities that are selected initially.
+     */
+    private static final int INITIALLY_SELECTED_ENTITIES = 6;
+
+    private static final double TILE_SPACING = 6;
+    private static final double LABEL_HEIGHT = 18;
+
+    private final CellularGraphAutomatonSimulation owner;
+    private final SmallMultiplesRenderer renderer;
+    private final AtomicReference<SimulationSnapshot> mailbox;
+    private final AnimationTimer timer;
+
+    private FlowPane entitySelection;
+    private Pane tiles;
+    private final List<CheckBox> entityBoxes;
+    private final List<Canvas> canvases;
+    private final List<Label> labels;
+    private final List<GraphicsContext> graphicsContexts;
+
+    private SimulationSnapshot currentSnapshot;
+    private volatile boolean active;
+    private boolean redrawRequired;
+
+    public SmallMultiplesPane(CellularGraphAutomatonSimulation owner) {
+        this.owner = owner;
+        this.renderer = new SmallMultiplesRenderer();
+        this.mailbox = new AtomicReference<>();
+        this.entityBoxes = new ArrayList<>();
+        this.canvases = new ArrayList<>();
+        this.labels = new ArrayList<>();
+        this.graphicsContexts = new ArrayList<>();
+        this.timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                drawPendingSnapshot();
+            }
+        };
+        initialize();
+    }
+
+    private void initialize() {
+        this.entitySelection = new FlowPane(TILE_SPACING, TILE_SPACING / 2);
+        this.entitySelection.setPadding(new Insets(TILE_SPACING));
+        this.tiles = new Pane() {
+            @Override
+            protected void layoutChildren() {
+                layoutTiles();
+            }
+        };
+        this.setTop(this.entitySelection);
+        this.setCenter(this.tiles);
+    }
+
+    /**
+     * Determines whether snapshots are received and drawn. The snapshot displayed by the simulation canvas is drawn as
+     * soon as the pane becomes active.
+     *
+     * @param active True, if the pane is visible.
+     */
+    public void setActive(boolean active) {
+        if (active == this.active) {
+            return;
+        }
+        this.active = active;
+        if (active) {
+            refreshEntities();
+            SimulationSnapshot displayedSnapshot = this.owner.getSimulationCanvas().getRenderer().getCurrentSnapshot();
+            if (displayedSnapshot != null) {
+                display(displayedSnapshot.retain());
+            }
+            this.timer.start();
+        } else {
+            this.timer.stop();
+            SimulationSnapshot pendingSnapshot = this.mailbox.getAndSet(null);
+            if (pendingSnapshot != null) {
+                pendingSnapshot.release();
+            }
+            display(null);
+        }
+    }
+
+    /**
+     * Rebuilds the selection of entities from the entities of the simulation, e.g. after entities have been added.
+     * Entities that have been selected before stay selected.
+     */
+    public void refreshEntities() {
+        List<ChemicalEntity<?>> selectedEntities = getSelectedEntities();
+        boolean initialSelection = this.entityBoxes.isEmpty();
+        List<ChemicalEntity<?>> entities = new ArrayList<>(this.owner.getSimulation().getChemicalEntities());
+        entities.sort(Comparator.comparing(ChemicalEntity::getName));
+        this.entityBoxes.clear();
+        for (ChemicalEntity<?> entity : entities) {
+            CheckBox entityBox = new CheckBox(entity.getName());
+            entityBox.setUserData(entity);
+            entityBox.setSelected(initialSelection ? this.entityBoxes.size() < INITIALLY_SELECTED_ENTITIES :
+                    selectedEntities.contains(entity));
+            entityBox.setOnAction(event -> updateTiles());
+            this.entityBoxes.add(entityBox);
+        }
+        this.entitySelection.getChildren().setAll(this.entityBoxes);
+        updateTiles();
+    }
+
+    private List<ChemicalEntity<?>> getSelectedEntities() {
+        List<ChemicalEntity<?>> selectedEntities = new ArrayList<>();
+        for (CheckBox entityBox : this.entityBoxes) {
+            if (entityBox.isSelected()) {
+                selectedEntities.add((ChemicalEntity<?>) entityBox.getUserData());
+            }
+        }
+        return selectedEntities;
+    }
+
+    /**
+     * Creates a canvas for every selected entity.
+     */
+    private void updateTiles() {
+        List<ChemicalEntity<?>> selectedEntities = getSelectedEntities();
+        this.renderer.setEntities(selectedEntities);
+        this.canvases.clear();
+        this.labels.clear();
+        this.graphicsContexts.clear();
+        for (ChemicalEntity<?> entity : selectedEntities) {
+            Canvas canvas = new Canvas();
+            this.canvases.add(canvas);
+            this.graphicsContexts.add(canvas.getGraphicsContext2D());
+            this.labels.add(new Label(entity.getName()));
+        }
+        this.tiles.getChildren().setAll(this.canvases);
+        this.tiles.getChildren().addAll(this.labels);
+        this.redrawRequired = true;
+        this.tiles.requestLayout();
+    }
+
+    /**
+     * Arranges the canvases in a grid of equally sized tiles, that fills the available space.
+     */
+    private void layoutTiles() {
+        int count = this.canvases.size();
+        if (count == 0) {
+            return;
+        }
+        int columns = (int) Math.ceil(Math.sqrt(count));
+        int rows = (int) Math.ceil(count / (double) columns);
+        double tileWidth = Math.floor((this.tiles.getWidth() - TILE_SPACING * (columns + 1)) / columns);
+        double tileHeight = Math.floor((this.tiles.getHeight() - TILE_SPACING * (rows + 1)) / rows);
+        double canvasHeight = Math.max(tileHeight - LABEL_HEIGHT, 0);
+        for (int index = 0; index < count; index++) {
+            double x = TILE_SPACING + (index % columns) * (tileWidth + TILE_SPACING);
+            double y = TILE_SPACING + (index / columns) * (tileHeight + TILE_SPACING);
+            Label label = this.labels.get(index);
+            label.resizeRelocate(x, y, Math.max(tileWidth, 0), LABEL_HEIGHT);
+            Canvas canvas = this.canvases.get(index);
+            canvas.relocate(x, y + LABEL_HEIGHT);
+            if (canvas.getWidth() != tileWidth || canvas.getHeight() != canvasHeight) {
+                canvas.setWidth(Math.max(tileWidth, 0));
+                canvas.setHeight(canvasHeight);
+                this.redrawRequired = true;
+            }
+        }
+    }
+
+    private void display(SimulationSnapshot snapshot) {
+        if (this.currentSnapshot != null) {
+            this.currentSnapshot.release();
+        }
+        this.currentSnapshot = snapshot;
+        this.redrawRequired = true;
+    }
+
+    private void drawPendingSnapshot() {
+        SimulationSnapshot snapshot = this.mailbox.getAndSet(null);
+        if (snapshot != null) {
+            display(snapshot);
+        }
+        if (this.redrawRequired && this.currentSnapshot != null) {
+            this.renderer.render(this.currentSnapshot,
+                    this.owner.getSimulationCanvas().getRenderer().getBioRenderingOptions().getColoring(),
+                    this.graphicsContexts);
+            this.redrawRequired = false;
+        }
+    }
+
+    @Override
+    public void onEventReceived(SimulationSnapshot snapshot) {
+        if (!this.active) {
+            return;
+        }
+        SimulationSnapshot replaced = this.mailbox.getAndSet(snapshot.retain());
+        if (replaced != null) {
+            // only the latest snapshot is drawn
+            replaced.release();
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+package de.bioforscher.singa.simulation.gui.components.panes;
+
+import de.bioforscher.singa.simulation.gui.CellularGraphAutomatonSimulation;
+import de.bioforscher.singa.simulation.gui.IconProvider;
+import de.bioforscher.singa.simulation.gui.snapshots.SimulationSnapshot;
+import de.bioforscher.singa.simulation.gui.snapshots.SnapshotRecorder;
+import javafx.application.Platform;
+import javafx.event.ActionEvent;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.Slider;
+import javafx.scene.control.ToggleButton;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A timeline of the frames recorded by a {@link SnapshotRecorder}. Moving the slider displays the selected frame in
+ * the simulation canvas and limits the plots to its time, the live button returns to the running simulation.
+ *
+ * @author cl
+ */
+public class TimelinePane extends HBox {
+
+    private final CellularGraphAutomatonSimulation owner;
+    private final SnapshotRecorder recorder;
+
+    private ToggleButton btnRecord;
+    private Slider timeline;
+    private Label labFrame;
+    private Button btnLive;
+
+    private final AtomicBoolean updateScheduled;
+    private boolean updatingRange;
+    private boolean replaying;
+
+    public TimelinePane(CellularGraphAutomatonSimulation owner, SnapshotRecorder recorder) {
+        this.owner = owner;
+        this.recorder = recorder;
+        this.updateScheduled = new AtomicBoolean();
+        initialize();
+        this.recorder.setFrameRecordedHandler(this::scheduleUpdate);
+    }
+
+    private void initialize() {
+        this.setSpacing(10);
+        this.setAlignment(Pos.CENTER_LEFT);
+        this.setPadding(new Insets(2, 10, 2, 10));
+
+        this.btnRecord = new ToggleButton("", IconProvider.FontAwesome.createIconLabel(IconProvider.FontAwesome.ICON_DOT_CIRCLE));
+        this.btnRecord.setTooltip(new Tooltip("Records the displayed states of the simulation."));
+        this.btnRecord.setOnAction(this::toggleRecording);
+
+        this.timeline = new Slider(0, 0, 0);
+        this.timeline.setDisable(true);
+        this.timeline.setBlockIncrement(1);
+        this.timeline.setMajorTickUnit(1);
+        this.timeline.setMinorTickCount(0);
+        this.timeline.setSnapToTicks(true);
+        HBox.setHgrow(this.timeline, Priority.ALWAYS);
+        this.timeline.valueProperty().addListener((observable, oldValue, newValue) -> {
+            if (!this.updatingRange) {
+                showFrame(Math.round(newValue.doubleValue()));
+            }
+        });
+
+        this.labFrame = new Label("Not recording");
+        this.labFrame.setMinWidth(220);
+
+        this.btnLive = IconProvider.FontAwesome.createIconButton(IconProvider.FontAwesome.ICON_PLAY);
+        this.btnLive.setTooltip(new Tooltip("Returns to the current state of the simulation."));
+        this.btnLive.setDisable(true);
+        this.btnLive.setOnAction(this::showLive);
+
+        this.getChildren().addAll(this.btnRecord, this.timeline, this.labFrame, this.btnLive);
+    }
+
+    private void toggleRecording(ActionEvent event) {
+        this.recorder.setRecording(this.btnRecord.isSelected());
+        updateRange();
+    }
+
+    private void scheduleUpdate() {
+        // coalesce updates of frames that are recorded faster than the timeline is drawn
+        if (this.updateScheduled.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                this.updateScheduled.set(false);
+                updateRange();
+            });
+        }
+    }
+
+    private void updateRange() {
+        long firstFrame = this.recorder.getFirstFrame();
+        long lastFrame = this.recorder.getLastFrame();
+        this.updatingRange = true;
+        if (lastFrame < firstFrame) {
+            this.timeline.setMin(0);
+            this.timeline.setMax(0);
+            this.timeline.setDisable(true);
+        } else {
+            this.timeline.setMin(firstFrame);
+            this.timeline.setMax(Math.max(firstFrame, lastFrame));
+            this.timeline.setDisable(false);
+            if (!this.replaying) {
+                this.timeline.setValue(lastFrame);
+            }
+        }
+        this.updatingRange = false;
+        if (!this.replaying) {
+            if (lastFrame < firstFrame) {
+                this.labFrame.setText(this.recorder.isRecording() ? "Recording ..." : "Not recording");
+            } else {
+                this.labFrame.setText(String.format("%d frames recorded", lastFrame - firstFrame + 1));
+            }
+        }
+    }
+
+    private void showFrame(long frameNumber) {
+        if (frameNumber < this.recorder.getFirstFrame() || frameNumber > this.recorder.getLastFrame()) {
+            return;
+        }
+        SimulationCanvas canvas = this.owner.getSimulationCanvas();
+        this.replaying = true;
+        this.btnLive.setDisable(false);
+        canvas.getRenderer().setLiveUpdates(false);
+        SimulationSnapshot snapshot = this.recorder.reconstruct(frameNumber);
+        canvas.getRenderer().display(snapshot);
+        canvas.draw();
+        this.owner.getPlotControlPanel().setReplayTime(snapshot.getElapsedTime());
+        this.labFrame.setText(String.format("Epoch %d (%.3e %s)", snapshot.getEpoch(), snapshot.getElapsedTime(),
+                snapshot.getElapsedTimeUnit()));
+    }
+
+    private void showLive(ActionEvent event) {
+        this.replaying = false;
+        this.btnLive.setDisable(true);
+        this.owner.getSimulationCanvas().getRenderer().setLiveUpdates(true);
+        this.owner.getPlotControlPanel().setReplayTime(null);
+        this.owner.getSimulationCanvas().draw();
+        updateRange();
+    }
+
+    /**
+     * Discards all recorded frames and returns to the running simulation, e.g. if the graph has been replaced.
+     */
+    public void reset() {
+        if (this.replaying) {
+            showLive(null);
+        }
+        this.recorder.clear();
+    }
+
+}
@@ -39,6 +39,8 @@ public class ConcentrationPlot extends LineChart<Number, Number> implements Upda
     private int maximalDataPoints;
     private int tickSpacing;
     private boolean scaleXAxis = false;
+    private double latestTime;
+    private volatile boolean replaying;
 
     public ConcentrationPlot(Set<ChemicalEntity<?>> observedEntities, AutomatonNode referencedNode) {
         super(new NumberAxis(), new NumberAxis());
@@ -184,20 +186,49 @@ public class ConcentrationPlot extends LineChart<Number, Number> implements Upda
                 });
 
             }
-            // FIXME axis scaling does probably not work
-            if (this.scaleXAxis) {
-                ((NumberAxis) this.getXAxis()).setLowerBound(event.getTime().getValue().doubleValue() - this.maximalDataPoints);
-                ((NumberAxis) this.getXAxis()).setUpperBound(event.getTime().getValue().doubleValue() - 1);
-            } else {
-                ((NumberAxis) this.getXAxis()).setUpperBound(event.getTime().getValue().doubleValue());
-                if (event.getTime().getValue().doubleValue() % 6 == 0) {
-                    ((NumberAxis) this.getXAxis()).setTickUnit(event.getTime().getValue().doubleValue() / 6);
+            // axes belong to the scene graph and may only be changed on the application thread
+            double time = event.getTime().getValue().doubleValue();
+            Platform.runLater(() -> {
+                this.latestTime = time;
+                if (this.replaying) {
+                    // the range is limited to the replayed time
+                    return;
                 }
-            }
+                // FIXME axis scaling does probably not work
+                if (this.scaleXAxis) {
+                    ((NumberAxis) this.getXAxis()).setLowerBound(time - this.maximalDataPoints);
+                    ((NumberAxis) this.getXAxis()).setUpperBound(time - 1);
+                } else {
+                    ((NumberAxis) this.getXAxis()).setUpperBound(time);
+                    if (time % 6 == 0) {
+                        ((NumberAxis) this.getXAxis()).setTickUnit(time / 6);
+                    }
+                }
+            });
         }
 
     }
 
+    /**
+     * Limits the range of the time axis to the given time, to match a recorded frame that is displayed. Must be called
+     * on the application thread.
+     *
+     * @param time The time or null to follow the simulation again.
+     */
+    public void setReplayTime(Double time) {
+        NumberAxis xAxis = (NumberAxis) this.getXAxis();
+        if (time != null) {
+            this.replaying = true;
+            xAxis.setAutoRanging(false);
+            xAxis.setUpperBound(time);
+            xAxis.setTickUnit(time > 0 ? time / 6 : this.tickSpacing);
+        } else {
+            this.replaying = false;
+            xAxis.setAutoRanging(true);
+            xAxis.setUpperBound(this.latestTime);
+        }
+    }
+
     public ObservableList<ChemicalEntity<?>> getObservedEntities() {
         return this.observedEntities;
     }
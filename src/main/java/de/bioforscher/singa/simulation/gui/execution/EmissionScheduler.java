@@ -0,0 +1,170 @@
+package de.bioforscher.singa.simulation.gui.execution;
+
+import de.bioforscher.singa.simulation.gui.metrics.MetricsRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides after which epochs the state of the simulation is emitted to the user interface. The clock is only read
+ * every few epochs, where the number of epochs between two reads is adapted to the duration of a single epoch. The
+ * emission interval starts at the requested frame rate and is stretched if the consumers (e.g. the renderer)
+ * acknowledge frames slower than they are emitted.
+ *
+ * @author cl
+ */
+public class EmissionScheduler {
+
+    public static final int DEFAULT_FRAMES_PER_SECOND = 20;
+
+    public static final String EMITTED_FRAMES = "emission.frames.emitted";
+    public static final String CONSUMED_FRAMES = "emission.frames.consumed";
+    public static final String SKIPPED_EPOCHS = "emission.epochs.skipped";
+    public static final String BACKPRESSURED_CHECKS = "emission.checks.backpressured";
+    public static final String BACKPRESSURED_FRAMES = "emission.frames.backpressured";
+
+    /**
+     * The wall time that should pass between two reads of the clock.
+     */
+    private static final long CHECK_RESOLUTION_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * The maximal number of epochs between two reads of the clock.
+     */
+    private static final int MAXIMAL_CHECK_INTERVAL = 4096;
+
+    /**
+     * The number of frames that may be emitted but not yet consumed.
+     */
+    private static final int MAXIMAL_FRAMES_IN_FLIGHT = 2;
+
+    /**
+     * The longest interval between two frames, unacknowledged frames older than this are considered lost.
+     */
+    private static final long MAXIMAL_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final MetricsRegistry metrics;
+    private final AtomicInteger framesInFlight;
+
+    private volatile long targetIntervalNanos;
+    private volatile long currentIntervalNanos;
+    private volatile long lastEmissionNanos;
+
+    // only accessed by the simulation thread
+    private int checkInterval;
+    private int epochsUntilCheck;
+    private long lastCheckNanos;
+    private long nextEmissionNanos;
+    private long skippedEpochs;
+    private long nextBackpressuredFrameNanos;
+
+    public EmissionScheduler(MetricsRegistry metrics) {
+        this(metrics, DEFAULT_FRAMES_PER_SECOND);
+    }
+
+    public EmissionScheduler(MetricsRegistry metrics, int framesPerSecond) {
+        this.metrics = metrics;
+        this.framesInFlight = new AtomicInteger();
+        setFramesPerSecond(framesPerSecond);
+        reset();
+    }
+
+    public void setFramesPerSecond(int framesPerSecond) {
+        if (framesPerSecond < 1) {
+            throw new IllegalArgumentException("The number of frames per second has to be positive.");
+        }
+        this.targetIntervalNanos = TimeUnit.SECONDS.toNanos(1) / framesPerSecond;
+        this.currentIntervalNanos = this.targetIntervalNanos;
+    }
+
+    /**
+     * Forgets all frames in flight and restarts the clock. Should be called whenever the consumers are (re)started.
+     */
+    public void reset() {
+        this.framesInFlight.set(0);
+        this.checkInterval = 1;
+        this.epochsUntilCheck = 1;
+        this.lastCheckNanos = System.nanoTime();
+        this.nextEmissionNanos = this.lastCheckNanos;
+        this.skippedEpochs = 0;
+        this.nextBackpressuredFrameNanos = 0;
+    }
+
+    /**
+     * Has to be called by the simulation thread once after every epoch.
+     *
+     * @return {@code true} if the current state should be emitted.
+     */
+    public boolean shouldEmit() {
+        if (--this.epochsUntilCheck > 0) {
+            this.skippedEpochs++;
+            return false;
+        }
+        long currentNanos = System.nanoTime();
+        adaptCheckInterval(currentNanos);
+        if (currentNanos < this.nextEmissionNanos) {
+            this.skippedEpochs++;
+            return false;
+        }
+        if (this.framesInFlight.get() >= MAXIMAL_FRAMES_IN_FLIGHT) {
+            if (currentNanos - this.lastEmissionNanos < MAXIMAL_INTERVAL_NANOS) {
+                this.metrics.increment(BACKPRESSURED_CHECKS);
+                if (currentNanos >= this.nextBackpressuredFrameNanos) {
+                    // every interval without an emission is one frame the consumers do not get
+                    this.metrics.increment(BACKPRESSURED_FRAMES);
+                    this.nextBackpressuredFrameNanos = currentNanos + this.currentIntervalNanos;
+                }
+                this.skippedEpochs++;
+                return false;
+            }
+            // consumers did not answer in time, assume the frames are lost
+            this.framesInFlight.set(0);
+        }
+        this.framesInFlight.incrementAndGet();
+        this.lastEmissionNanos = currentNanos;
+        this.nextEmissionNanos = currentNanos + this.currentIntervalNanos;
+        this.nextBackpressuredFrameNanos = 0;
+        this.metrics.increment(EMITTED_FRAMES);
+        this.metrics.add(SKIPPED_EPOCHS, this.skippedEpochs);
+        this.skippedEpochs = 0;
+        return true;
+    }
+
+    /**
+     * Has to be called by the consumer after a frame has been processed. If the frame took longer to be consumed than
+     * the current emission interval, the interval is stretched, otherwise it relaxes towards the requested frame rate.
+     */
+    public void frameConsumed() {
+        if (this.framesInFlight.getAndUpdate(frames -> frames > 0 ? frames - 1 : 0) == 0) {
+            return;
+        }
+        this.metrics.increment(CONSUMED_FRAMES);
+        long latency = System.nanoTime() - this.lastEmissionNanos;
+        long interval = this.currentIntervalNanos;
+        if (latency > interval) {
+            interval = Math.min(MAXIMAL_INTERVAL_NANOS, latency + latency / 4);
+        } else {
+            interval = Math.max(this.targetIntervalNanos, interval - interval / 8);
+        }
+        this.currentIntervalNanos = interval;
+    }
+
+    public long getCurrentIntervalNanos() {
+        return this.currentIntervalNanos;
+    }
+
+    public int getFramesInFlight() {
+        return this.framesInFlight.get();
+    }
+
+    private void adaptCheckInterval(long currentNanos) {
+        long elapsed = currentNanos - this.lastCheckNanos;
+        this.lastCheckNanos = currentNanos;
+        if (elapsed > 0) {
+            long nanosPerEpoch = Math.max(1, elapsed / this.checkInterval);
+            this.checkInterval = (int) Math.max(1, Math.min(MAXIMAL_CHECK_INTERVAL, CHECK_RESOLUTION_NANOS / nanosPerEpoch));
+        }
+        this.epochsUntilCheck = this.checkInterval;
+    }
+
+}
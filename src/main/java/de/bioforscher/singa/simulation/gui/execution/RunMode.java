@@ -0,0 +1,42 @@
+package de.bioforscher.singa.simulation.gui.execution;
+
+/**
+ * Determines how the {@link de.bioforscher.singa.simulation.gui.SimulationManager} couples the calculation of epochs
+ * to the user interface.
+ *
+ * @author cl
+ */
+public enum RunMode {
+
+    /**
+     * Emits frames as fast as the renderer draws them and updates all plots.
+     */
+    VISUAL("Visual"),
+
+    /**
+     * Calculates epochs as fast as possible, plots are not updated and a preview frame is only emitted every few
+     * seconds.
+     */
+    THROUGHPUT("Throughput"),
+
+    /**
+     * Advances the simulated time proportionally to the wall time, frames are emitted as in {@link #VISUAL} mode.
+     */
+    PACED("Paced");
+
+    private final String representativeName;
+
+    RunMode(String representativeName) {
+        this.representativeName = representativeName;
+    }
+
+    public String getRepresentativeName() {
+        return this.representativeName;
+    }
+
+    @Override
+    public String toString() {
+        return this.representativeName;
+    }
+
+}
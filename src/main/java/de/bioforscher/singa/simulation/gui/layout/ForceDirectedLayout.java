@@ -0,0 +1,237 @@
+package de.bioforscher.singa.simulation.gui.layout;
+
+import de.bioforscher.singa.simulation.gui.renderer.GraphGeometry;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A force-directed layout (after Fruchterman and Reingold) over the positions of a {@link GraphGeometry}. Adjacent
+ * nodes attract each other, all nodes repel each other. The repulsion is approximated with a {@link QuadTree}, such
+ * that an iteration takes O(n log n) instead of O(n^2). The displacement of every node is limited by a temperature
+ * that is lowered with every iteration. The ideal distance between adjacent nodes is the mean length of the edges
+ * when the layout is started. The center of mass is kept in place and the resulting positions are scaled to this mean
+ * length, so the graph keeps the size and place it is shown at.
+ * <p>
+ * The forces of an iteration are calculated in shards of consecutive rows on a {@link ForkJoinPool}. The tree is only
+ * read and every displacement is written by a single task, so the result does not depend on the number of threads.
+ *
+ * @author cl
+ */
+public class ForceDirectedLayout {
+
+    /**
+     * The ratio of cell size to distance, below which the repulsion of a cell is approximated.
+     */
+    private static final double THETA = 0.8;
+
+    /**
+     * The minimal number of rows whose forces are calculated by a single task.
+     */
+    private static final int MINIMAL_SHARD_SIZE = 1024;
+
+    /**
+     * The fraction of the extent of the layout a node may be moved by in the first iteration.
+     */
+    private static final double INITIAL_TEMPERATURE_FRACTION = 0.1;
+
+    private final GraphGeometry geometry;
+    private final int nodeCount;
+    private final double[] x;
+    private final double[] y;
+    private final double[] displacementX;
+    private final double[] displacementY;
+    private final QuadTree tree;
+    private final double idealLength;
+    private final double centerX;
+    private final double centerY;
+    private final double initialTemperature;
+
+    /**
+     * Creates a new layout, starting from the positions in the given geometry.
+     *
+     * @param geometry The geometry.
+     */
+    public ForceDirectedLayout(GraphGeometry geometry) {
+        this.geometry = geometry;
+        this.nodeCount = geometry.getNodeCount();
+        this.x = new double[this.nodeCount];
+        this.y = new double[this.nodeCount];
+        this.displacementX = new double[this.nodeCount];
+        this.displacementY = new double[this.nodeCount];
+        this.tree = new QuadTree(this.nodeCount * 2 + 1);
+        double minimalX = Double.POSITIVE_INFINITY;
+        double minimalY = Double.POSITIVE_INFINITY;
+        double maximalX = Double.NEGATIVE_INFINITY;
+        double maximalY = Double.NEGATIVE_INFINITY;
+        double sumX = 0;
+        double sumY = 0;
+        for (int row = 0; row < this.nodeCount; row++) {
+            this.x[row] = geometry.getX(row);
+            this.y[row] = geometry.getY(row);
+            minimalX = Math.min(minimalX, this.x[row]);
+            minimalY = Math.min(minimalY, this.y[row]);
+            maximalX = Math.max(maximalX, this.x[row]);
+            maximalY = Math.max(maximalY, this.y[row]);
+            sumX += this.x[row];
+            sumY += this.y[row];
+        }
+        if (this.nodeCount == 0) {
+            minimalX = minimalY = maximalX = maximalY = 0;
+        }
+        double extent = Math.max(Math.max(maximalX - minimalX, maximalY - minimalY), 1.0);
+        double meanEdgeLength = geometry.getMeanEdgeLength();
+        this.idealLength = Double.isNaN(meanEdgeLength) || meanEdgeLength <= 0 ?
+                extent / Math.sqrt(Math.max(this.nodeCount, 1)) : meanEdgeLength;
+        this.centerX = this.nodeCount > 0 ? sumX / this.nodeCount : 0;
+        this.centerY = this.nodeCount > 0 ? sumY / this.nodeCount : 0;
+        // the layout grows to about the size of a grid with edges of the ideal length
+        this.initialTemperature = Math.max(extent, this.idealLength * Math.sqrt(this.nodeCount)) *
+                INITIAL_TEMPERATURE_FRACTION;
+    }
+
+    public GraphGeometry getGeometry() {
+        return this.geometry;
+    }
+
+    public int getNodeCount() {
+        return this.nodeCount;
+    }
+
+    /**
+     * Returns the temperature of the given iteration, that decreases linearly to zero.
+     *
+     * @param iteration The iteration.
+     * @param iterations The total number of iterations.
+     * @return The maximal displacement of a node in this iteration.
+     */
+    public double getTemperature(int iteration, int iterations) {
+        return this.initialTemperature * (1.0 - iteration / (double) iterations);
+    }
+
+    /**
+     * Moves all nodes once.
+     *
+     * @param temperature The maximal displacement of a node.
+     * @param pool The pool the forces are calculated on, or null to calculate them on the calling thread.
+     */
+    public void step(double temperature, ForkJoinPool pool) {
+        this.tree.build(this.x, this.y, this.nodeCount);
+        if (pool == null || this.nodeCount <= MINIMAL_SHARD_SIZE) {
+            calculateForces(0, this.nodeCount, new int[QuadTree.stackSize()], new double[2]);
+        } else {
+            int shardSize = Math.max(MINIMAL_SHARD_SIZE, this.nodeCount / (pool.getParallelism() * 4));
+            pool.invoke(new ForceShardAction(0, this.nodeCount, shardSize));
+        }
+        // limit the displacement
+        double sumX = 0;
+        double sumY = 0;
+        for (int row = 0; row < this.nodeCount; row++) {
+            double length = Math.hypot(this.displacementX[row], this.displacementY[row]);
+            if (length > temperature) {
+                this.x[row] += this.displacementX[row] / length * temperature;
+                this.y[row] += this.displacementY[row] / length * temperature;
+            } else {
+                this.x[row] += this.displacementX[row];
+                this.y[row] += this.displacementY[row];
+            }
+            sumX += this.x[row];
+            sumY += this.y[row];
+        }
+        if (this.nodeCount == 0) {
+            return;
+        }
+        // keep the center of mass in place
+        double shiftX = this.centerX - sumX / this.nodeCount;
+        double shiftY = this.centerY - sumY / this.nodeCount;
+        for (int row = 0; row < this.nodeCount; row++) {
+            this.x[row] += shiftX;
+            this.y[row] += shiftY;
+        }
+    }
+
+    private double getMeanEdgeLength() {
+        double sum = 0;
+        int count = 0;
+        for (int edge = 0; edge < this.geometry.getEdgeCount(); edge++) {
+            int source = this.geometry.getSource(edge);
+            int target = this.geometry.getTarget(edge);
+            if (source != GraphGeometry.UNKNOWN_ROW && target != GraphGeometry.UNKNOWN_ROW) {
+                sum += Math.hypot(this.x[target] - this.x[source], this.y[target] - this.y[source]);
+                count++;
+            }
+        }
+        return count > 0 ? sum / count : 0;
+    }
+
+    /**
+     * Calculates the displacement of the given rows. Only the displacement of these rows is written.
+     */
+    private void calculateForces(int fromRow, int toRow, int[] stack, double[] displacement) {
+        double repulsion = this.idealLength * this.idealLength;
+        for (int row = fromRow; row < toRow; row++) {
+            double rowX = this.x[row];
+            double rowY = this.y[row];
+            displacement[0] = 0;
+            displacement[1] = 0;
+            this.tree.addRepulsion(row, rowX, rowY, repulsion, THETA, stack, displacement);
+            // attraction of adjacent nodes
+            for (int position = this.geometry.getIncidenceStart(row); position < this.geometry.getIncidenceEnd(row);
+                 position++) {
+                int neighbour = this.geometry.getOpposite(this.geometry.getIncidentEdge(position), row);
+                if (neighbour == GraphGeometry.UNKNOWN_ROW || neighbour == row) {
+                    continue;
+                }
+                double deltaX = this.x[neighbour] - rowX;
+                double deltaY = this.y[neighbour] - rowY;
+                double distance = Math.hypot(deltaX, deltaY);
+                displacement[0] += deltaX * distance / this.idealLength;
+                displacement[1] += deltaY * distance / this.idealLength;
+            }
+            this.displacementX[row] = displacement[0];
+            this.displacementY[row] = displacement[1];
+        }
+    }
+
+    /**
+     * Copies the current positions into the given arrays. The positions are scaled around the center of mass, such
+     * that the mean length of the edges is the same as before the layout.
+     *
+     * @param x The array of x coordinates.
+     * @param y The array of y coordinates.
+     */
+    public void copyPositions(double[] x, double[] y) {
+        double meanEdgeLength = getMeanEdgeLength();
+        double scale = meanEdgeLength > 0 ? this.idealLength / meanEdgeLength : 1.0;
+        for (int row = 0; row < this.nodeCount; row++) {
+            x[row] = this.centerX + (this.x[row] - this.centerX) * scale;
+            y[row] = this.centerY + (this.y[row] - this.centerY) * scale;
+        }
+    }
+
+    private class ForceShardAction extends RecursiveAction {
+
+        private final int fromRow;
+        private final int toRow;
+        private final int shardSize;
+
+        ForceShardAction(int fromRow, int toRow, int shardSize) {
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.shardSize = shardSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.toRow - this.fromRow <= this.shardSize) {
+                calculateForces(this.fromRow, this.toRow, new int[QuadTree.stackSize()], new double[2]);
+            } else {
+                int middle = (this.fromRow + this.toRow) >>> 1;
+                invokeAll(new ForceShardAction(this.fromRow, middle, this.shardSize),
+                        new ForceShardAction(middle, this.toRow, this.shardSize));
+            }
+        }
+
+    }
+
+}
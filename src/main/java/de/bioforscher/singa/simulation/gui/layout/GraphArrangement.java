@@ -0,0 +1,180 @@
+package de.bioforscher.singa.simulation.gui.layout;
+
+import de.bioforscher.singa.mathematics.vectors.Vector2D;
+import de.bioforscher.singa.simulation.gui.renderer.GraphGeometry;
+import de.bioforscher.singa.simulation.model.graphs.AutomatonGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a {@link ForceDirectedLayout} on a background thread. The graph itself is not touched while the layout is
+ * running: intermediate positions are published as previews (at most every {@value #PREVIEW_INTERVAL_MILLISECONDS}
+ * milliseconds, newer previews replace older ones) and the final positions are only written into the graph by
+ * {@link #commit()}, all at once on the thread that draws the graph. The renderer draws the previews from geometries of
+ * their own, such that the arrangement is animated. The arrangement can be cancelled at any time.
+ *
+ * @author cl
+ */
+public class GraphArrangement {
+
+    private static final Logger logger = LoggerFactory.getLogger(GraphArrangement.class);
+
+    /**
+     * The minimal time between two previews.
+     */
+    private static final long PREVIEW_INTERVAL_MILLISECONDS = 50;
+
+    private final ForceDirectedLayout layout;
+    private final int iterations;
+    private final int threads;
+    private final AtomicReference<Positions> preview;
+    private volatile Positions result;
+    private volatile boolean cancelled;
+    private volatile boolean failed;
+
+    /**
+     * Creates a new arrangement of the graph described by the given geometry.
+     *
+     * @param geometry The geometry the layout starts from.
+     * @param iterations The number of iterations.
+     * @param threads The number of threads forces are calculated on.
+     */
+    public GraphArrangement(GraphGeometry geometry, int iterations, int threads) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("The number of iterations has to be positive.");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads has to be positive.");
+        }
+        this.layout = new ForceDirectedLayout(geometry);
+        this.iterations = iterations;
+        this.threads = threads;
+        this.preview = new AtomicReference<>();
+    }
+
+    public GraphGeometry getGeometry() {
+        return this.layout.getGeometry();
+    }
+
+    /**
+     * Starts the layout on a new background thread.
+     */
+    public void start() {
+        Thread worker = new Thread(this::arrange, "graph-arrangement");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void arrange() {
+        logger.debug("Arranging {} nodes with {} threads ...", this.layout.getNodeCount(), this.threads);
+        long start = System.nanoTime();
+        ForkJoinPool pool = this.threads > 1 ? new ForkJoinPool(this.threads) : null;
+        try {
+            long lastPreview = System.nanoTime();
+            for (int iteration = 0; iteration < this.iterations && !this.cancelled; iteration++) {
+                this.layout.step(this.layout.getTemperature(iteration, this.iterations), pool);
+                long now = System.nanoTime();
+                if (now - lastPreview >= TimeUnit.MILLISECONDS.toNanos(PREVIEW_INTERVAL_MILLISECONDS)) {
+                    this.preview.set(copyPositions());
+                    lastPreview = now;
+                }
+            }
+            if (!this.cancelled) {
+                this.result = copyPositions();
+                logger.debug("Arranged graph in {} ms.", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        } catch (RuntimeException e) {
+            logger.error("Could not arrange graph.", e);
+            this.failed = true;
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private Positions copyPositions() {
+        Positions positions = new Positions(this.layout.getNodeCount());
+        this.layout.copyPositions(positions.x, positions.y);
+        return positions;
+    }
+
+    /**
+     * Stops the layout after the current iteration. The graph keeps its positions.
+     */
+    public void cancel() {
+        this.cancelled = true;
+        this.preview.set(null);
+    }
+
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Returns whether the layout has ended, either because it is finished or because it failed.
+     *
+     * @return True, if no more previews are published.
+     */
+    public boolean isDone() {
+        return this.result != null || this.failed;
+    }
+
+    public boolean isFailed() {
+        return this.failed;
+    }
+
+    /**
+     * Returns the latest preview that has not been taken yet as a geometry.
+     *
+     * @return The geometry with the intermediate positions, or null if there is no new preview.
+     */
+    public GraphGeometry pollPreview() {
+        Positions positions = this.preview.getAndSet(null);
+        if (positions == null) {
+            return null;
+        }
+        return getGeometry().withPositions(positions.x, positions.y);
+    }
+
+    /**
+     * Moves all nodes of the graph to their final positions. The graph has to be drawn by the calling thread, such
+     * that the graph is never drawn with only some of the nodes moved. If nodes have been added or removed while the
+     * layout was running, the result is discarded.
+     *
+     * @return True, if the nodes have been moved.
+     */
+    public boolean commit() {
+        Positions positions = this.result;
+        if (positions == null || this.cancelled) {
+            return false;
+        }
+        GraphGeometry geometry = getGeometry();
+        AutomatonGraph graph = geometry.getGraph();
+        if (!geometry.describes(graph)) {
+            logger.warn("The graph has been changed while it was arranged, the layout is discarded.");
+            return false;
+        }
+        for (int row = 0; row < geometry.getNodeCount(); row++) {
+            geometry.getNode(row).setPosition(new Vector2D(positions.x[row], positions.y[row]));
+        }
+        return true;
+    }
+
+    private static class Positions {
+
+        private final double[] x;
+        private final double[] y;
+
+        Positions(int nodeCount) {
+            this.x = new double[nodeCount];
+            this.y = new double[nodeCount];
+        }
+
+    }
+
+}
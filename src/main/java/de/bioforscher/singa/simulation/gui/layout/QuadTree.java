@@ -0,0 +1,256 @@
+package de.bioforscher.singa.simulation.gui.layout;
+
+import java.util.Arrays;
+
+/**
+ * A Barnes-Hut quadtree over a set of points. Every cell stores the number of points it contains and the sum of
+ * their positions, such that a group of distant points can be treated as a single point at its center of mass. Cells
+ * are kept in primitive arrays that are reused when the tree is rebuilt, the four children of a cell are stored
+ * consecutively. Once built, the tree is only read, so it can be queried by several threads at once.
+ *
+ * @author cl
+ */
+class QuadTree {
+
+    /**
+     * The depth below which cells are not split any further, such that coincident points end in the same cell.
+     */
+    private static final int MAXIMAL_DEPTH = 32;
+
+    private static final int NO_CHILDREN = -1;
+    private static final int NO_POINT = -1;
+    private static final int SEVERAL_POINTS = -2;
+
+    /**
+     * The squared distance below which points are pushed apart in a fixed direction.
+     */
+    private static final double MINIMAL_SQUARED_DISTANCE = 1.0E-9;
+
+    private double[] centerX;
+    private double[] centerY;
+    private double[] halfSize;
+    private int[] mass;
+    private double[] sumX;
+    private double[] sumY;
+    private int[] firstChild;
+    private int[] point;
+    private int cellCount;
+
+    QuadTree(int initialCapacity) {
+        allocate(Math.max(initialCapacity, 1));
+    }
+
+    private void allocate(int capacity) {
+        this.centerX = new double[capacity];
+        this.centerY = new double[capacity];
+        this.halfSize = new double[capacity];
+        this.mass = new int[capacity];
+        this.sumX = new double[capacity];
+        this.sumY = new double[capacity];
+        this.firstChild = new int[capacity];
+        this.point = new int[capacity];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= this.mass.length) {
+            return;
+        }
+        int grown = Math.max(capacity, this.mass.length * 2);
+        this.centerX = Arrays.copyOf(this.centerX, grown);
+        this.centerY = Arrays.copyOf(this.centerY, grown);
+        this.halfSize = Arrays.copyOf(this.halfSize, grown);
+        this.mass = Arrays.copyOf(this.mass, grown);
+        this.sumX = Arrays.copyOf(this.sumX, grown);
+        this.sumY = Arrays.copyOf(this.sumY, grown);
+        this.firstChild = Arrays.copyOf(this.firstChild, grown);
+        this.point = Arrays.copyOf(this.point, grown);
+    }
+
+    /**
+     * Rebuilds the tree over the given points.
+     *
+     * @param x The x coordinates.
+     * @param y The y coordinates.
+     * @param count The number of points.
+     */
+    void build(double[] x, double[] y, int count) {
+        double minimalX = Double.POSITIVE_INFINITY;
+        double minimalY = Double.POSITIVE_INFINITY;
+        double maximalX = Double.NEGATIVE_INFINITY;
+        double maximalY = Double.NEGATIVE_INFINITY;
+        for (int index = 0; index < count; index++) {
+            minimalX = Math.min(minimalX, x[index]);
+            minimalY = Math.min(minimalY, y[index]);
+            maximalX = Math.max(maximalX, x[index]);
+            maximalY = Math.max(maximalY, y[index]);
+        }
+        if (count == 0) {
+            minimalX = minimalY = maximalX = maximalY = 0;
+        }
+        this.cellCount = 0;
+        // a square around all points, slightly enlarged such that points on the border fall inside
+        double size = Math.max(Math.max(maximalX - minimalX, maximalY - minimalY), 1.0) * 1.0001;
+        addCell((minimalX + maximalX) / 2.0, (minimalY + maximalY) / 2.0, size / 2.0);
+        for (int index = 0; index < count; index++) {
+            insert(index, x[index], y[index]);
+        }
+    }
+
+    private int addCell(double centerX, double centerY, double halfSize) {
+        ensureCapacity(this.cellCount + 1);
+        int cell = this.cellCount++;
+        this.centerX[cell] = centerX;
+        this.centerY[cell] = centerY;
+        this.halfSize[cell] = halfSize;
+        this.mass[cell] = 0;
+        this.sumX[cell] = 0;
+        this.sumY[cell] = 0;
+        this.firstChild[cell] = NO_CHILDREN;
+        this.point[cell] = NO_POINT;
+        return cell;
+    }
+
+    private void insert(int index, double x, double y) {
+        int cell = 0;
+        int depth = 0;
+        while (true) {
+            if (this.firstChild[cell] != NO_CHILDREN) {
+                addMass(cell, x, y);
+                cell = childFor(cell, x, y);
+                depth++;
+                continue;
+            }
+            if (this.mass[cell] == 0) {
+                addMass(cell, x, y);
+                this.point[cell] = index;
+                return;
+            }
+            if (depth >= MAXIMAL_DEPTH) {
+                addMass(cell, x, y);
+                this.point[cell] = SEVERAL_POINTS;
+                return;
+            }
+            // split the leaf and move its point down, the new point follows in the next pass
+            int existing = this.point[cell];
+            double existingX = this.sumX[cell];
+            double existingY = this.sumY[cell];
+            split(cell);
+            this.point[cell] = NO_POINT;
+            int child = childFor(cell, existingX, existingY);
+            addMass(child, existingX, existingY);
+            this.point[child] = existing;
+        }
+    }
+
+    private void split(int cell) {
+        double quarter = this.halfSize[cell] / 2.0;
+        double centerX = this.centerX[cell];
+        double centerY = this.centerY[cell];
+        // the cell arrays may be replaced while children are added
+        int first = addCell(centerX - quarter, centerY - quarter, quarter);
+        addCell(centerX + quarter, centerY - quarter, quarter);
+        addCell(centerX - quarter, centerY + quarter, quarter);
+        addCell(centerX + quarter, centerY + quarter, quarter);
+        this.firstChild[cell] = first;
+    }
+
+    private int childFor(int cell, double x, double y) {
+        int child = this.firstChild[cell];
+        if (x >= this.centerX[cell]) {
+            child += 1;
+        }
+        if (y >= this.centerY[cell]) {
+            child += 2;
+        }
+        return child;
+    }
+
+    private void addMass(int cell, double x, double y) {
+        this.mass[cell]++;
+        this.sumX[cell] += x;
+        this.sumY[cell] += y;
+    }
+
+    /**
+     * Adds the repulsion of all other points to the displacement of the given point. Every point repels with a force of
+     * strength / distance. Cells that appear smaller than theta from the point are approximated by their center of
+     * mass.
+     *
+     * @param index The point.
+     * @param x The x coordinate of the point.
+     * @param y The y coordinate of the point.
+     * @param strength The strength of the repulsion.
+     * @param theta The ratio of cell size to distance, below which cells are approximated.
+     * @param stack A stack of at least {@link #stackSize()} entries, that is used by the calling thread only.
+     * @param displacement The displacement, x and y.
+     */
+    void addRepulsion(int index, double x, double y, double strength, double theta, int[] stack,
+                      double[] displacement) {
+        double thetaSquared = theta * theta;
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int cell = stack[--top];
+            int cellMass = this.mass[cell];
+            if (cellMass == 0 || this.point[cell] == index) {
+                continue;
+            }
+            double cellSumX = this.sumX[cell];
+            double cellSumY = this.sumY[cell];
+            if (this.firstChild[cell] == NO_CHILDREN) {
+                if (this.point[cell] == SEVERAL_POINTS && contains(cell, x, y)) {
+                    // the point itself is part of the cell
+                    cellMass--;
+                    cellSumX -= x;
+                    cellSumY -= y;
+                    if (cellMass == 0) {
+                        continue;
+                    }
+                }
+                repel(index, x - cellSumX / cellMass, y - cellSumY / cellMass, cellMass * strength, displacement);
+                continue;
+            }
+            double deltaX = x - cellSumX / cellMass;
+            double deltaY = y - cellSumY / cellMass;
+            double size = this.halfSize[cell] * 2.0;
+            if (size * size < thetaSquared * (deltaX * deltaX + deltaY * deltaY)) {
+                repel(index, deltaX, deltaY, cellMass * strength, displacement);
+            } else {
+                int first = this.firstChild[cell];
+                stack[top++] = first;
+                stack[top++] = first + 1;
+                stack[top++] = first + 2;
+                stack[top++] = first + 3;
+            }
+        }
+    }
+
+    private static void repel(int index, double deltaX, double deltaY, double strength, double[] displacement) {
+        double squaredDistance = deltaX * deltaX + deltaY * deltaY;
+        if (squaredDistance < MINIMAL_SQUARED_DISTANCE) {
+            // coincident points are pushed apart in a direction that only depends on the point
+            double angle = index * 2.399963;
+            displacement[0] += Math.cos(angle) * strength;
+            displacement[1] += Math.sin(angle) * strength;
+            return;
+        }
+        displacement[0] += deltaX / squaredDistance * strength;
+        displacement[1] += deltaY / squaredDistance * strength;
+    }
+
+    private boolean contains(int cell, double x, double y) {
+        return Math.abs(x - this.centerX[cell]) <= this.halfSize[cell] &&
+                Math.abs(y - this.centerY[cell]) <= this.halfSize[cell];
+    }
+
+    /**
+     * Returns the number of entries required by the stack of {@link #addRepulsion(int, double, double, double, double,
+     * int[], double[])}.
+     *
+     * @return The size of the stack.
+     */
+    static int stackSize() {
+        return 3 * (MAXIMAL_DEPTH + 1) + 1;
+    }
+
+}
@@ -0,0 +1,133 @@
+package de.bioforscher.singa.simulation.gui.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in nanoseconds that can be updated from any thread without locking. Every power of two is
+ * divided into {@value #SUB_BUCKETS} buckets, so percentiles are accurate to about 12 percent. Windowed statistics are
+ * calculated from the difference of two {@link Snapshot}s.
+ *
+ * @author cl
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final LongAdder sum;
+
+    public Histogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.sum = new LongAdder();
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        this.counts.incrementAndGet(bucket(nanos));
+        this.sum.add(nanos);
+    }
+
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            this.counts.set(bucket, 0);
+        }
+        this.sum.reset();
+    }
+
+    public Snapshot getSnapshot() {
+        long[] values = new long[BUCKETS];
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            values[bucket] = this.counts.get(bucket);
+        }
+        return new Snapshot(values, this.sum.sum());
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> exponent) & (SUB_BUCKETS - 1);
+        return (exponent + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long bound = ((SUB_BUCKETS + subBucket + 1) << exponent) - 1;
+        return bound < 0 ? Long.MAX_VALUE : bound;
+    }
+
+    /**
+     * The counts of a histogram at a certain point in time.
+     */
+    public static class Snapshot {
+
+        private final long[] counts;
+        private final long sum;
+        private final long count;
+
+        private Snapshot(long[] counts, long sum) {
+            this.counts = counts;
+            this.sum = sum;
+            long count = 0;
+            for (long value : counts) {
+                count += value;
+            }
+            this.count = count;
+        }
+
+        /**
+         * Returns the values that have been recorded after the given snapshot was taken.
+         *
+         * @param previous The earlier snapshot.
+         * @return The difference.
+         */
+        public Snapshot since(Snapshot previous) {
+            long[] difference = new long[this.counts.length];
+            for (int bucket = 0; bucket < this.counts.length; bucket++) {
+                difference[bucket] = Math.max(0, this.counts[bucket] - previous.counts[bucket]);
+            }
+            return new Snapshot(difference, Math.max(0, this.sum - previous.sum));
+        }
+
+        public long getCount() {
+            return this.count;
+        }
+
+        public double getMean() {
+            return this.count == 0 ? 0 : (double) this.sum / this.count;
+        }
+
+        /**
+         * Returns an upper bound of the given percentile of the recorded values.
+         *
+         * @param percentile The percentile between 0 and 100.
+         * @return The value.
+         */
+        public long getPercentile(double percentile) {
+            if (this.count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(this.count * percentile / 100.0);
+            long seen = 0;
+            for (int bucket = 0; bucket < this.counts.length; bucket++) {
+                seen += this.counts[bucket];
+                if (seen >= rank && this.counts[bucket] > 0) {
+                    return upperBound(bucket);
+                }
+            }
+            return upperBound(this.counts.length - 1);
+        }
+
+    }
+
+}
@@ -0,0 +1,80 @@
+package de.bioforscher.singa.simulation.gui.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A collection of named counters and {@link Histogram}s of durations that can be updated from any thread without
+ * locking. Counters and histograms are created on first use.
+ *
+ * @author cl
+ */
+public class MetricsRegistry {
+
+    private final ConcurrentHashMap<String, LongAdder> counters;
+    private final ConcurrentHashMap<String, Histogram> histograms;
+
+    public MetricsRegistry() {
+        this.counters = new ConcurrentHashMap<>();
+        this.histograms = new ConcurrentHashMap<>();
+    }
+
+    public void increment(String name) {
+        counter(name).increment();
+    }
+
+    public void add(String name, long value) {
+        counter(name).add(value);
+    }
+
+    public long get(String name) {
+        LongAdder counter = this.counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Records a duration in the histogram with the given name.
+     *
+     * @param name The name of the histogram.
+     * @param nanos The duration in nanoseconds.
+     */
+    public void record(String name, long nanos) {
+        histogram(name).record(nanos);
+    }
+
+    public Histogram histogram(String name) {
+        Histogram histogram = this.histograms.get(name);
+        if (histogram == null) {
+            histogram = this.histograms.computeIfAbsent(name, key -> new Histogram());
+        }
+        return histogram;
+    }
+
+    public void reset() {
+        this.counters.values().forEach(LongAdder::reset);
+        this.histograms.values().forEach(Histogram::reset);
+    }
+
+    /**
+     * Returns the current values of all counters sorted by name.
+     *
+     * @return The current values.
+     */
+    public Map<String, Long> getValues() {
+        Map<String, Long> values = new TreeMap<>();
+        this.counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        return Collections.unmodifiableMap(values);
+    }
+
+    private LongAdder counter(String name) {
+        LongAdder counter = this.counters.get(name);
+        if (counter == null) {
+            counter = this.counters.computeIfAbsent(name, key -> new LongAdder());
+        }
+        return counter;
+    }
+
+}
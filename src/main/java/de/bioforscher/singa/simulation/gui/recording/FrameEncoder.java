@@ -0,0 +1,56 @@
+package de.bioforscher.singa.simulation.gui.recording;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Writes recorded frames to a file or a set of files. Encoders are only used by the thread of a
+ * {@link FrameRecorder}.
+ *
+ * @author cl
+ */
+public interface FrameEncoder extends Closeable {
+
+    /**
+     * Encodes the next frame.
+     *
+     * @param pixels The pixels in premultiplied ARGB, row by row.
+     * @param width The width of the frame.
+     * @param height The height of the frame.
+     * @throws IOException If the frame could not be written.
+     */
+    void encode(int[] pixels, int width, int height) throws IOException;
+
+    /**
+     * Creates the encoder for the given file: a sequence of PNG images named after the file in its directory, if a
+     * PNG file is given, a Motion JPEG video otherwise.
+     *
+     * @param file The file.
+     * @param framesPerSecond The number of frames played per second of a video.
+     * @return The encoder.
+     * @throws IOException If the file could not be opened.
+     */
+    static FrameEncoder forFile(Path file, double framesPerSecond) throws IOException {
+        String fileName = file.getFileName().toString();
+        if (fileName.toLowerCase().endsWith(".png")) {
+            return new PngSequenceEncoder(file.toAbsolutePath().getParent(), fileName.substring(0, fileName.length() - 4));
+        }
+        return new MjpegAviEncoder(file, framesPerSecond);
+    }
+
+    /**
+     * Converts a premultiplied ARGB pixel to an opaque RGB pixel, as if it was drawn on a white background.
+     *
+     * @param pixel The premultiplied pixel.
+     * @return The opaque pixel.
+     */
+    static int composeOnWhite(int pixel) {
+        int transparency = 255 - (pixel >>> 24);
+        int red = Math.min(((pixel >> 16) & 0xff) + transparency, 255);
+        int green = Math.min(((pixel >> 8) & 0xff) + transparency, 255);
+        int blue = Math.min((pixel & 0xff) + transparency, 255);
+        return 0xff000000 | red << 16 | green << 8 | blue;
+    }
+
+}
@@ -0,0 +1,297 @@
+package de.bioforscher.singa.simulation.gui.recording;
+
+import de.bioforscher.singa.core.events.UpdateEventListener;
+import de.bioforscher.singa.simulation.gui.metrics.MetricsRegistry;
+import de.bioforscher.singa.simulation.gui.renderer.Camera;
+import de.bioforscher.singa.simulation.gui.renderer.FrameRasterizer;
+import de.bioforscher.singa.simulation.gui.renderer.FrameRequest;
+import de.bioforscher.singa.simulation.gui.renderer.GraphGeometry;
+import de.bioforscher.singa.simulation.gui.renderer.NodeAttributes;
+import de.bioforscher.singa.simulation.gui.renderer.NodeColoring;
+import de.bioforscher.singa.simulation.gui.renderer.NodeRaster;
+import de.bioforscher.singa.simulation.gui.snapshots.SimulationSnapshot;
+import de.bioforscher.singa.simulation.gui.spatial.NodeIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records every n-th frame with a {@link FrameEncoder} on a background thread. Frames are either the pixels of the
+ * visible canvas (see {@link #recordPixels(int[], int, int)}) or snapshots that are rasterized by the recorder itself,
+ * such that simulations can be recorded without a canvas (see {@link #setFrameFormat(NodeColoring, int, int, double,
+ * double)}). Frames are handed over through a bounded queue: if the encoder falls behind, frames are dropped
+ * and counted instead of blocking the simulation or the JavaFX Application Thread.
+ *
+ * @author cl
+ */
+public class FrameRecorder implements UpdateEventListener<SimulationSnapshot> {
+
+    private static final Logger logger = LoggerFactory.getLogger(FrameRecorder.class);
+
+    public static final String RECORDED_FRAMES = "recording.frames.recorded";
+    public static final String DROPPED_FRAMES = "recording.frames.dropped";
+
+    /**
+     * The number of frames that may wait for the encoder.
+     */
+    private static final int QUEUE_CAPACITY = 8;
+
+    /**
+     * The time the encoder waits for frames, before it checks whether the recording has been stopped.
+     */
+    private static final long POLL_MILLISECONDS = 100;
+
+    private final FrameEncoder encoder;
+    private final int interval;
+    private final BlockingQueue<RecordedFrame> queue;
+    private final AtomicLong offeredFrames;
+    private final AtomicLong recordedFrames;
+    private final AtomicLong droppedFrames;
+    private final CompletableFuture<Void> completion;
+    private volatile boolean stopped;
+    private volatile MetricsRegistry metrics;
+
+    // the format of rasterized snapshots
+    private volatile FrameRasterizer rasterizer;
+    private volatile NodeColoring coloring;
+    private volatile int width;
+    private volatile int height;
+    private volatile double nodeDiameter;
+    private volatile double edgeThickness;
+
+    // only accessed by the encoder thread
+    private GraphGeometry geometry;
+    private NodeIndex nodeIndex;
+    private NodeAttributes nodeAttributes;
+    private final Camera camera;
+    private int[] pixels;
+
+    /**
+     * Creates a new recorder and starts its encoder thread.
+     *
+     * @param encoder The encoder recorded frames are written with.
+     * @param interval The number of frames per recorded frame.
+     */
+    public FrameRecorder(FrameEncoder encoder, int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("The recording interval has to be positive.");
+        }
+        this.encoder = encoder;
+        this.interval = interval;
+        this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.offeredFrames = new AtomicLong();
+        this.recordedFrames = new AtomicLong();
+        this.droppedFrames = new AtomicLong();
+        this.completion = new CompletableFuture<>();
+        this.camera = new Camera();
+        Thread worker = new Thread(this::encode, "frame-recorder");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the format snapshots are rasterized with. The whole graph is fitted into the frame. Has to be set before
+     * snapshots are recorded. The coloring is immutable, changes of the options it has been captured from are not
+     * recorded.
+     *
+     * @param coloring The coloring of the nodes.
+     * @param width The width of the frames.
+     * @param height The height of the frames.
+     * @param nodeDiameter The diameter of nodes in the coordinates of the graph.
+     * @param edgeThickness The thickness of edges in the coordinates of the graph.
+     */
+    public void setFrameFormat(NodeColoring coloring, int width, int height, double nodeDiameter,
+                               double edgeThickness) {
+        this.width = width;
+        this.height = height;
+        this.nodeDiameter = nodeDiameter;
+        this.edgeThickness = edgeThickness;
+        this.coloring = coloring;
+        this.rasterizer = new FrameRasterizer();
+    }
+
+    /**
+     * Counts a frame and determines whether it should be recorded. Callers that capture frames themselves use this
+     * to avoid capturing frames that are not recorded.
+     *
+     * @return True, if the frame should be recorded.
+     */
+    public boolean isDue() {
+        return !this.stopped && this.offeredFrames.getAndIncrement() % this.interval == 0;
+    }
+
+    /**
+     * Records the given pixels, unless the encoder is too far behind. Frames are not counted by this method, see
+     * {@link #isDue()}. The recorder takes over the array.
+     *
+     * @param pixels The pixels in premultiplied ARGB, row by row.
+     * @param width The width of the frame.
+     * @param height The height of the frame.
+     */
+    public void recordPixels(int[] pixels, int width, int height) {
+        if (this.stopped) {
+            return;
+        }
+        if (!this.queue.offer(new RecordedFrame(pixels, width, height, null))) {
+            dropFrame();
+        }
+    }
+
+    /**
+     * Records every n-th received snapshot, unless the encoder is too far behind.
+     *
+     * @param snapshot The snapshot.
+     */
+    @Override
+    public void onEventReceived(SimulationSnapshot snapshot) {
+        if (this.rasterizer == null) {
+            throw new IllegalStateException("The frame format has to be set before snapshots are recorded.");
+        }
+        if (!isDue()) {
+            return;
+        }
+        RecordedFrame frame = new RecordedFrame(null, this.width, this.height, snapshot.retain());
+        if (!this.queue.offer(frame)) {
+            snapshot.release();
+            dropFrame();
+        }
+    }
+
+    private void dropFrame() {
+        this.droppedFrames.incrementAndGet();
+        MetricsRegistry metrics = this.metrics;
+        if (metrics != null) {
+            metrics.increment(DROPPED_FRAMES);
+        }
+    }
+
+    public long getRecordedFrames() {
+        return this.recordedFrames.get();
+    }
+
+    public long getDroppedFrames() {
+        return this.droppedFrames.get();
+    }
+
+    public boolean isStopped() {
+        return this.stopped;
+    }
+
+    /**
+     * Stops recording. Frames that are already waiting are still encoded, before the encoder is closed.
+     *
+     * @return A future that is completed as soon as the encoder is closed.
+     */
+    public CompletableFuture<Void> stop() {
+        this.stopped = true;
+        return this.completion;
+    }
+
+    private void encode() {
+        try {
+            while (!this.stopped || !this.queue.isEmpty()) {
+                RecordedFrame frame = this.queue.poll(POLL_MILLISECONDS, TimeUnit.MILLISECONDS);
+                if (frame != null) {
+                    encode(frame);
+                }
+            }
+            // frames offered while the recording was stopped
+            discardFrames();
+            this.encoder.close();
+            logger.info("Recorded {} frames, dropped {}.", this.recordedFrames.get(), this.droppedFrames.get());
+            this.completion.complete(null);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Could not record frame.", e);
+            this.stopped = true;
+            discardFrames();
+            try {
+                this.encoder.close();
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            this.completion.completeExceptionally(e);
+        } catch (InterruptedException e) {
+            discardFrames();
+            this.completion.completeExceptionally(e);
+        }
+    }
+
+    private void encode(RecordedFrame frame) throws IOException {
+        if (frame.snapshot == null) {
+            this.encoder.encode(frame.pixels, frame.width, frame.height);
+        } else {
+            NodeIndex nodeIndex = prepareIndex(frame.snapshot);
+            FrameRequest request = new FrameRequest(nodeIndex, this.nodeAttributes, frame.snapshot, this.coloring,
+                    this.camera, frame.width, frame.height, this.nodeDiameter, this.edgeThickness);
+            try {
+                NodeRaster raster = this.rasterizer.rasterize(request);
+                int pixelCount = raster.getWidth() * raster.getHeight();
+                if (this.pixels == null || this.pixels.length != pixelCount) {
+                    this.pixels = new int[pixelCount];
+                }
+                this.pixels = raster.swapPixels(this.pixels);
+                this.encoder.encode(this.pixels, raster.getWidth(), raster.getHeight());
+            } finally {
+                request.release();
+            }
+        }
+        this.recordedFrames.incrementAndGet();
+        MetricsRegistry metrics = this.metrics;
+        if (metrics != null) {
+            metrics.increment(RECORDED_FRAMES);
+        }
+    }
+
+    /**
+     * Returns the index over the graph of the snapshot. The index and the view fitting the graph into the frame are
+     * only rebuilt if the graph changed, the attributes of the nodes also if section colors or the states and sections
+     * of the snapshot changed.
+     */
+    private NodeIndex prepareIndex(SimulationSnapshot snapshot) {
+        if (this.geometry == null || !this.geometry.describes(snapshot.getGraph())) {
+            this.geometry = new GraphGeometry(snapshot.getGraph());
+            this.nodeIndex = new NodeIndex(this.geometry);
+            this.camera.fit(this.geometry, this.nodeDiameter + this.edgeThickness, this.width, this.height);
+        }
+        if (this.nodeAttributes == null || !this.nodeAttributes.matches(this.geometry, snapshot)) {
+            this.nodeAttributes = new NodeAttributes(this.geometry, snapshot);
+        }
+        return this.nodeIndex;
+    }
+
+    private void discardFrames() {
+        RecordedFrame frame;
+        while ((frame = this.queue.poll()) != null) {
+            if (frame.snapshot != null) {
+                frame.snapshot.release();
+            }
+        }
+    }
+
+    private static class RecordedFrame {
+
+        private final int[] pixels;
+        private final int width;
+        private final int height;
+        private final SimulationSnapshot snapshot;
+
+        RecordedFrame(int[] pixels, int width, int height, SimulationSnapshot snapshot) {
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+            this.snapshot = snapshot;
+        }
+
+    }
+
+}
@@ -0,0 +1,212 @@
+package de.bioforscher.singa.simulation.gui.recording;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes frames as JPEG images into an AVI file (Motion JPEG), that can be played by common video players without
+ * any codec beyond the Java runtime. The size of the video is the size of the first frame, later frames of a
+ * different size are cropped or padded with white. The header and the index are completed when the encoder is
+ * closed.
+ *
+ * @author cl
+ */
+public class MjpegAviEncoder implements FrameEncoder {
+
+    /**
+     * The size of the headers in front of the first frame.
+     */
+    private static final int HEADER_SIZE = 224;
+
+    /**
+     * The position of the "movi" list type, frame offsets in the index are relative to it.
+     */
+    private static final int MOVIE_LIST_POSITION = 220;
+
+    private static final int AVIF_HASINDEX = 0x10;
+    private static final int AVIIF_KEYFRAME = 0x10;
+
+    private final FileChannel channel;
+    private final double framesPerSecond;
+    private final ByteArrayOutputStream jpegBuffer;
+    private BufferedImage image;
+    private int width;
+    private int height;
+    private int frameCount;
+    private int largestFrame;
+    private int[] index;
+
+    /**
+     * Creates a new encoder. An existing file is overwritten.
+     *
+     * @param file The file.
+     * @param framesPerSecond The number of frames played per second.
+     * @throws IOException If the file could not be opened.
+     */
+    public MjpegAviEncoder(Path file, double framesPerSecond) throws IOException {
+        if (!(framesPerSecond > 0)) {
+            throw new IllegalArgumentException("The frame rate has to be positive.");
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.framesPerSecond = framesPerSecond;
+        this.jpegBuffer = new ByteArrayOutputStream();
+        this.index = new int[64];
+    }
+
+    @Override
+    public void encode(int[] pixels, int width, int height) throws IOException {
+        if (this.image == null) {
+            this.width = width;
+            this.height = height;
+            this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            // the header is completed on close
+            this.channel.write(ByteBuffer.allocate(HEADER_SIZE), 0);
+            this.channel.position(HEADER_SIZE);
+        }
+        int[] imagePixels = ((DataBufferInt) this.image.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < this.height; y++) {
+            for (int x = 0; x < this.width; x++) {
+                imagePixels[y * this.width + x] = x < width && y < height ?
+                        FrameEncoder.composeOnWhite(pixels[y * width + x]) : 0xffffffff;
+            }
+        }
+        this.jpegBuffer.reset();
+        if (!ImageIO.write(this.image, "jpg", this.jpegBuffer)) {
+            throw new IOException("No writer for JPEG images available.");
+        }
+        int size = this.jpegBuffer.size();
+        int paddedSize = size + (size & 1);
+        long position = this.channel.position();
+        ByteBuffer chunk = littleEndian(8 + paddedSize);
+        putFourCC(chunk, "00dc");
+        chunk.putInt(size);
+        chunk.put(this.jpegBuffer.toByteArray());
+        chunk.position(8 + paddedSize);
+        chunk.flip();
+        writeFully(chunk);
+
+        if (this.index.length < (this.frameCount + 1) * 2) {
+            this.index = Arrays.copyOf(this.index, this.index.length * 2);
+        }
+        this.index[this.frameCount * 2] = (int) (position - MOVIE_LIST_POSITION);
+        this.index[this.frameCount * 2 + 1] = size;
+        this.frameCount++;
+        this.largestFrame = Math.max(this.largestFrame, size);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (this.image == null) {
+                // nothing has been recorded
+                return;
+            }
+            long movieEnd = this.channel.position();
+            ByteBuffer indexChunk = littleEndian(8 + this.frameCount * 16);
+            putFourCC(indexChunk, "idx1");
+            indexChunk.putInt(this.frameCount * 16);
+            for (int frame = 0; frame < this.frameCount; frame++) {
+                putFourCC(indexChunk, "00dc");
+                indexChunk.putInt(AVIIF_KEYFRAME);
+                indexChunk.putInt(this.index[frame * 2]);
+                indexChunk.putInt(this.index[frame * 2 + 1]);
+            }
+            indexChunk.flip();
+            writeFully(indexChunk);
+            long fileEnd = this.channel.position();
+            ByteBuffer header = createHeader((int) (fileEnd - 8), (int) (movieEnd - MOVIE_LIST_POSITION));
+            this.channel.write(header, 0);
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    private ByteBuffer createHeader(int riffSize, int movieListSize) {
+        int microsecondsPerFrame = (int) Math.round(1_000_000 / this.framesPerSecond);
+        ByteBuffer header = littleEndian(HEADER_SIZE);
+        putFourCC(header, "RIFF");
+        header.putInt(riffSize);
+        putFourCC(header, "AVI ");
+        // header list
+        putFourCC(header, "LIST");
+        header.putInt(192);
+        putFourCC(header, "hdrl");
+        putFourCC(header, "avih");
+        header.putInt(56);
+        header.putInt(microsecondsPerFrame);
+        header.putInt((int) Math.min(Integer.MAX_VALUE, (long) this.largestFrame * Math.round(this.framesPerSecond)));
+        header.putInt(0);
+        header.putInt(AVIF_HASINDEX);
+        header.putInt(this.frameCount);
+        header.putInt(0);
+        header.putInt(1);
+        header.putInt(this.largestFrame);
+        header.putInt(this.width);
+        header.putInt(this.height);
+        header.putInt(0).putInt(0).putInt(0).putInt(0);
+        // stream list
+        putFourCC(header, "LIST");
+        header.putInt(116);
+        putFourCC(header, "strl");
+        putFourCC(header, "strh");
+        header.putInt(56);
+        putFourCC(header, "vids");
+        putFourCC(header, "MJPG");
+        header.putInt(0);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putInt(0);
+        // the rate is given as rate / scale frames per second
+        header.putInt(1000);
+        header.putInt((int) Math.round(this.framesPerSecond * 1000));
+        header.putInt(0);
+        header.putInt(this.frameCount);
+        header.putInt(this.largestFrame);
+        header.putInt(-1);
+        header.putInt(0);
+        header.putShort((short) 0).putShort((short) 0).putShort((short) this.width).putShort((short) this.height);
+        putFourCC(header, "strf");
+        header.putInt(40);
+        header.putInt(40);
+        header.putInt(this.width);
+        header.putInt(this.height);
+        header.putShort((short) 1);
+        header.putShort((short) 24);
+        putFourCC(header, "MJPG");
+        header.putInt(this.width * this.height * 3);
+        header.putInt(0).putInt(0).putInt(0).putInt(0);
+        // frames
+        putFourCC(header, "LIST");
+        header.putInt(movieListSize);
+        putFourCC(header, "movi");
+        header.flip();
+        return header;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            this.channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer littleEndian(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void putFourCC(ByteBuffer buffer, String fourCC) {
+        for (int character = 0; character < 4; character++) {
+            buffer.put((byte) fourCC.charAt(character));
+        }
+    }
+
+}
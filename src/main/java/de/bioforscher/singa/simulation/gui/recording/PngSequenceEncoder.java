@@ -0,0 +1,55 @@
+package de.bioforscher.singa.simulation.gui.recording;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes every frame to a PNG file in a directory. The files are named by a prefix followed by the number of the
+ * frame, e.g. {@code frame-00042.png}, such that they can be assembled into a video by external tools.
+ *
+ * @author cl
+ */
+public class PngSequenceEncoder implements FrameEncoder {
+
+    private final Path directory;
+    private final String prefix;
+    private BufferedImage image;
+    private int frameNumber;
+
+    /**
+     * Creates a new encoder. The directory is created, if it does not exist.
+     *
+     * @param directory The directory.
+     * @param prefix The prefix of the file names.
+     * @throws IOException If the directory could not be created.
+     */
+    public PngSequenceEncoder(Path directory, String prefix) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.prefix = prefix;
+    }
+
+    @Override
+    public void encode(int[] pixels, int width, int height) throws IOException {
+        if (this.image == null || this.image.getWidth() != width || this.image.getHeight() != height) {
+            this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+        int[] imagePixels = ((DataBufferInt) this.image.getRaster().getDataBuffer()).getData();
+        for (int index = 0; index < width * height; index++) {
+            imagePixels[index] = FrameEncoder.composeOnWhite(pixels[index]);
+        }
+        Path file = this.directory.resolve(String.format("%s-%05d.png", this.prefix, this.frameNumber++));
+        if (!ImageIO.write(this.image, "png", file.toFile())) {
+            throw new IOException("No writer for PNG images available.");
+        }
+    }
+
+    @Override
+    public void close() {
+        // every frame is a file of its own
+    }
+
+}
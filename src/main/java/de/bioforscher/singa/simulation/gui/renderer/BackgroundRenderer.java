@@ -0,0 +1,190 @@
+package de.bioforscher.singa.simulation.gui.renderer;
+
+import de.bioforscher.singa.simulation.gui.metrics.MetricsRegistry;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Rasterizes whole frames with a {@link FrameRasterizer} on a background thread, such that the JavaFX Application Thread
+ * only has to transfer the finished frame to the canvas. Requests and finished frames are both handed over through
+ * single slots, where newer entries replace older ones. Two frame buffers are used: while one is waiting to be drawn
+ * (or is being drawn), the next frame is rasterized into the other. The {@link BioGraphRenderer} draws large graphs
+ * through a background renderer, unless background rendering is disabled in the {@link BioGraphRenderOptions}.
+ *
+ * @author cl
+ */
+public class BackgroundRenderer {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackgroundRenderer.class);
+
+    private static final PixelFormat<IntBuffer> PIXEL_FORMAT = PixelFormat.getIntArgbPreInstance();
+
+    private final AtomicReference<FrameRequest> pendingRequest;
+    private final AtomicReference<Frame> readyFrame;
+    private final BlockingQueue<Frame> freeFrames;
+    private final FrameRasterizer rasterizer;
+    private volatile MetricsRegistry metrics;
+    private volatile boolean running;
+    private Thread worker;
+
+    // only accessed by the JavaFX Application Thread
+    private WritableImage image;
+
+    public BackgroundRenderer() {
+        this.pendingRequest = new AtomicReference<>();
+        this.readyFrame = new AtomicReference<>();
+        this.freeFrames = new ArrayBlockingQueue<>(2);
+        this.freeFrames.add(new Frame());
+        this.freeFrames.add(new Frame());
+        this.rasterizer = new FrameRasterizer();
+        this.running = true;
+    }
+
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Requests a frame to be rasterized. A request that has not been started yet is replaced. The renderer takes over
+     * the reference to the snapshot.
+     *
+     * @param request The request.
+     */
+    public void submit(FrameRequest request) {
+        if (!this.running) {
+            request.release();
+            return;
+        }
+        FrameRequest replaced = this.pendingRequest.getAndSet(request);
+        if (replaced != null) {
+            replaced.release();
+        }
+        synchronized (this) {
+            if (this.worker == null) {
+                this.worker = new Thread(this::work, "background-renderer");
+                this.worker.setDaemon(true);
+                this.worker.start();
+            }
+        }
+        LockSupport.unpark(this.worker);
+    }
+
+    /**
+     * Draws the latest finished frame, if there is one. Must be called by the JavaFX Application Thread.
+     *
+     * @param graphicsContext The graphics context.
+     * @return True, if a frame has been drawn.
+     */
+    public boolean drawReadyFrame(GraphicsContext graphicsContext) {
+        Frame frame = this.readyFrame.getAndSet(null);
+        if (frame == null) {
+            return false;
+        }
+        if (this.image == null || (int) this.image.getWidth() != frame.width ||
+                (int) this.image.getHeight() != frame.height) {
+            this.image = new WritableImage(frame.width, frame.height);
+        }
+        this.image.getPixelWriter().setPixels(0, 0, frame.width, frame.height, PIXEL_FORMAT, frame.pixels, 0,
+                frame.width);
+        graphicsContext.clearRect(0, 0, graphicsContext.getCanvas().getWidth(), graphicsContext.getCanvas().getHeight());
+        graphicsContext.drawImage(this.image, 0, 0);
+        MetricsRegistry metrics = this.metrics;
+        if (metrics != null && frame.captureNanos != 0) {
+            metrics.record(BioGraphRenderer.FRAME_LATENCY, System.nanoTime() - frame.captureNanos);
+        }
+        this.freeFrames.offer(frame);
+        return true;
+    }
+
+    /**
+     * Discards requested and finished frames, e.g. because the graph is drawn on the JavaFX Application Thread again.
+     */
+    public void discard() {
+        FrameRequest request = this.pendingRequest.getAndSet(null);
+        if (request != null) {
+            request.release();
+        }
+        Frame frame = this.readyFrame.getAndSet(null);
+        if (frame != null) {
+            this.freeFrames.offer(frame);
+        }
+    }
+
+    /**
+     * Stops the background thread.
+     */
+    public void shutdown() {
+        this.running = false;
+        discard();
+        synchronized (this) {
+            if (this.worker != null) {
+                this.worker.interrupt();
+            }
+        }
+    }
+
+    private void work() {
+        while (this.running) {
+            FrameRequest request = this.pendingRequest.getAndSet(null);
+            if (request == null) {
+                LockSupport.park(this);
+                continue;
+            }
+            Frame frame;
+            try {
+                // one of the two buffers is always free, unless a frame is transferred to the canvas right now
+                frame = this.freeFrames.take();
+            } catch (InterruptedException e) {
+                request.release();
+                return;
+            }
+            try {
+                long frameStart = System.nanoTime();
+                NodeRaster raster = this.rasterizer.rasterize(request);
+                // hand over the rasterized buffer
+                int pixelCount = raster.getWidth() * raster.getHeight();
+                if (frame.pixels == null || frame.pixels.length != pixelCount) {
+                    frame.pixels = new int[pixelCount];
+                }
+                frame.pixels = raster.swapPixels(frame.pixels);
+                frame.width = raster.getWidth();
+                frame.height = raster.getHeight();
+                frame.captureNanos = request.getSnapshot() != null ? request.getSnapshot().getCaptureNanos() : 0;
+                MetricsRegistry metrics = this.metrics;
+                if (metrics != null) {
+                    metrics.record(BioGraphRenderer.FRAME_DURATION, System.nanoTime() - frameStart);
+                }
+            } catch (RuntimeException e) {
+                // the graph may have been edited while it was drawn
+                logger.warn("Could not rasterize frame.", e);
+                request.release();
+                this.freeFrames.offer(frame);
+                continue;
+            }
+            request.release();
+            Frame replaced = this.readyFrame.getAndSet(frame);
+            if (replaced != null) {
+                this.freeFrames.offer(replaced);
+            }
+        }
+    }
+
+    private static class Frame {
+
+        private int[] pixels;
+        private int width;
+        private int height;
+        private long captureNanos;
+
+    }
+
+}
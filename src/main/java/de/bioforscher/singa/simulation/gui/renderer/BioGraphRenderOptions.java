@@ -2,22 +2,64 @@ package de.bioforscher.singa.simulation.gui.renderer;
 
 import de.bioforscher.singa.chemistry.descriptive.entities.ChemicalEntity;
 import de.bioforscher.singa.javafx.renderer.colors.ColorScale;
+import de.bioforscher.singa.simulation.gui.snapshots.SimulationSnapshot;
+import de.bioforscher.singa.simulation.model.compartments.NodeState;
 import de.bioforscher.singa.simulation.model.graphs.AutomatonEdge;
 import de.bioforscher.singa.simulation.model.graphs.AutomatonNode;
 import javafx.scene.paint.Color;
 
+/**
+ * The options used to draw an {@link de.bioforscher.singa.simulation.model.graphs.AutomatonGraph}. Concentrations are
+ * normalized to the current concentration range, either linearly or logarithmically, and mapped to the colors of a
+ * {@link ColorLookupTable} sampled from the node color scale. The options are changed by the JavaFX Application
+ * Thread, other threads only read an immutable {@link NodeColoring} captured from them.
+ *
+ * @author cl
+ */
 public class BioGraphRenderOptions {
 
+    /**
+     * The fraction of the current range the observed range has to fall below, before the range is narrowed.
+     */
+    private static final double NARROWING_FRACTION = 0.5;
+
+    /**
+     * The number of nodes from which on the {@link RenderingBackend#AUTOMATIC automatic} backend rasterizes nodes.
+     */
+    public static final int DEFAULT_RASTER_THRESHOLD = 50000;
+
     private ChemicalEntity nodeHighlightEntity;
     private ChemicalEntity edgeHighlightEntity;
 
     private RenderingMode renderingMode;
     private ColorScale nodeColorScale;
+    private ColorLookupTable nodeColors;
+
+    private ConcentrationScaling concentrationScaling;
+    private boolean automaticRange;
+    private double minimalConcentration;
+    private double maximalConcentration;
+
+    private RenderingBackend renderingBackend;
+    private int rasterThreshold;
+    private boolean backgroundRendering;
+    private boolean interpolated;
+    private NodeStyle nodeStyle;
+    private NodeColoring coloring;
 
     public BioGraphRenderOptions() {
-        // todo render depending on maximal value in any node
         this.nodeColorScale = new ColorScale.Builder(0, 1).build();
+        this.nodeColors = new ColorLookupTable(this.nodeColorScale, ColorLookupTable.DEFAULT_SIZE);
         this.renderingMode = RenderingMode.STATE_BASED;
+        this.concentrationScaling = ConcentrationScaling.LINEAR;
+        this.automaticRange = true;
+        this.minimalConcentration = 0.0;
+        this.maximalConcentration = 1.0;
+        this.renderingBackend = RenderingBackend.AUTOMATIC;
+        this.rasterThreshold = DEFAULT_RASTER_THRESHOLD;
+        this.backgroundRendering = true;
+        this.interpolated = true;
+        this.nodeStyle = NodeStyle.POINTS;
     }
 
     public RenderingMode getRenderingMode() {
@@ -26,14 +68,202 @@ public class BioGraphRenderOptions {
 
     public void setRenderingMode(RenderingMode renderingMode) {
         this.renderingMode = renderingMode;
+        this.coloring = null;
+    }
+
+    public NodeStyle getNodeStyle() {
+        return this.nodeStyle;
+    }
+
+    public void setNodeStyle(NodeStyle nodeStyle) {
+        this.nodeStyle = nodeStyle;
+    }
+
+    public RenderingBackend getRenderingBackend() {
+        return this.renderingBackend;
+    }
+
+    public void setRenderingBackend(RenderingBackend renderingBackend) {
+        this.renderingBackend = renderingBackend;
+    }
+
+    public int getRasterThreshold() {
+        return this.rasterThreshold;
+    }
+
+    public void setRasterThreshold(int rasterThreshold) {
+        this.rasterThreshold = rasterThreshold;
+    }
+
+    public boolean isBackgroundRendering() {
+        return this.backgroundRendering;
+    }
+
+    /**
+     * Determines whether rasterized frames are drawn on a background thread, such that the JavaFX Application Thread
+     * only transfers finished frames to the canvas.
+     *
+     * @param backgroundRendering True, if rasterized frames should be drawn in the background.
+     */
+    public void setBackgroundRendering(boolean backgroundRendering) {
+        this.backgroundRendering = backgroundRendering;
+    }
+
+    public boolean isInterpolated() {
+        return this.interpolated;
+    }
+
+    /**
+     * Determines whether the concentrations are interpolated between the last two emitted snapshots with every frame,
+     * such that the graph is animated smoothly even if snapshots are emitted rarely.
+     *
+     * @param interpolated True, if concentrations should be interpolated.
+     */
+    public void setInterpolated(boolean interpolated) {
+        this.interpolated = interpolated;
+    }
+
+    /**
+     * Determines whether nodes of a graph with the given number of nodes are rasterized.
+     *
+     * @param nodeCount The number of nodes.
+     * @return True, if nodes should be rasterized.
+     */
+    public boolean isRasterized(int nodeCount) {
+        return this.renderingBackend == RenderingBackend.RASTER ||
+                (this.renderingBackend == RenderingBackend.AUTOMATIC && nodeCount >= this.rasterThreshold);
     }
 
     public ColorScale getNodeColorScale() {
         return this.nodeColorScale;
     }
 
+    /**
+     * Sets the color scale concentrations are shown with. The scale has to span the values from 0 to 1, it is sampled
+     * into a {@link ColorLookupTable} of the default size.
+     *
+     * @param nodeColorScale The color scale.
+     */
     public void setNodeColorScale(ColorScale nodeColorScale) {
         this.nodeColorScale = nodeColorScale;
+        this.nodeColors = new ColorLookupTable(nodeColorScale, ColorLookupTable.DEFAULT_SIZE);
+        this.coloring = null;
+    }
+
+    public ColorLookupTable getNodeColors() {
+        return this.nodeColors;
+    }
+
+    public ConcentrationScaling getConcentrationScaling() {
+        return this.concentrationScaling;
+    }
+
+    public void setConcentrationScaling(ConcentrationScaling concentrationScaling) {
+        this.concentrationScaling = concentrationScaling;
+        this.coloring = null;
+    }
+
+    public boolean isAutomaticRange() {
+        return this.automaticRange;
+    }
+
+    /**
+     * Determines whether the concentration range follows the concentrations of the displayed entity.
+     *
+     * @param automaticRange True, if the range should be adjusted automatically.
+     */
+    public void setAutomaticRange(boolean automaticRange) {
+        this.automaticRange = automaticRange;
+        this.coloring = null;
+    }
+
+    public double getMinimalConcentration() {
+        return this.minimalConcentration;
+    }
+
+    public double getMaximalConcentration() {
+        return this.maximalConcentration;
+    }
+
+    /**
+     * Sets the concentrations mapped to the first and the last color.
+     *
+     * @param minimalConcentration The lower bound.
+     * @param maximalConcentration The upper bound.
+     */
+    public void setConcentrationRange(double minimalConcentration, double maximalConcentration) {
+        if (!(maximalConcentration > minimalConcentration)) {
+            throw new IllegalArgumentException("The upper bound of the range has to be larger than the lower bound.");
+        }
+        this.minimalConcentration = minimalConcentration;
+        this.maximalConcentration = maximalConcentration;
+        this.coloring = null;
+    }
+
+    /**
+     * Adjusts the concentration range to the observed concentrations, if the automatic range is enabled. The range is
+     * widened as soon as a concentration falls outside of it, but only narrowed if the observed range covers less than
+     * half of it, such that small fluctuations do not recolor the whole graph.
+     *
+     * @param minimum The smallest observed concentration.
+     * @param maximum The largest observed concentration.
+     * @param minimalPositive The smallest observed concentration larger than zero.
+     * @return True, if the range has been changed.
+     */
+    public boolean adjustConcentrationRange(double minimum, double maximum, double minimalPositive) {
+        if (!this.automaticRange) {
+            return false;
+        }
+        if (this.concentrationScaling == ConcentrationScaling.LOGARITHMIC) {
+            // the lower bound of a logarithmic scale has to be positive
+            minimum = minimum > 0 ? minimum : minimalPositive;
+        }
+        if (!(maximum > minimum) || Double.isInfinite(minimum) || Double.isInfinite(maximum)) {
+            // nothing to spread colors over
+            return false;
+        }
+        boolean widened = minimum < this.minimalConcentration || maximum > this.maximalConcentration;
+        boolean narrowed = scale(maximum) - scale(minimum) <
+                (scale(this.maximalConcentration) - scale(lowerBound())) * NARROWING_FRACTION;
+        if (widened || narrowed) {
+            this.minimalConcentration = minimum;
+            this.maximalConcentration = maximum;
+            this.coloring = null;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the index of the color in {@link #getNodeColors()} the given concentration is shown with.
+     *
+     * @param concentration The concentration.
+     * @return The index.
+     */
+    public int getColorIndex(double concentration) {
+        return getColoring().getColorIndex(concentration);
+    }
+
+    /**
+     * Returns an immutable copy of the current coloring. The copy is cached until the options are changed, such that
+     * capturing it for every frame is cheap.
+     *
+     * @return The coloring.
+     */
+    public NodeColoring getColoring() {
+        if (this.coloring == null) {
+            this.coloring = new NodeColoring(this.renderingMode, this.nodeHighlightEntity, this.concentrationScaling,
+                    this.automaticRange, this.minimalConcentration, this.maximalConcentration, this.nodeColors);
+        }
+        return this.coloring;
+    }
+
+    private double lowerBound() {
+        return NodeColoring.lowerBound(this.concentrationScaling, this.minimalConcentration, this.maximalConcentration);
+    }
+
+    private double scale(double concentration) {
+        return NodeColoring.scale(this.concentrationScaling, concentration);
     }
 
     public ChemicalEntity getNodeHighlightEntity() {
@@ -42,6 +272,7 @@ public class BioGraphRenderOptions {
 
     public void setNodeHighlightEntity(ChemicalEntity species) {
         this.nodeHighlightEntity = species;
+        this.coloring = null;
     }
 
     public ChemicalEntity getEdgeHighlightEntity() {
@@ -55,14 +286,130 @@ public class BioGraphRenderOptions {
     public Color getNodeColor(AutomatonNode node) {
         if (this.nodeHighlightEntity != null) {
             double concentration = node.getConcentration(this.nodeHighlightEntity).getValue().doubleValue();
-            return this.nodeColorScale.getColor(concentration);
+            return getNodeColor(concentration);
         } else {
             return Color.GRAY;
         }
     }
 
+    public Color getNodeColor(double concentration) {
+        return this.nodeColors.getColor(getColorIndex(concentration));
+    }
+
+    public Color getNodeColor(int colorIndex) {
+        return this.nodeColors.getColor(colorIndex);
+    }
+
+    /**
+     * Returns the color the node is filled with in the current rendering mode. Concentrations, states and sections are
+     * read from the snapshot, if it contains the node. The color is the same, regardless of whether the node is drawn
+     * as a vector shape or rasterized, and regardless of the thread it is drawn on.
+     *
+     * @param node The node.
+     * @param snapshot The snapshot concentrations are read from, may be null.
+     * @return The color.
+     */
+    public Color getNodeFill(AutomatonNode node, SimulationSnapshot snapshot) {
+        switch (this.renderingMode) {
+            case ENTITY_BASED: {
+                ChemicalEntity<?> entity = this.nodeHighlightEntity;
+                if (entity != null) {
+                    return getNodeColor(getColorIndex(getConcentration(node, entity, snapshot)));
+                }
+                return getNodeColor(node);
+            }
+            case COMPARTMENT_BASED: {
+                int row = snapshot != null ? snapshot.getRow(node.getIdentifier()) : SimulationSnapshot.UNKNOWN_ROW;
+                if (row != SimulationSnapshot.UNKNOWN_ROW) {
+                    return getSectionColor(snapshot.getSectionIdentifier(snapshot.getSectionIndex(row)));
+                }
+                return getSectionColor(node.getCellSection().getIdentifier());
+            }
+            default: {
+                int row = snapshot != null ? snapshot.getRow(node.getIdentifier()) : SimulationSnapshot.UNKNOWN_ROW;
+                if (row != SimulationSnapshot.UNKNOWN_ROW) {
+                    return getStateColor(NodeState.values()[snapshot.getStateOrdinal(row)]);
+                }
+                return getStateColor(node.getState());
+            }
+        }
+    }
+
+    /**
+     * Returns the color the node in the given row is filled with in the current rendering mode. Other than
+     * {@link #getNodeFill(AutomatonNode, SimulationSnapshot)}, states and compartments are read from the precomputed
+     * attributes, only concentrations are read per frame.
+     *
+     * @param attributes The attributes of the nodes.
+     * @param row The row of the node.
+     * @param snapshot The snapshot concentrations are read from, may be null.
+     * @return The color.
+     */
+    public Color getNodeFill(NodeAttributes attributes, int row, SimulationSnapshot snapshot) {
+        NodeColoring coloring = getColoring();
+        return coloring.getNodeFill(attributes, row, snapshot, coloring.getConcentrations(snapshot));
+    }
+
+    /**
+     * Returns the color of nodes in the given state.
+     *
+     * @param state The state.
+     * @return The color.
+     */
+    public static Color getStateColor(NodeState state) {
+        switch (state) {
+            case AQUEOUS: {
+                return Color.CADETBLUE;
+            }
+            case CYTOSOL: {
+                return Color.CORAL;
+            }
+            case MEMBRANE: {
+                return Color.BURLYWOOD;
+            }
+            default: {
+                return Color.LIGHTGRAY;
+            }
+        }
+    }
+
+    /**
+     * Returns the color of nodes in the cell section with the given identifier, as assigned by the
+     * {@link ColorManager}.
+     *
+     * @param sectionIdentifier The identifier of the section.
+     * @return The color.
+     */
+    public static Color getSectionColor(String sectionIdentifier) {
+        if (sectionIdentifier.equals("default")) {
+            return Color.LIGHTGRAY;
+        }
+        Color sectionColor = ColorManager.getInstance().getSectionColor(sectionIdentifier);
+        return sectionColor != null ? sectionColor : Color.LIGHTGRAY;
+    }
+
+    /**
+     * Returns the concentration of the entity in the node, as stored in the snapshot if it contains the node and the
+     * entity, otherwise as currently stored in the node.
+     *
+     * @param node The node.
+     * @param entity The entity.
+     * @param snapshot The snapshot, may be null.
+     * @return The concentration.
+     */
+    public static double getConcentration(AutomatonNode node, ChemicalEntity<?> entity, SimulationSnapshot snapshot) {
+        if (snapshot != null) {
+            int row = snapshot.getRow(node.getIdentifier());
+            int entityIndex = snapshot.getEntityIndex(entity);
+            if (row != SimulationSnapshot.UNKNOWN_ROW && entityIndex >= 0) {
+                return snapshot.getConcentration(entityIndex, row);
+            }
+        }
+        return node.getConcentration(entity).getValue().doubleValue();
+    }
+
     public Color getEdgeColor(AutomatonEdge edge) {
-        return Color.LIGHTGREY;
+        return getColoring().getEdgeColor(edge);
     }
 
 }
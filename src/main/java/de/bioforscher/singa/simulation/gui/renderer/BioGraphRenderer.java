@@ -4,68 +4,1052 @@ import de.bioforscher.singa.core.events.UpdateEventListener;
 import de.bioforscher.singa.javafx.renderer.graphs.GraphRenderOptions;
 import de.bioforscher.singa.javafx.renderer.graphs.GraphRenderer;
 import de.bioforscher.singa.mathematics.geometry.edges.LineSegment;
-import de.bioforscher.singa.simulation.events.GraphUpdatedEvent;
+import de.bioforscher.singa.mathematics.vectors.Vector2D;
+import de.bioforscher.singa.chemistry.descriptive.entities.ChemicalEntity;
+import de.bioforscher.singa.simulation.gui.layout.GraphArrangement;
+import de.bioforscher.singa.simulation.gui.metrics.MetricsRegistry;
+import de.bioforscher.singa.simulation.gui.recording.FrameRecorder;
+import de.bioforscher.singa.simulation.gui.snapshots.SimulationSnapshot;
+import de.bioforscher.singa.simulation.gui.spatial.NodeIndex;
 import de.bioforscher.singa.simulation.model.graphs.AutomatonEdge;
 import de.bioforscher.singa.simulation.model.graphs.AutomatonGraph;
 import de.bioforscher.singa.simulation.model.graphs.AutomatonNode;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
 import static de.bioforscher.singa.simulation.model.compartments.NodeState.MEMBRANE;
 
+/**
+ * Draws an {@link AutomatonGraph} with the concentrations of {@link SimulationSnapshot}s, seen through a
+ * {@link Camera}. Between two frames only nodes whose displayed color changed are repainted, the whole graph is only
+ * repainted if the graph, the view, the size of the canvas or the rendering options changed.
+ *
+ * @author cl
+ */
 public class BioGraphRenderer extends GraphRenderer<AutomatonNode, AutomatonEdge, Integer, AutomatonGraph> implements
-        UpdateEventListener<GraphUpdatedEvent> {
+        UpdateEventListener<SimulationSnapshot> {
 
     private BioGraphRenderOptions bioRenderingOptions;
+    private Runnable frameConsumedHandler;
+
+    private final AtomicReference<SimulationSnapshot> mailbox;
+    private SimulationSnapshot currentSnapshot;
+    private SimulationSnapshot previousSnapshot;
+    private SimulationSnapshot latestSnapshot;
+    private long lastReceivedNanos;
+    private long transitionStartNanos;
+    private long transitionNanos;
+    private volatile boolean liveUpdates = true;
+    private MetricsRegistry metrics;
+
+    public static final String FRAME_LATENCY = "renderer.frame.latency.nanos";
+    public static final String FRAME_DURATION = "renderer.frame.nanos";
+    public static final String FULL_REPAINTS = "renderer.repaints.full";
+    public static final String INCREMENTAL_REPAINTS = "renderer.repaints.incremental";
+    public static final String REPAINTED_NODES = "renderer.nodes.repainted";
+    public static final String COALESCED_FRAMES = "renderer.frames.coalesced";
+    public static final String DROPPED_FRAMES = "renderer.frames.dropped";
+    public static final String INTERPOLATED_FRAMES = "renderer.frames.interpolated";
+
+    /**
+     * The fraction of nodes that may change before the whole graph is repainted instead.
+     */
+    private static final double MAXIMAL_DIRTY_FRACTION = 0.25;
+
+    /**
+     * The diameter of nodes on the canvas, below which edges are not drawn.
+     */
+    static final double MINIMAL_EDGE_NODE_DIAMETER = 2.0;
+
+    /**
+     * The diameter of nodes on the canvas, below which nodes are aggregated into density tiles.
+     */
+    static final double MINIMAL_NODE_DIAMETER = 1.0;
+
+    /**
+     * The edge length of density tiles in pixels.
+     */
+    static final int TILE_SIZE = 4;
+
+    /**
+     * The number of nodes in a density tile, from which on the tile is opaque.
+     */
+    static final int TILE_SATURATION = 4;
+
+    /**
+     * The largest distance of a pixel to the node of its cell, relative to the mean length of the edges.
+     */
+    static final double CELL_RADIUS_FRACTION = 0.75;
+
+    /**
+     * The number of iterations of the force-directed layout.
+     */
+    private static final int LAYOUT_ITERATIONS = 300;
+
+    /**
+     * The longest time the transition between two received snapshots takes.
+     */
+    private static final long MAXIMAL_TRANSITION_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private GraphGeometry geometry;
+    private NodeIndex nodeIndex;
+    private int[] displayedKeys;
+    private int[] currentKeys;
+    private int[] dirtyRows;
+    private int[] nodeMarks;
+    private int[] edgeMarks;
+    private int mark;
+    private boolean repaintRequired = true;
+    private final NodeRaster nodeRaster = new NodeRaster();
+    private boolean rasterized;
+    private final BackgroundRenderer backgroundRenderer;
+    private boolean backgroundActive;
+    private CellMap cellMap;
+    private CellMap exactCellMap;
+    private final CellMapBuilder cellMapBuilder;
+    private NodeAttributes nodeAttributes;
+    // resolved once per frame
+    private NodeColoring coloring;
+    private double[] highlightedConcentrations;
+    private GraphArrangement arrangement;
+    private volatile FrameRecorder frameRecorder;
+    private WritableImage recordedImage;
+    private int[] cellColors;
+    private final Camera camera = new Camera();
+    private boolean edgesVisible;
+    private boolean tiled;
+    private double paintedScale;
+    private double paintedTranslateX;
+    private double paintedTranslateY;
+    private double paintedWidth;
+    private double paintedHeight;
+    private RenderingMode paintedRenderingMode;
+    private NodeStyle paintedNodeStyle;
+    private ChemicalEntity<?> paintedNodeEntity;
+    private ChemicalEntity<?> paintedEdgeEntity;
+    private double paintedNodeDiameter;
+    private double paintedEdgeThickness;
 
     public BioGraphRenderer() {
         GraphRenderOptions options = new GraphRenderOptions();
         this.setRenderingOptions(options);
         this.bioRenderingOptions = new BioGraphRenderOptions();
-        // renderVoronoi(true);
+        this.mailbox = new AtomicReference<>();
+        this.backgroundRenderer = new BackgroundRenderer();
+        this.cellMapBuilder = new CellMapBuilder();
     }
 
     public BioGraphRenderOptions getBioRenderingOptions() {
         return this.bioRenderingOptions;
     }
 
+    /**
+     * Returns the camera the graph is seen through. The graph is repainted with the next frame after the camera has
+     * been moved.
+     *
+     * @return The camera.
+     */
+    public Camera getCamera() {
+        return this.camera;
+    }
+
+    /**
+     * Sets the handler that is notified every time a received snapshot has been drawn, replaced by a newer one or
+     * dropped.
+     *
+     * @param frameConsumedHandler The handler.
+     */
+    public void setFrameConsumedHandler(Runnable frameConsumedHandler) {
+        this.frameConsumedHandler = frameConsumedHandler;
+    }
+
+    /**
+     * Sets the snapshot concentrations are read from, when the graph is rendered the next time. The renderer takes
+     * over the reference of the caller and releases the snapshot that was displayed before. A running transition
+     * between received snapshots is ended.
+     *
+     * @param snapshot The snapshot.
+     */
+    public void display(SimulationSnapshot snapshot) {
+        clearTransition();
+        showSnapshot(snapshot);
+    }
+
+    private void showSnapshot(SimulationSnapshot snapshot) {
+        if (this.currentSnapshot != null) {
+            this.currentSnapshot.release();
+        }
+        this.currentSnapshot = snapshot;
+    }
+
+    /**
+     * Displays a received snapshot. If concentrations are interpolated, the transition starts at the concentrations
+     * that are displayed right now and reaches the received snapshot after the time that passed since the previous
+     * snapshot has been received, i.e. just before the next snapshot is expected. Every pulse then draws a snapshot
+     * between both, such that the graph is animated smoothly even if snapshots are only emitted a few times per second.
+     */
+    private void receive(SimulationSnapshot snapshot, long now) {
+        long interval = Math.min(now - this.lastReceivedNanos, MAXIMAL_TRANSITION_NANOS);
+        this.lastReceivedNanos = now;
+        if (!isInterpolated(snapshot)) {
+            display(snapshot);
+            return;
+        }
+        SimulationSnapshot displayedSnapshot = this.currentSnapshot.retain();
+        clearTransition();
+        this.previousSnapshot = displayedSnapshot;
+        this.latestSnapshot = snapshot;
+        this.transitionStartNanos = now;
+        this.transitionNanos = interval;
+        updateTransition(now);
+    }
+
+    /**
+     * Determines whether the transition to the given snapshot is interpolated. Only the concentrations of the
+     * highlighted entity are interpolated and only between snapshots of the same graph. While frames are recorded,
+     * snapshots are displayed as they are received, such that every recorded frame shows a captured state.
+     */
+    private boolean isInterpolated(SimulationSnapshot snapshot) {
+        return this.bioRenderingOptions.isInterpolated() && this.frameRecorder == null &&
+                this.bioRenderingOptions.getRenderingMode() == RenderingMode.ENTITY_BASED &&
+                this.bioRenderingOptions.getNodeHighlightEntity() != null && this.currentSnapshot != null &&
+                this.currentSnapshot.getGraph() == snapshot.getGraph();
+    }
+
+    /**
+     * Displays the snapshot between the last two received snapshots, that corresponds to the given time.
+     */
+    private void updateTransition(long now) {
+        ChemicalEntity<?> entity = this.bioRenderingOptions.getNodeHighlightEntity();
+        double fraction = this.transitionNanos > 0 ? (now - this.transitionStartNanos) / (double) this.transitionNanos :
+                1.0;
+        if (fraction >= 1.0 || !isInterpolated(this.latestSnapshot)) {
+            finishTransition();
+            return;
+        }
+        showSnapshot(SimulationSnapshot.interpolate(this.previousSnapshot, this.latestSnapshot, Math.max(fraction, 0.0),
+                Collections.singletonList(entity)));
+    }
+
+    /**
+     * Displays the latest received snapshot, if a transition is running.
+     */
+    private void finishTransition() {
+        if (this.latestSnapshot == null) {
+            return;
+        }
+        SimulationSnapshot latestSnapshot = this.latestSnapshot;
+        this.latestSnapshot = null;
+        clearTransition();
+        showSnapshot(latestSnapshot);
+    }
+
+    private void clearTransition() {
+        if (this.previousSnapshot != null) {
+            this.previousSnapshot.release();
+            this.previousSnapshot = null;
+        }
+        if (this.latestSnapshot != null) {
+            this.latestSnapshot.release();
+            this.latestSnapshot = null;
+        }
+    }
+
+    /**
+     * Sets the registry the latency between the capture and the drawing of every snapshot and the duration of drawing
+     * it are recorded in.
+     *
+     * @param metrics The registry.
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+        this.backgroundRenderer.setMetrics(metrics);
+    }
+
+    /**
+     * Returns whether a snapshot has been received but not yet drawn. Only the latest snapshot is kept, so there is
+     * never more than one.
+     *
+     * @return True, if a snapshot is waiting.
+     */
+    public boolean isFramePending() {
+        return this.mailbox.get() != null;
+    }
+
+    public boolean isLiveUpdates() {
+        return this.liveUpdates;
+    }
+
+    /**
+     * Determines whether snapshots emitted by the simulation are displayed. While live updates are disabled (e.g. to
+     * display recorded frames), emitted snapshots are acknowledged without being drawn.
+     *
+     * @param liveUpdates True, if emitted snapshots should be displayed.
+     */
+    public void setLiveUpdates(boolean liveUpdates) {
+        this.liveUpdates = liveUpdates;
+        if (!liveUpdates) {
+            dropPendingFrame();
+            finishTransition();
+        }
+    }
+
+    private void dropPendingFrame() {
+        SimulationSnapshot snapshot = this.mailbox.getAndSet(null);
+        if (snapshot != null) {
+            snapshot.release();
+            acknowledgeFrame(DROPPED_FRAMES);
+        }
+    }
+
+    private void acknowledgeFrame(String counter) {
+        if (this.metrics != null) {
+            this.metrics.increment(counter);
+        }
+        if (this.frameConsumedHandler != null) {
+            this.frameConsumedHandler.run();
+        }
+    }
+
+    /**
+     * Sets the recorder the drawn frames are passed to. Every frame that shows a new snapshot is counted, the canvas is
+     * only captured if the recorder is due.
+     *
+     * @param frameRecorder The recorder, or null to stop passing frames.
+     */
+    public void setFrameRecorder(FrameRecorder frameRecorder) {
+        this.frameRecorder = frameRecorder;
+    }
+
+    private void recordFrame() {
+        FrameRecorder frameRecorder = this.frameRecorder;
+        if (frameRecorder == null || !frameRecorder.isDue()) {
+            return;
+        }
+        GraphicsContext graphicsContext = getGraphicsContext();
+        int width = (int) graphicsContext.getCanvas().getWidth();
+        int height = (int) graphicsContext.getCanvas().getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (this.recordedImage == null || (int) this.recordedImage.getWidth() != width ||
+                (int) this.recordedImage.getHeight() != height) {
+            this.recordedImage = new WritableImage(width, height);
+        }
+        graphicsContext.getCanvas().snapshot(new SnapshotParameters(), this.recordedImage);
+        int[] pixels = new int[width * height];
+        this.recordedImage.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbPreInstance(),
+                pixels, 0, width);
+        frameRecorder.recordPixels(pixels, width, height);
+    }
+
+    /**
+     * Returns the latest snapshot that has been received or displayed. During a transition, this is the snapshot the
+     * transition leads to, rather than the interpolated snapshot that is drawn.
+     *
+     * @return The snapshot.
+     */
+    public SimulationSnapshot getCurrentSnapshot() {
+        return this.latestSnapshot != null ? this.latestSnapshot : this.currentSnapshot;
+    }
+
+    /**
+     * Stops the thread rasterized frames are drawn on.
+     */
+    public void shutdown() {
+        if (this.arrangement != null) {
+            this.arrangement.cancel();
+        }
+        this.backgroundRenderer.shutdown();
+        this.cellMapBuilder.shutdown();
+    }
+
     @Override
-    protected void drawNode(AutomatonNode node) {
-        // decide on style
-        switch (this.bioRenderingOptions.getRenderingMode()) {
+    public void handle(long now) {
+        if (this.backgroundActive && this.backgroundRenderer.drawReadyFrame(getGraphicsContext())) {
+            recordFrame();
+        }
+        if (this.arrangement != null) {
+            updateArrangement();
+        }
+        if (this.cellMapBuilder.hasBuiltMap()) {
+            if (isCellStyle() && this.geometry != null) {
+                // replace the resampled cells by the computed ones
+                this.repaintRequired = true;
+                render(this.geometry.getGraph());
+            } else {
+                this.cellMapBuilder.takeBuiltMap();
+            }
+        }
+        if (!this.liveUpdates) {
+            // a snapshot may have arrived while live updates have been disabled
+            dropPendingFrame();
+            return;
+        }
+        SimulationSnapshot snapshot = this.mailbox.getAndSet(null);
+        if (snapshot != null) {
+            long frameStart = System.nanoTime();
+            receive(snapshot, now);
+            render(snapshot.getGraph());
+            // frames drawn in the background are measured by the background renderer
+            if (!this.backgroundActive) {
+                if (this.metrics != null) {
+                    this.metrics.record(FRAME_LATENCY, frameStart - snapshot.getCaptureNanos());
+                    this.metrics.record(FRAME_DURATION, System.nanoTime() - frameStart);
+                }
+                recordFrame();
+            }
+            if (this.frameConsumedHandler != null) {
+                this.frameConsumedHandler.run();
+            }
+        } else if (this.latestSnapshot != null) {
+            // between two received snapshots
+            updateTransition(now);
+            render(this.currentSnapshot.getGraph());
+            if (this.metrics != null) {
+                this.metrics.increment(INTERPOLATED_FRAMES);
+            }
+        }
+    }
+
+    /**
+     * Arranges the given graph with a force-directed layout on a background thread, using all available processors.
+     * See {@link #arrangeGraph(AutomatonGraph, int)}.
+     *
+     * @param graph The graph.
+     */
+    @Override
+    public void arrangeGraph(AutomatonGraph graph) {
+        arrangeGraph(graph, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Arranges the given graph with a force-directed layout on a background thread. Intermediate layouts are drawn
+     * while the layout is running, the nodes of the graph are only moved once it is finished. An arrangement that is
+     * still running is cancelled.
+     *
+     * @param graph The graph.
+     * @param threads The number of threads the forces are calculated on.
+     */
+    public void arrangeGraph(AutomatonGraph graph, int threads) {
+        cancelArrangement();
+        this.arrangement = new GraphArrangement(new GraphGeometry(graph), LAYOUT_ITERATIONS, threads);
+        this.arrangement.start();
+    }
+
+    /**
+     * Cancels the running arrangement, if there is one. The graph is drawn with its original positions again.
+     */
+    public void cancelArrangement() {
+        if (this.arrangement == null) {
+            return;
+        }
+        this.arrangement.cancel();
+        AutomatonGraph graph = this.arrangement.getGeometry().getGraph();
+        this.arrangement = null;
+        // drop the intermediate layout
+        invalidateGeometry();
+        render(graph);
+    }
+
+    public boolean isArranging() {
+        return this.arrangement != null;
+    }
+
+    /**
+     * Draws the latest intermediate layout or moves the nodes to the final positions, once the arrangement is finished.
+     */
+    private void updateArrangement() {
+        GraphGeometry preview = this.arrangement.pollPreview();
+        AutomatonGraph graph = this.arrangement.getGeometry().getGraph();
+        if (this.arrangement.isDone()) {
+            // failed or outdated layouts are not committed
+            this.arrangement.commit();
+            this.arrangement = null;
+            invalidateGeometry();
+            render(graph);
+        } else if (preview != null && preview.describes(graph)) {
+            this.geometry = preview;
+            this.repaintRequired = true;
+            render(graph);
+        }
+    }
+
+    /**
+     * Forces the whole graph to be repainted the next time it is rendered, e.g. after something has been drawn over
+     * the graph.
+     */
+    public void invalidate() {
+        this.repaintRequired = true;
+    }
+
+    /**
+     * Forces the cached geometry to be rebuilt and the whole graph to be repainted the next time it is rendered. This
+     * is required after nodes have been moved.
+     */
+    public void invalidateGeometry() {
+        this.geometry = null;
+        this.repaintRequired = true;
+    }
+
+    /**
+     * Forces the states and compartments of the nodes to be read again and the whole graph to be repainted the next
+     * time it is rendered. This is required after the state or the compartment of nodes has been changed.
+     */
+    public void invalidateNodeAttributes() {
+        this.nodeAttributes = null;
+        this.repaintRequired = true;
+    }
+
+    /**
+     * Rebuilds the attributes of the nodes, if they do not belong to the current geometry or section colors have been
+     * changed. The graph is repainted afterwards, since colors may have changed without changing any display key.
+     */
+    private void prepareNodeAttributes() {
+        if (this.nodeAttributes == null || !this.nodeAttributes.matches(this.geometry, this.currentSnapshot)) {
+            this.nodeAttributes = new NodeAttributes(this.geometry, this.currentSnapshot);
+            this.repaintRequired = true;
+        }
+    }
+
+    /**
+     * Captures the coloring of the options and resolves the concentrations of the highlighted entity in the current
+     * snapshot, such that nodes are colored without looking up the entity per node.
+     */
+    private void prepareNodeColors() {
+        this.coloring = this.bioRenderingOptions.getColoring();
+        this.highlightedConcentrations = this.coloring.getConcentrations(this.currentSnapshot);
+    }
+
+    /**
+     * Returns the spatial index over the nodes of the given graph. The index is built lazily for the current geometry
+     * and rebuilt together with it, i.e. if the graph changed or the layout moved nodes.
+     *
+     * @param graph The graph.
+     * @return The index.
+     */
+    public NodeIndex getNodeIndex(AutomatonGraph graph) {
+        if (this.geometry == null || !this.geometry.describes(graph)) {
+            this.geometry = new GraphGeometry(graph);
+            // nothing has been painted from this geometry yet
+            this.repaintRequired = true;
+        }
+        if (this.nodeIndex == null || this.nodeIndex.getGeometry() != this.geometry) {
+            this.nodeIndex = new NodeIndex(this.geometry);
+        }
+        return this.nodeIndex;
+    }
+
+    @Override
+    public void render(AutomatonGraph graph) {
+        adjustConcentrationRange();
+        if (isDrawnInBackground(graph)) {
+            submitFrame(graph);
+            return;
+        }
+        if (this.backgroundActive) {
+            // the canvas is drawn on this thread again
+            this.backgroundActive = false;
+            this.backgroundRenderer.discard();
+            this.repaintRequired = true;
+        }
+        if (this.geometry != null && this.geometry.describes(graph)) {
+            prepareNodeAttributes();
+            prepareNodeColors();
+        }
+        if (requiresFullRepaint(graph)) {
+            repaint(graph);
+            return;
+        }
+        int dirtyCount = collectDirtyRows();
+        if (dirtyCount == 0) {
+            return;
+        }
+        if (this.tiled || isCellStyle() || dirtyCount > this.geometry.getNodeCount() * MAXIMAL_DIRTY_FRACTION) {
+            repaint(graph);
+            return;
+        }
+        repaintRows(dirtyCount);
+    }
+
+    private boolean isDrawnInBackground(AutomatonGraph graph) {
+        // frames drawn on other threads only read the nodes from a snapshot
+        return this.bioRenderingOptions.isBackgroundRendering() && this.currentSnapshot != null && !isCellStyle() &&
+                (getRenderingOptions().getNodeDiameter() * this.camera.getScale() < MINIMAL_NODE_DIAMETER ||
+                        this.bioRenderingOptions.isRasterized(graph.getNodes().size()));
+    }
+
+    /**
+     * Hands the current state of the graph over to the background renderer. Only the positions, the view, the coloring
+     * and the snapshot are captured, the finished frame is drawn with one of the next pulses.
+     */
+    private void submitFrame(AutomatonGraph graph) {
+        NodeIndex nodeIndex = getNodeIndex(graph);
+        prepareNodeAttributes();
+        GraphicsContext graphicsContext = getGraphicsContext();
+        this.backgroundRenderer.submit(new FrameRequest(nodeIndex, this.nodeAttributes, this.currentSnapshot.retain(),
+                this.bioRenderingOptions.getColoring(), this.camera,
+                graphicsContext.getCanvas().getWidth(), graphicsContext.getCanvas().getHeight(),
+                getRenderingOptions().getNodeDiameter(), getRenderingOptions().getEdgeThickness()));
+        this.backgroundActive = true;
+        // whatever is drawn on this thread afterwards starts from scratch
+        this.repaintRequired = true;
+    }
+
+    /**
+     * Adjusts the concentration range of the rendering options to the range tracked while the current snapshot was
+     * taken. Nodes whose color changes with the range are repainted with the next frame.
+     */
+    private void adjustConcentrationRange() {
+        ChemicalEntity<?> entity = this.bioRenderingOptions.getNodeHighlightEntity();
+        if (this.bioRenderingOptions.getRenderingMode() != RenderingMode.ENTITY_BASED || entity == null ||
+                this.currentSnapshot == null) {
+            return;
+        }
+        int entityIndex = this.currentSnapshot.getEntityIndex(entity);
+        if (entityIndex >= 0) {
+            this.bioRenderingOptions.adjustConcentrationRange(this.currentSnapshot.getMinimalConcentration(entityIndex),
+                    this.currentSnapshot.getMaximalConcentration(entityIndex),
+                    this.currentSnapshot.getMinimalPositiveConcentration(entityIndex));
+        }
+    }
+
+    private boolean requiresFullRepaint(AutomatonGraph graph) {
+        GraphicsContext graphicsContext = getGraphicsContext();
+        return this.repaintRequired || this.geometry == null || !this.geometry.describes(graph) ||
+                graphicsContext.getCanvas().getWidth() != this.paintedWidth ||
+                graphicsContext.getCanvas().getHeight() != this.paintedHeight ||
+                this.bioRenderingOptions.getRenderingMode() != this.paintedRenderingMode ||
+                this.bioRenderingOptions.getNodeStyle() != this.paintedNodeStyle ||
+                this.bioRenderingOptions.getNodeHighlightEntity() != this.paintedNodeEntity ||
+                this.bioRenderingOptions.getEdgeHighlightEntity() != this.paintedEdgeEntity ||
+                getRenderingOptions().getNodeDiameter() != this.paintedNodeDiameter ||
+                getRenderingOptions().getEdgeThickness() != this.paintedEdgeThickness ||
+                (isCellStyle() || this.tiled || this.bioRenderingOptions.isRasterized(graph.getNodes().size())) !=
+                        this.rasterized ||
+                this.camera.getScale() != this.paintedScale || this.camera.getTranslateX() != this.paintedTranslateX ||
+                this.camera.getTranslateY() != this.paintedTranslateY;
+    }
+
+    private void repaint(AutomatonGraph graph) {
+        if (this.geometry == null || !this.geometry.describes(graph)) {
+            this.geometry = new GraphGeometry(graph);
+        }
+        prepareNodeAttributes();
+        prepareNodeColors();
+        int nodeCount = this.geometry.getNodeCount();
+        if (this.displayedKeys == null || this.displayedKeys.length < nodeCount) {
+            this.displayedKeys = new int[nodeCount];
+            this.currentKeys = new int[nodeCount];
+            this.dirtyRows = new int[nodeCount];
+            this.nodeMarks = new int[nodeCount];
+        }
+        if (this.edgeMarks == null || this.edgeMarks.length < this.geometry.getEdgeCount()) {
+            this.edgeMarks = new int[this.geometry.getEdgeCount()];
+        }
+        GraphicsContext graphicsContext = getGraphicsContext();
+        double width = graphicsContext.getCanvas().getWidth();
+        double height = graphicsContext.getCanvas().getHeight();
+        graphicsContext.clearRect(0, 0, width, height);
+
+        // level of detail
+        double scale = this.camera.getScale();
+        double nodeDiameter = getRenderingOptions().getNodeDiameter();
+        boolean cells = isCellStyle();
+        this.edgesVisible = !cells && nodeDiameter * scale >= MINIMAL_EDGE_NODE_DIAMETER;
+        this.tiled = !cells && nodeDiameter * scale < MINIMAL_NODE_DIAMETER;
+        this.rasterized = cells || this.tiled || this.bioRenderingOptions.isRasterized(nodeCount);
+
+        // the visible part of the graph
+        double margin = nodeDiameter + getRenderingOptions().getEdgeThickness();
+        double minimalX = this.camera.toGraphX(0) - margin;
+        double minimalY = this.camera.toGraphY(0) - margin;
+        double maximalX = this.camera.toGraphX(width) + margin;
+        double maximalY = this.camera.toGraphY(height) + margin;
+        NodeIndex visibleNodes = getNodeIndex(graph);
+
+        graphicsContext.save();
+        applyCamera(graphicsContext);
+        graphicsContext.setLineWidth(getRenderingOptions().getEdgeThickness());
+        if (this.edgesVisible) {
+            drawEdges(minimalX, minimalY, maximalX, maximalY);
+        }
+        if (!this.rasterized) {
+            visibleNodes.forEachInRectangle(minimalX, minimalY, maximalX, maximalY, this::drawRow);
+        }
+        graphicsContext.restore();
+        if (this.rasterized) {
+            this.nodeRaster.prepare(width, height, nodeDiameter * scale, getRenderingOptions().getEdgeThickness() * scale);
+            this.nodeRaster.clear();
+            if (cells) {
+                drawCells(visibleNodes);
+            } else if (this.tiled) {
+                drawTiles(visibleNodes, minimalX, minimalY, maximalX, maximalY);
+            } else {
+                visibleNodes.forEachInRectangle(minimalX, minimalY, maximalX, maximalY, this::drawRow);
+            }
+            this.nodeRaster.draw(graphicsContext);
+        }
+        for (int row = 0; row < nodeCount; row++) {
+            this.displayedKeys[row] = displayKey(row);
+        }
+        this.paintedWidth = width;
+        this.paintedHeight = height;
+        this.paintedScale = scale;
+        this.paintedTranslateX = this.camera.getTranslateX();
+        this.paintedTranslateY = this.camera.getTranslateY();
+        this.paintedRenderingMode = this.bioRenderingOptions.getRenderingMode();
+        this.paintedNodeStyle = this.bioRenderingOptions.getNodeStyle();
+        this.paintedNodeEntity = this.bioRenderingOptions.getNodeHighlightEntity();
+        this.paintedEdgeEntity = this.bioRenderingOptions.getEdgeHighlightEntity();
+        this.paintedNodeDiameter = getRenderingOptions().getNodeDiameter();
+        this.paintedEdgeThickness = getRenderingOptions().getEdgeThickness();
+        this.repaintRequired = false;
+        if (this.metrics != null) {
+            this.metrics.increment(FULL_REPAINTS);
+        }
+    }
+
+    private void applyCamera(GraphicsContext graphicsContext) {
+        graphicsContext.setTransform(this.camera.getScale(), 0, 0, this.camera.getScale(), this.camera.getTranslateX(),
+                this.camera.getTranslateY());
+    }
+
+    private boolean isCellStyle() {
+        return this.bioRenderingOptions.getNodeStyle() == NodeStyle.CELLS;
+    }
+
+    /**
+     * Fills the Voronoi cells of all nodes with their colors. The cells are only recomputed if nodes have been moved
+     * or the view changed, otherwise drawing a frame is a single pass over the pixels. If only the view changed, the
+     * last computed cells are resampled for the new view and the exact cells are computed in the background.
+     */
+    private void drawCells(NodeIndex nodeIndex) {
+        int width = this.nodeRaster.getWidth();
+        int height = this.nodeRaster.getHeight();
+        double edgeLength = this.geometry.getMeanEdgeLength();
+        double maximalDistance = Double.isNaN(edgeLength) ? getRenderingOptions().getNodeDiameter() :
+                edgeLength * CELL_RADIUS_FRACTION;
+        CellMap builtMap = this.cellMapBuilder.takeBuiltMap();
+        if (builtMap != null && builtMap.isCompatible(this.geometry, maximalDistance)) {
+            this.exactCellMap = builtMap;
+        }
+        if (this.cellMap == null || !this.cellMap.isExact() ||
+                !this.cellMap.matches(this.geometry, this.camera, width, height, maximalDistance)) {
+            if (this.exactCellMap != null &&
+                    this.exactCellMap.matches(this.geometry, this.camera, width, height, maximalDistance)) {
+                this.cellMap = this.exactCellMap;
+            } else if (this.exactCellMap != null && this.exactCellMap.isCompatible(this.geometry, maximalDistance)) {
+                if (this.cellMap == null || !this.cellMap.matches(this.geometry, this.camera, width, height,
+                        maximalDistance)) {
+                    this.cellMap = new CellMap(this.exactCellMap, this.camera, width, height);
+                    this.cellMapBuilder.request(nodeIndex, this.camera, width, height, maximalDistance);
+                }
+            } else {
+                // nodes have been moved, nothing to resample
+                this.cellMap = new CellMap(nodeIndex, this.camera, width, height, maximalDistance);
+                this.exactCellMap = this.cellMap;
+            }
+        }
+        int nodeCount = this.geometry.getNodeCount();
+        if (this.cellColors == null || this.cellColors.length < nodeCount) {
+            this.cellColors = new int[nodeCount];
+        }
+        for (int row = 0; row < nodeCount; row++) {
+            this.cellColors[row] = NodeRaster.premultiply(getNodeFill(row));
+        }
+        this.nodeRaster.fillCells(this.cellMap.getCells(), this.cellColors);
+    }
+
+    /**
+     * Aggregates the visible nodes into tiles of {@value #TILE_SIZE} pixels, that are filled with the mean color of
+     * their nodes and become more opaque the more nodes they contain.
+     */
+    private void drawTiles(NodeIndex visibleNodes, double minimalX, double minimalY, double maximalX, double maximalY) {
+        this.nodeRaster.beginTiles(TILE_SIZE);
+        visibleNodes.forEachInRectangle(minimalX, minimalY, maximalX, maximalY, row ->
+                this.nodeRaster.addToTile(this.camera.toCanvasX(this.geometry.getX(row)),
+                        this.camera.toCanvasY(this.geometry.getY(row)), getNodeFill(row)));
+        this.nodeRaster.fillTiles(TILE_SATURATION);
+    }
+
+    /**
+     * Draws all edges in the given area from the cached geometry. Edges are collected into one path per stroke color,
+     * such that the state of the graphics context is only changed if the color changes.
+     */
+    private void drawEdges(double minimalX, double minimalY, double maximalX, double maximalY) {
+        GraphicsContext graphicsContext = getGraphicsContext();
+        graphicsContext.setLineWidth(getRenderingOptions().getEdgeThickness());
+        double[] segments = this.geometry.getSegments();
+        Color pathColor = null;
+        graphicsContext.beginPath();
+        for (int edge = 0; edge < this.geometry.getEdgeCount(); edge++) {
+            if (!isInArea(segments, edge, minimalX, minimalY, maximalX, maximalY) || isMembraneEdge(edge)) {
+                continue;
+            }
+            Color color = this.bioRenderingOptions.getEdgeColor(this.geometry.getEdge(edge));
+            if (!color.equals(pathColor)) {
+                if (pathColor != null) {
+                    graphicsContext.stroke();
+                    graphicsContext.beginPath();
+                }
+                graphicsContext.setStroke(color);
+                pathColor = color;
+            }
+            int offset = edge * 4;
+            graphicsContext.moveTo(segments[offset], segments[offset + 1]);
+            graphicsContext.lineTo(segments[offset + 2], segments[offset + 3]);
+        }
+        if (pathColor != null) {
+            graphicsContext.stroke();
+        }
+        // connections between membrane nodes are drawn as two parallels
+        double[] parallels = this.geometry.getParallels(getRenderingOptions().getNodeDiameter() / 2.0);
+        boolean membraneEdges = false;
+        graphicsContext.beginPath();
+        for (int edge = 0; edge < this.geometry.getEdgeCount(); edge++) {
+            if (isInArea(segments, edge, minimalX, minimalY, maximalX, maximalY) && isMembraneEdge(edge)) {
+                appendParallels(graphicsContext, parallels, edge);
+                membraneEdges = true;
+            }
+        }
+        if (membraneEdges) {
+            graphicsContext.setStroke(Color.BURLYWOOD);
+            graphicsContext.stroke();
+        }
+    }
+
+    private static boolean isInArea(double[] segments, int edge, double minimalX, double minimalY, double maximalX,
+                                    double maximalY) {
+        int offset = edge * 4;
+        return Math.max(segments[offset], segments[offset + 2]) >= minimalX &&
+                Math.min(segments[offset], segments[offset + 2]) <= maximalX &&
+                Math.max(segments[offset + 1], segments[offset + 3]) >= minimalY &&
+                Math.min(segments[offset + 1], segments[offset + 3]) <= maximalY;
+    }
+
+    private boolean isMembraneEdge(int edge) {
+        return this.nodeAttributes.isMembraneEdge(edge);
+    }
+
+    private static void appendParallels(GraphicsContext graphicsContext, double[] parallels, int edge) {
+        int offset = edge * 8;
+        graphicsContext.moveTo(parallels[offset], parallels[offset + 1]);
+        graphicsContext.lineTo(parallels[offset + 2], parallels[offset + 3]);
+        graphicsContext.moveTo(parallels[offset + 4], parallels[offset + 5]);
+        graphicsContext.lineTo(parallels[offset + 6], parallels[offset + 7]);
+    }
+
+    private int collectDirtyRows() {
+        int dirtyCount = 0;
+        for (int row = 0; row < this.geometry.getNodeCount(); row++) {
+            int key = displayKey(row);
+            if (key != this.displayedKeys[row]) {
+                this.currentKeys[row] = key;
+                this.dirtyRows[dirtyCount++] = row;
+            }
+        }
+        return dirtyCount;
+    }
+
+    /**
+     * Repaints the given rows. The area around every node is cleared and everything that intersects it is drawn
+     * again, clipped to the cleared areas: all edges whose bounding box intersects an area and all nodes reaching
+     * into it, regardless of whether they are adjacent to the dirty node.
+     *
+     * @param dirtyCount The number of rows in {@link #dirtyRows}.
+     */
+    private void repaintRows(int dirtyCount) {
+        GraphicsContext graphicsContext = getGraphicsContext();
+        double diameter = getRenderingOptions().getNodeDiameter();
+        double scale = this.camera.getScale();
+        // two pixels for anti-aliasing
+        double extent = diameter + getRenderingOptions().getEdgeThickness() + 2 / scale;
+        if (++this.mark == Integer.MAX_VALUE) {
+            this.mark = 1;
+            Arrays.fill(this.nodeMarks, 0);
+            Arrays.fill(this.edgeMarks, 0);
+        }
+
+        graphicsContext.save();
+        applyCamera(graphicsContext);
+        graphicsContext.beginPath();
+        for (int index = 0; index < dirtyCount; index++) {
+            int row = this.dirtyRows[index];
+            graphicsContext.rect(this.geometry.getX(row) - extent, this.geometry.getY(row) - extent, 2 * extent,
+                    2 * extent);
+        }
+        graphicsContext.clip();
+        graphicsContext.setLineWidth(getRenderingOptions().getEdgeThickness());
+        for (int index = 0; index < dirtyCount; index++) {
+            int row = this.dirtyRows[index];
+            graphicsContext.clearRect(this.geometry.getX(row) - extent, this.geometry.getY(row) - extent, 2 * extent,
+                    2 * extent);
+            if (this.rasterized) {
+                this.nodeRaster.clear(this.camera.toCanvasX(this.geometry.getX(row) - extent),
+                        this.camera.toCanvasY(this.geometry.getY(row) - extent), 2 * extent * scale, 2 * extent * scale);
+            }
+        }
+        if (this.nodeIndex == null || this.nodeIndex.getGeometry() != this.geometry) {
+            this.nodeIndex = new NodeIndex(this.geometry);
+        }
+        double[] segments = this.geometry.getSegments();
+        // every edge crossing a cleared area connects nodes within the longest edge length of it
+        double edgeReach = extent + this.geometry.getMaximalEdgeLength();
+        for (int index = 0; index < dirtyCount && this.edgesVisible; index++) {
+            int row = this.dirtyRows[index];
+            double minimalX = this.geometry.getX(row) - extent;
+            double minimalY = this.geometry.getY(row) - extent;
+            double maximalX = this.geometry.getX(row) + extent;
+            double maximalY = this.geometry.getY(row) + extent;
+            this.nodeIndex.forEachInRectangle(this.geometry.getX(row) - edgeReach, this.geometry.getY(row) - edgeReach,
+                    this.geometry.getX(row) + edgeReach, this.geometry.getY(row) + edgeReach, candidate -> {
+                        for (int position = this.geometry.getIncidenceStart(candidate);
+                             position < this.geometry.getIncidenceEnd(candidate); position++) {
+                            int edge = this.geometry.getIncidentEdge(position);
+                            if (this.edgeMarks[edge] != this.mark &&
+                                    isInArea(segments, edge, minimalX, minimalY, maximalX, maximalY)) {
+                                drawMarkedEdge(edge);
+                            }
+                        }
+                    });
+        }
+        // all nodes reaching into the cleared areas on top
+        double nodeReach = extent + diameter;
+        for (int index = 0; index < dirtyCount; index++) {
+            int row = this.dirtyRows[index];
+            this.nodeIndex.forEachInRectangle(this.geometry.getX(row) - nodeReach, this.geometry.getY(row) - nodeReach,
+                    this.geometry.getX(row) + nodeReach, this.geometry.getY(row) + nodeReach, this::drawMarkedNode);
+            this.displayedKeys[row] = this.currentKeys[row];
+        }
+        if (this.rasterized) {
+            // the clip is kept in the coordinates of the canvas
+            graphicsContext.setTransform(1, 0, 0, 1, 0, 0);
+            this.nodeRaster.draw(graphicsContext);
+        }
+        graphicsContext.restore();
+        if (this.metrics != null) {
+            this.metrics.increment(INCREMENTAL_REPAINTS);
+            this.metrics.add(REPAINTED_NODES, dirtyCount);
+        }
+    }
+
+    private void drawMarkedEdge(int edge) {
+        if (this.edgeMarks[edge] != this.mark) {
+            this.edgeMarks[edge] = this.mark;
+            drawCachedEdge(edge);
+        }
+    }
+
+    /**
+     * Draws a single edge from the cached geometry. The line width has to be set before.
+     *
+     * @param edge The edge.
+     */
+    private void drawCachedEdge(int edge) {
+        GraphicsContext graphicsContext = getGraphicsContext();
+        graphicsContext.beginPath();
+        if (isMembraneEdge(edge)) {
+            graphicsContext.setStroke(Color.BURLYWOOD);
+            appendParallels(graphicsContext, this.geometry.getParallels(getRenderingOptions().getNodeDiameter() / 2.0), edge);
+        } else {
+            double[] segments = this.geometry.getSegments();
+            int offset = edge * 4;
+            graphicsContext.setStroke(this.bioRenderingOptions.getEdgeColor(this.geometry.getEdge(edge)));
+            graphicsContext.moveTo(segments[offset], segments[offset + 1]);
+            graphicsContext.lineTo(segments[offset + 2], segments[offset + 3]);
+        }
+        graphicsContext.stroke();
+    }
+
+    private void drawMarkedNode(int row) {
+        if (this.nodeMarks[row] != this.mark) {
+            this.nodeMarks[row] = this.mark;
+            drawRow(row);
+        }
+    }
+
+    private void drawRow(int row) {
+        if (this.rasterized) {
+            this.nodeRaster.drawNode(this.camera.toCanvasX(this.geometry.getX(row)),
+                    this.camera.toCanvasY(this.geometry.getY(row)), getNodeFill(row),
+                    this.nodeAttributes.isObserved(row));
+        } else {
+            // the geometry may show an intermediate layout
+            drawNode(this.geometry.getNode(row), new Vector2D(this.geometry.getX(row), this.geometry.getY(row)),
+                    getNodeFill(row));
+        }
+    }
+
+    /**
+     * Returns a key that changes whenever the appearance of the node in the given row changes.
+     *
+     * @param row The row.
+     * @return The key.
+     */
+    private int displayKey(int row) {
+        int key;
+        switch (this.coloring.getRenderingMode()) {
             case ENTITY_BASED: {
-                getGraphicsContext().setFill(this.bioRenderingOptions.getNodeColor(node));
+                if (this.coloring.getEntity() == null) {
+                    key = 0;
+                } else {
+                    key = this.coloring.getColorIndex(getConcentration(row));
+                }
                 break;
             }
             case COMPARTMENT_BASED: {
-                if (node.getCellSection().getIdentifier().equals("default")) {
-                    getGraphicsContext().setFill(Color.LIGHTGRAY);
-                } else {
-                    getGraphicsContext().setFill(ColorManager.getInstance().getSectionColor(node.getCellSection().getIdentifier()));
-                }
+                key = this.nodeAttributes.getSectionColorIndex(row);
                 break;
             }
-            case STATE_BASED: {
-                switch (node.getState()) {
-                    case AQUEOUS: {
-                        getGraphicsContext().setFill(Color.CADETBLUE);
-                        break;
-                    }
-                    case CYTOSOL: {
-                        getGraphicsContext().setFill(Color.CORAL);
-                        break;
-                    }
-                    case MEMBRANE: {
-                        getGraphicsContext().setFill(Color.BURLYWOOD);
-                        break;
-                    }
-                }
+            default: {
+                key = this.nodeAttributes.getStateOrdinal(row);
             }
         }
-        drawPoint(node.getPosition(), getRenderingOptions().getNodeDiameter());
+        return key * 2 + (this.nodeAttributes.isObserved(row) ? 1 : 0);
+    }
+
+    private Color getNodeFill(int row) {
+        if (this.coloring.getRenderingMode() == RenderingMode.ENTITY_BASED && this.coloring.getEntity() != null) {
+            return this.coloring.getNodeColor(this.coloring.getColorIndex(getConcentration(row)));
+        }
+        return this.coloring.getNodeFill(this.nodeAttributes, row, this.currentSnapshot,
+                this.highlightedConcentrations);
+    }
+
+    /**
+     * Returns the concentration of the highlighted entity in the node in the given row. On this thread, nodes that
+     * are not part of the snapshot are read from the live graph.
+     */
+    private double getConcentration(int row) {
+        double concentration = this.coloring.getConcentration(this.geometry, row, this.currentSnapshot,
+                this.highlightedConcentrations);
+        if (Double.isNaN(concentration)) {
+            return this.geometry.getNode(row).getConcentration(this.coloring.getEntity()).getValue().doubleValue();
+        }
+        return concentration;
+    }
+
+    @Override
+    protected void drawNode(AutomatonNode node) {
+        drawNode(node, node.getPosition(), this.bioRenderingOptions.getNodeFill(node, this.currentSnapshot));
+    }
+
+    private void drawNode(AutomatonNode node, Vector2D position, Color fill) {
+        getGraphicsContext().setFill(fill);
+        drawPoint(position, getRenderingOptions().getNodeDiameter());
         // circle point if node is observed
         if (node.isObserved()) {
             getGraphicsContext().setStroke(Color.BLUEVIOLET);
-            circlePoint(node.getPosition(), getRenderingOptions().getNodeDiameter());
+            circlePoint(position, getRenderingOptions().getNodeDiameter());
         }
     }
 
@@ -92,8 +1076,18 @@ public class BioGraphRenderer extends GraphRenderer<AutomatonNode, AutomatonEdge
     }
 
     @Override
-    public void onEventReceived(GraphUpdatedEvent event) {
-        getGraphQueue().add(event.getGraph());
+    public void onEventReceived(SimulationSnapshot snapshot) {
+        if (!this.liveUpdates) {
+            // keep the simulation from waiting for frames that are never drawn
+            acknowledgeFrame(DROPPED_FRAMES);
+            return;
+        }
+        SimulationSnapshot replaced = this.mailbox.getAndSet(snapshot.retain());
+        if (replaced != null) {
+            // the renderer did not keep up, the older snapshot is never drawn
+            replaced.release();
+            acknowledgeFrame(COALESCED_FRAMES);
+        }
     }
 
 }
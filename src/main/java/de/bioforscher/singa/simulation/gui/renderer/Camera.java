@@ -0,0 +1,141 @@
+package de.bioforscher.singa.simulation.gui.renderer;
+
+/**
+ * The transformation from the coordinates of the graph to the coordinates of the canvas, consisting of a uniform scale
+ * and a translation. The identity shows the graph as it has been arranged to fit the canvas.
+ *
+ * @author cl
+ */
+public class Camera {
+
+    public static final double MINIMAL_SCALE = 0.02;
+    public static final double MAXIMAL_SCALE = 50.0;
+
+    private double scale = 1.0;
+    private double translateX;
+    private double translateY;
+
+    public Camera() {
+    }
+
+    /**
+     * Creates a copy of the given camera, e.g. to hand the current view over to another thread.
+     *
+     * @param camera The camera.
+     */
+    public Camera(Camera camera) {
+        this.scale = camera.scale;
+        this.translateX = camera.translateX;
+        this.translateY = camera.translateY;
+    }
+
+    public double getScale() {
+        return this.scale;
+    }
+
+    public double getTranslateX() {
+        return this.translateX;
+    }
+
+    public double getTranslateY() {
+        return this.translateY;
+    }
+
+    public boolean isIdentity() {
+        return this.scale == 1.0 && this.translateX == 0.0 && this.translateY == 0.0;
+    }
+
+    /**
+     * Scales the view by the given factor, keeping the given point of the canvas in place.
+     *
+     * @param factor The factor.
+     * @param pivotX The x coordinate of the fixed point on the canvas.
+     * @param pivotY The y coordinate of the fixed point on the canvas.
+     */
+    public void zoom(double factor, double pivotX, double pivotY) {
+        double scale = Math.max(MINIMAL_SCALE, Math.min(MAXIMAL_SCALE, this.scale * factor));
+        double graphX = toGraphX(pivotX);
+        double graphY = toGraphY(pivotY);
+        this.scale = scale;
+        this.translateX = pivotX - graphX * scale;
+        this.translateY = pivotY - graphY * scale;
+    }
+
+    /**
+     * Moves the view by the given distance on the canvas.
+     *
+     * @param deltaX The horizontal distance.
+     * @param deltaY The vertical distance.
+     */
+    public void pan(double deltaX, double deltaY) {
+        this.translateX += deltaX;
+        this.translateY += deltaY;
+    }
+
+    /**
+     * Shows the given area of the graph centered on a canvas of the given size, as large as it fits.
+     *
+     * @param minimalX The left bound of the area.
+     * @param minimalY The upper bound of the area.
+     * @param maximalX The right bound of the area.
+     * @param maximalY The lower bound of the area.
+     * @param width The width of the canvas.
+     * @param height The height of the canvas.
+     */
+    public void fit(double minimalX, double minimalY, double maximalX, double maximalY, double width, double height) {
+        double areaWidth = Math.max(maximalX - minimalX, 1.0);
+        double areaHeight = Math.max(maximalY - minimalY, 1.0);
+        this.scale = Math.max(MINIMAL_SCALE, Math.min(MAXIMAL_SCALE, Math.min(width / areaWidth, height / areaHeight)));
+        this.translateX = (width - areaWidth * this.scale) / 2.0 - minimalX * this.scale;
+        this.translateY = (height - areaHeight * this.scale) / 2.0 - minimalY * this.scale;
+    }
+
+    /**
+     * Shows all nodes of the given geometry centered on a canvas of the given size, as large as they fit.
+     *
+     * @param geometry The geometry.
+     * @param margin The space around the nodes in the coordinates of the graph.
+     * @param width The width of the canvas.
+     * @param height The height of the canvas.
+     */
+    public void fit(GraphGeometry geometry, double margin, double width, double height) {
+        if (geometry.getNodeCount() == 0) {
+            reset();
+            return;
+        }
+        double minimalX = Double.POSITIVE_INFINITY;
+        double minimalY = Double.POSITIVE_INFINITY;
+        double maximalX = Double.NEGATIVE_INFINITY;
+        double maximalY = Double.NEGATIVE_INFINITY;
+        for (int row = 0; row < geometry.getNodeCount(); row++) {
+            minimalX = Math.min(minimalX, geometry.getX(row));
+            minimalY = Math.min(minimalY, geometry.getY(row));
+            maximalX = Math.max(maximalX, geometry.getX(row));
+            maximalY = Math.max(maximalY, geometry.getY(row));
+        }
+        fit(minimalX - margin, minimalY - margin, maximalX + margin, maximalY + margin, width, height);
+    }
+
+    public void reset() {
+        this.scale = 1.0;
+        this.translateX = 0.0;
+        this.translateY = 0.0;
+    }
+
+    public double toCanvasX(double graphX) {
+        return graphX * this.scale + this.translateX;
+    }
+
+    public double toCanvasY(double graphY) {
+        return graphY * this.scale + this.translateY;
+    }
+
+    public double toGraphX(double canvasX) {
+        return (canvasX - this.translateX) / this.scale;
+    }
+
+    public double toGraphY(double canvasY) {
+        return (canvasY - this.translateY) / this.scale;
+    }
+
+}
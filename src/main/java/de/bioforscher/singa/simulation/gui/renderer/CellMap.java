@@ -0,0 +1,140 @@
+package de.bioforscher.singa.simulation.gui.renderer;
+
+import de.bioforscher.singa.simulation.gui.spatial.NodeIndex;
+
+import java.util.Arrays;
+
+/**
+ * Maps every pixel of the canvas to the row of the node closest to it, i.e. to the Voronoi cell of the node it lies
+ * in. Pixels farther away from every node than the given distance belong to no cell, such that the tessellation ends
+ * at the border of the graph. The map only depends on the positions of the nodes and on the view, a frame is drawn
+ * by looking up the color of every pixel by its row (see {@link NodeRaster#fillCells(int[], int[])}). Graphs drawn in
+ * the {@link NodeStyle#CELLS cell style} only recompute their map if nodes have been moved or the view changed.
+ * <p>
+ * Computing a map searches the nearest node of every pixel. While the view changes, an existing map can be resampled
+ * for the new view instead, which only transforms the coordinates of every pixel. Resampled maps are not exact, pixels
+ * that were outside of the former view belong to no cell.
+ *
+ * @author cl
+ */
+public class CellMap {
+
+    /**
+     * The row of pixels that belong to no cell.
+     */
+    public static final int EMPTY = -1;
+
+    private final GraphGeometry geometry;
+    private final int width;
+    private final int height;
+    private final double scale;
+    private final double translateX;
+    private final double translateY;
+    private final double maximalDistance;
+    private final boolean exact;
+    private final int[] cells;
+
+    /**
+     * Computes the cells of all pixels.
+     *
+     * @param nodeIndex The index over the nodes.
+     * @param camera The camera the graph is seen through.
+     * @param width The width of the canvas in pixels.
+     * @param height The height of the canvas in pixels.
+     * @param maximalDistance The largest distance of a pixel to its node in the coordinates of the graph.
+     */
+    public CellMap(NodeIndex nodeIndex, Camera camera, int width, int height, double maximalDistance) {
+        this.geometry = nodeIndex.getGeometry();
+        this.width = width;
+        this.height = height;
+        this.scale = camera.getScale();
+        this.translateX = camera.getTranslateX();
+        this.translateY = camera.getTranslateY();
+        this.maximalDistance = maximalDistance;
+        this.exact = true;
+        this.cells = new int[width * height];
+        for (int pixelY = 0; pixelY < height; pixelY++) {
+            // centers of the pixels
+            double graphY = camera.toGraphY(pixelY + 0.5);
+            int offset = pixelY * width;
+            for (int pixelX = 0; pixelX < width; pixelX++) {
+                int row = nodeIndex.nearest(camera.toGraphX(pixelX + 0.5), graphY, maximalDistance);
+                this.cells[offset + pixelX] = row == GraphGeometry.UNKNOWN_ROW ? EMPTY : row;
+            }
+        }
+    }
+
+    /**
+     * Resamples the cells of the given map for another view or size.
+     *
+     * @param source The map to resample.
+     * @param camera The camera the graph is seen through.
+     * @param width The width of the canvas in pixels.
+     * @param height The height of the canvas in pixels.
+     */
+    public CellMap(CellMap source, Camera camera, int width, int height) {
+        this.geometry = source.geometry;
+        this.width = width;
+        this.height = height;
+        this.scale = camera.getScale();
+        this.translateX = camera.getTranslateX();
+        this.translateY = camera.getTranslateY();
+        this.maximalDistance = source.maximalDistance;
+        this.exact = false;
+        this.cells = new int[width * height];
+        for (int pixelY = 0; pixelY < height; pixelY++) {
+            int sourceY = (int) Math.floor(camera.toGraphY(pixelY + 0.5) * source.scale + source.translateY);
+            int offset = pixelY * width;
+            if (sourceY < 0 || sourceY >= source.height) {
+                Arrays.fill(this.cells, offset, offset + width, EMPTY);
+                continue;
+            }
+            int sourceOffset = sourceY * source.width;
+            for (int pixelX = 0; pixelX < width; pixelX++) {
+                int sourceX = (int) Math.floor(camera.toGraphX(pixelX + 0.5) * source.scale + source.translateX);
+                this.cells[offset + pixelX] = sourceX < 0 || sourceX >= source.width ? EMPTY :
+                        source.cells[sourceOffset + sourceX];
+            }
+        }
+    }
+
+    /**
+     * Determines whether this map has been computed for the given geometry, view and size.
+     *
+     * @return True, if the map can be used.
+     */
+    public boolean matches(GraphGeometry geometry, Camera camera, int width, int height, double maximalDistance) {
+        return this.geometry == geometry && this.width == width && this.height == height &&
+                this.scale == camera.getScale() && this.translateX == camera.getTranslateX() &&
+                this.translateY == camera.getTranslateY() && this.maximalDistance == maximalDistance;
+    }
+
+    /**
+     * Determines whether the cells have been computed for the given geometry and distance, such that the map can be
+     * resampled for other views.
+     *
+     * @return True, if the map can be resampled.
+     */
+    public boolean isCompatible(GraphGeometry geometry, double maximalDistance) {
+        return this.geometry == geometry && this.maximalDistance == maximalDistance;
+    }
+
+    /**
+     * Determines whether the cells have been computed rather than resampled from another map.
+     *
+     * @return True, if the map is exact.
+     */
+    public boolean isExact() {
+        return this.exact;
+    }
+
+    /**
+     * Returns the row of the node of every pixel, row by row, or {@link #EMPTY}. The array must not be modified.
+     *
+     * @return The rows.
+     */
+    public int[] getCells() {
+        return this.cells;
+    }
+
+}
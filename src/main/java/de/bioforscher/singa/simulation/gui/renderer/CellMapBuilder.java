@@ -0,0 +1,122 @@
+package de.bioforscher.singa.simulation.gui.renderer;
+
+import de.bioforscher.singa.simulation.gui.spatial.NodeIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Computes {@link CellMap}s on a background thread, such that moving the camera over a graph drawn as cells does not
+ * search the nearest node of every pixel on the JavaFX Application Thread. Requests are handed over through a single
+ * slot, where newer requests replace older ones, so while the camera keeps moving only the latest view is computed.
+ *
+ * @author cl
+ */
+public class CellMapBuilder {
+
+    private static final Logger logger = LoggerFactory.getLogger(CellMapBuilder.class);
+
+    private final AtomicReference<Request> pendingRequest;
+    private final AtomicReference<CellMap> builtMap;
+    private volatile boolean running;
+    private Thread worker;
+
+    public CellMapBuilder() {
+        this.pendingRequest = new AtomicReference<>();
+        this.builtMap = new AtomicReference<>();
+        this.running = true;
+    }
+
+    /**
+     * Requests the cells for the given view. A request that has not been started yet is replaced, the camera is
+     * copied.
+     *
+     * @param nodeIndex The index over the nodes.
+     * @param camera The camera the graph is seen through.
+     * @param width The width of the canvas in pixels.
+     * @param height The height of the canvas in pixels.
+     * @param maximalDistance The largest distance of a pixel to its node in the coordinates of the graph.
+     */
+    public void request(NodeIndex nodeIndex, Camera camera, int width, int height, double maximalDistance) {
+        if (!this.running) {
+            return;
+        }
+        this.pendingRequest.set(new Request(nodeIndex, new Camera(camera), width, height, maximalDistance));
+        synchronized (this) {
+            if (this.worker == null) {
+                this.worker = new Thread(this::work, "cell-map-builder");
+                this.worker.setDaemon(true);
+                this.worker.start();
+            }
+        }
+        LockSupport.unpark(this.worker);
+    }
+
+    /**
+     * Determines whether a map has been computed that has not been taken yet.
+     *
+     * @return True, if there is a computed map.
+     */
+    public boolean hasBuiltMap() {
+        return this.builtMap.get() != null;
+    }
+
+    /**
+     * Takes the latest computed map.
+     *
+     * @return The map or null, if no map has been computed since the last call.
+     */
+    public CellMap takeBuiltMap() {
+        return this.builtMap.getAndSet(null);
+    }
+
+    /**
+     * Stops the background thread.
+     */
+    public void shutdown() {
+        this.running = false;
+        this.pendingRequest.set(null);
+        synchronized (this) {
+            if (this.worker != null) {
+                this.worker.interrupt();
+            }
+        }
+    }
+
+    private void work() {
+        while (this.running) {
+            Request request = this.pendingRequest.getAndSet(null);
+            if (request == null) {
+                LockSupport.park(this);
+                continue;
+            }
+            try {
+                this.builtMap.set(new CellMap(request.nodeIndex, request.camera, request.width, request.height,
+                        request.maximalDistance));
+            } catch (RuntimeException e) {
+                logger.warn("Could not compute cells.", e);
+            }
+        }
+    }
+
+    private static class Request {
+
+        private final NodeIndex nodeIndex;
+        private final Camera camera;
+        private final int width;
+        private final int height;
+        private final double maximalDistance;
+
+        Request(NodeIndex nodeIndex, Camera camera, int width, int height, double maximalDistance) {
+            this.nodeIndex = nodeIndex;
+            this.camera = camera;
+            this.width = width;
+            this.height = height;
+            this.maximalDistance = maximalDistance;
+        }
+
+    }
+
+}
@@ -0,0 +1,59 @@
+package de.bioforscher.singa.simulation.gui.renderer;
+
+import de.bioforscher.singa.javafx.renderer.colors.ColorScale;
+import javafx.scene.paint.Color;
+
+/**
+ * The colors of a {@link ColorScale} sampled at evenly spaced positions, such that values can be mapped to colors by
+ * quantizing them to an index instead of interpolating a new color every time.
+ *
+ * @author cl
+ */
+public class ColorLookupTable {
+
+    public static final int DEFAULT_SIZE = 256;
+
+    private final Color[] colors;
+
+    /**
+     * Samples the given scale between its lower bound 0 and its upper bound 1.
+     *
+     * @param colorScale The scale.
+     * @param size The number of colors.
+     */
+    public ColorLookupTable(ColorScale colorScale, int size) {
+        if (size < 2) {
+            throw new IllegalArgumentException("A lookup table requires at least two colors.");
+        }
+        this.colors = new Color[size];
+        for (int index = 0; index < size; index++) {
+            this.colors[index] = colorScale.getColor((double) index / (size - 1));
+        }
+    }
+
+    public int getSize() {
+        return this.colors.length;
+    }
+
+    /**
+     * Returns the index of the color for the given normalized value. Values outside of 0 and 1 are clamped.
+     *
+     * @param normalizedValue The value between 0 and 1.
+     * @return The index.
+     */
+    public int getIndex(double normalizedValue) {
+        if (!(normalizedValue > 0)) {
+            // also catches NaN
+            return 0;
+        }
+        if (normalizedValue >= 1) {
+            return this.colors.length - 1;
+        }
+        return (int) (normalizedValue * (this.colors.length - 1) + 0.5);
+    }
+
+    public Color getColor(int index) {
+        return this.colors[index];
+    }
+
+}
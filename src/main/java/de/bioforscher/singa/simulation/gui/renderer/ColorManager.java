@@ -18,6 +18,7 @@ public class ColorManager {
 
     private Map<ChemicalEntity, ColorableChemicalEntity> entityColorMap;
     private Map<String, Color> cellSectionColorMap;
+    private volatile long sectionColorVersion;
 
     public static ColorManager getInstance() {
         if (instance == null) {
@@ -74,6 +75,17 @@ public class ColorManager {
 
     public void setColor(CellSection cellSection, Color color) {
         this.cellSectionColorMap.put(cellSection.getIdentifier(), color);
+        this.sectionColorVersion++;
+    }
+
+    /**
+     * Returns a number that changes every time the color of a cell section is changed, such that cached colors can be
+     * validated.
+     *
+     * @return The version of the section colors.
+     */
+    public long getSectionColorVersion() {
+        return this.sectionColorVersion;
     }
 
     public boolean getVisibility(ChemicalEntity entity) {
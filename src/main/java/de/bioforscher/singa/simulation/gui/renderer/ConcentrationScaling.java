@@ -0,0 +1,13 @@
+package de.bioforscher.singa.simulation.gui.renderer;
+
+/**
+ * The mapping of concentrations to the colors of a {@link ColorLookupTable}.
+ *
+ * @author cl
+ */
+public enum ConcentrationScaling {
+
+    LINEAR,
+    LOGARITHMIC
+
+}
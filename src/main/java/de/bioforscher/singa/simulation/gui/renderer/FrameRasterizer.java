@@ -0,0 +1,92 @@
+package de.bioforscher.singa.simulation.gui.renderer;
+
+import de.bioforscher.singa.simulation.gui.snapshots.SimulationSnapshot;
+import de.bioforscher.singa.simulation.gui.spatial.NodeIndex;
+import javafx.scene.paint.Color;
+
+/**
+ * Rasterizes whole frames of a graph into a {@link NodeRaster}, with the same level of detail and the same colors as
+ * the {@link BioGraphRenderer}, but without a graphics context, such that frames can be drawn on any thread. Edges are
+ * rasterized as lines of one pixel. A rasterizer reuses its buffer and must only be used by one thread at a time.
+ *
+ * @author cl
+ */
+public class FrameRasterizer {
+
+    private final NodeRaster raster;
+
+    public FrameRasterizer() {
+        this.raster = new NodeRaster();
+    }
+
+    /**
+     * Rasterizes the requested frame. The returned raster is overwritten by the next frame, the pixels can be taken
+     * over with {@link NodeRaster#swapPixels(int[])}.
+     *
+     * @param request The request.
+     * @return The raster containing the frame.
+     */
+    public NodeRaster rasterize(FrameRequest request) {
+        Camera camera = request.getCamera();
+        NodeIndex nodeIndex = request.getNodeIndex();
+        GraphGeometry geometry = nodeIndex.getGeometry();
+        NodeAttributes attributes = request.getNodeAttributes();
+        SimulationSnapshot snapshot = request.getSnapshot();
+        NodeColoring coloring = request.getColoring();
+        double[] concentrations = coloring.getConcentrations(snapshot);
+        double scale = camera.getScale();
+        double nodeDiameter = request.getNodeDiameter();
+        this.raster.prepare(request.getWidth(), request.getHeight(), nodeDiameter * scale,
+                request.getEdgeThickness() * scale);
+        this.raster.clear();
+
+        // the visible part of the graph
+        double margin = nodeDiameter + request.getEdgeThickness();
+        double minimalX = camera.toGraphX(0) - margin;
+        double minimalY = camera.toGraphY(0) - margin;
+        double maximalX = camera.toGraphX(request.getWidth()) + margin;
+        double maximalY = camera.toGraphY(request.getHeight()) + margin;
+
+        if (nodeDiameter * scale >= BioGraphRenderer.MINIMAL_EDGE_NODE_DIAMETER) {
+            double[] segments = geometry.getSegments();
+            double[] parallels = geometry.getParallels(nodeDiameter / 2.0);
+            for (int edge = 0; edge < geometry.getEdgeCount(); edge++) {
+                int offset = edge * 4;
+                if (Math.max(segments[offset], segments[offset + 2]) < minimalX ||
+                        Math.min(segments[offset], segments[offset + 2]) > maximalX ||
+                        Math.max(segments[offset + 1], segments[offset + 3]) < minimalY ||
+                        Math.min(segments[offset + 1], segments[offset + 3]) > maximalY) {
+                    continue;
+                }
+                if (attributes.isMembraneEdge(edge)) {
+                    int parallelOffset = edge * 8;
+                    drawLine(camera, parallels, parallelOffset, Color.BURLYWOOD);
+                    drawLine(camera, parallels, parallelOffset + 4, Color.BURLYWOOD);
+                } else {
+                    drawLine(camera, segments, offset, coloring.getEdgeColor(geometry.getEdge(edge)));
+                }
+            }
+        }
+
+        if (nodeDiameter * scale < BioGraphRenderer.MINIMAL_NODE_DIAMETER) {
+            this.raster.beginTiles(BioGraphRenderer.TILE_SIZE);
+            nodeIndex.forEachInRectangle(minimalX, minimalY, maximalX, maximalY, row ->
+                    this.raster.addToTile(camera.toCanvasX(geometry.getX(row)), camera.toCanvasY(geometry.getY(row)),
+                            coloring.getNodeFill(attributes, row, snapshot, concentrations)));
+            this.raster.fillTiles(BioGraphRenderer.TILE_SATURATION);
+        } else {
+            nodeIndex.forEachInRectangle(minimalX, minimalY, maximalX, maximalY, row -> {
+                this.raster.drawNode(camera.toCanvasX(geometry.getX(row)), camera.toCanvasY(geometry.getY(row)),
+                        coloring.getNodeFill(attributes, row, snapshot, concentrations),
+                        attributes.isObserved(row));
+            });
+        }
+        return this.raster;
+    }
+
+    private void drawLine(Camera camera, double[] coordinates, int offset, Color color) {
+        this.raster.drawLine(camera.toCanvasX(coordinates[offset]), camera.toCanvasY(coordinates[offset + 1]),
+                camera.toCanvasX(coordinates[offset + 2]), camera.toCanvasY(coordinates[offset + 3]), color);
+    }
+
+}
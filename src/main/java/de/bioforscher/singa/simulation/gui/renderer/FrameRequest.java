@@ -0,0 +1,97 @@
+package de.bioforscher.singa.simulation.gui.renderer;
+
+import de.bioforscher.singa.simulation.gui.snapshots.SimulationSnapshot;
+import de.bioforscher.singa.simulation.gui.spatial.NodeIndex;
+
+/**
+ * Everything required to rasterize a frame with a {@link FrameRasterizer} without touching the graphics context: the
+ * positions, states and compartments of the nodes, the concentrations, the coloring, the view and the size of the
+ * frame.
+ *
+ * @author cl
+ */
+public class FrameRequest {
+
+    private final NodeIndex nodeIndex;
+    private final NodeAttributes nodeAttributes;
+    private final SimulationSnapshot snapshot;
+    private final NodeColoring coloring;
+    private final Camera camera;
+    private final int width;
+    private final int height;
+    private final double nodeDiameter;
+    private final double edgeThickness;
+
+    /**
+     * Creates a new request. The request takes over the reference to the snapshot, the camera is copied and the
+     * coloring is immutable, such that the frame is not affected by later changes of the view or the options.
+     *
+     * @param nodeIndex The index over the positions of the nodes.
+     * @param nodeAttributes The states and compartments of the nodes.
+     * @param snapshot The snapshot concentrations are read from, may be null.
+     * @param coloring The coloring of the nodes.
+     * @param camera The camera the graph is seen through.
+     * @param width The width of the frame.
+     * @param height The height of the frame.
+     * @param nodeDiameter The diameter of nodes in the coordinates of the graph.
+     * @param edgeThickness The thickness of edges in the coordinates of the graph.
+     */
+    public FrameRequest(NodeIndex nodeIndex, NodeAttributes nodeAttributes, SimulationSnapshot snapshot,
+                        NodeColoring coloring, Camera camera, double width, double height, double nodeDiameter, double edgeThickness) {
+        this.nodeIndex = nodeIndex;
+        this.nodeAttributes = nodeAttributes;
+        this.snapshot = snapshot;
+        this.coloring = coloring;
+        this.camera = new Camera(camera);
+        this.width = Math.max((int) Math.ceil(width), 1);
+        this.height = Math.max((int) Math.ceil(height), 1);
+        this.nodeDiameter = nodeDiameter;
+        this.edgeThickness = edgeThickness;
+    }
+
+    public NodeIndex getNodeIndex() {
+        return this.nodeIndex;
+    }
+
+    public NodeAttributes getNodeAttributes() {
+        return this.nodeAttributes;
+    }
+
+    public SimulationSnapshot getSnapshot() {
+        return this.snapshot;
+    }
+
+    public NodeColoring getColoring() {
+        return this.coloring;
+    }
+
+    public Camera getCamera() {
+        return this.camera;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public double getNodeDiameter() {
+        return this.nodeDiameter;
+    }
+
+    public double getEdgeThickness() {
+        return this.edgeThickness;
+    }
+
+    /**
+     * Releases the reference to the snapshot, once the frame has been rasterized or discarded.
+     */
+    public void release() {
+        if (this.snapshot != null) {
+            this.snapshot.release();
+        }
+    }
+
+}
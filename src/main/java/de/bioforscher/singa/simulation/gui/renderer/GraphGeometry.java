@@ -0,0 +1,352 @@
+package de.bioforscher.singa.simulation.gui.renderer;
+
+import de.bioforscher.singa.mathematics.vectors.Vector2D;
+import de.bioforscher.singa.simulation.model.graphs.AutomatonEdge;
+import de.bioforscher.singa.simulation.model.graphs.AutomatonGraph;
+import de.bioforscher.singa.simulation.model.graphs.AutomatonNode;
+
+import java.util.Arrays;
+
+/**
+ * The structure of a graph in primitive arrays, as required to draw it. Every node is assigned to a row in the order
+ * of {@link AutomatonGraph#getNodes()}, the edges incident to every node are stored in compressed sparse rows. The end
+ * points of all edges and the parallels drawn for membrane edges are packed into arrays, such that edges can be drawn
+ * without allocating anything. The geometry is a copy: it has to be rebuilt, if nodes are moved, added or removed.
+ *
+ * @author cl
+ */
+public class GraphGeometry {
+
+    public static final int UNKNOWN_ROW = -1;
+
+    private final AutomatonGraph graph;
+    private final int nodeCount;
+    private final int edgeCount;
+
+    private final AutomatonNode[] nodes;
+    private final int[] identifiers;
+    private final int[] rows;
+    private final double[] x;
+    private final double[] y;
+
+    private final AutomatonEdge[] edges;
+    private final int[] sources;
+    private final int[] targets;
+    private final int[] incidenceOffsets;
+    private final int[] incidentEdges;
+
+    private final double[] segments;
+    private double[] parallels;
+    private double parallelDistance = Double.NaN;
+    private double meanEdgeLength = Double.NaN;
+    private double maximalEdgeLength = Double.NaN;
+
+    public GraphGeometry(AutomatonGraph graph) {
+        this.graph = graph;
+        this.nodeCount = graph.getNodes().size();
+        this.edgeCount = graph.getEdges().size();
+        this.nodes = new AutomatonNode[this.nodeCount];
+        this.identifiers = new int[this.nodeCount];
+        this.x = new double[this.nodeCount];
+        this.y = new double[this.nodeCount];
+
+        int maximalIdentifier = 0;
+        int row = 0;
+        for (AutomatonNode node : graph.getNodes()) {
+            Vector2D position = node.getPosition();
+            this.nodes[row] = node;
+            this.identifiers[row] = node.getIdentifier();
+            this.x[row] = position.getX();
+            this.y[row] = position.getY();
+            maximalIdentifier = Math.max(maximalIdentifier, node.getIdentifier());
+            row++;
+        }
+        this.rows = new int[maximalIdentifier + 1];
+        Arrays.fill(this.rows, UNKNOWN_ROW);
+        for (row = 0; row < this.nodeCount; row++) {
+            this.rows[this.identifiers[row]] = row;
+        }
+
+        this.edges = new AutomatonEdge[this.edgeCount];
+        this.sources = new int[this.edgeCount];
+        this.targets = new int[this.edgeCount];
+        this.incidenceOffsets = new int[this.nodeCount + 1];
+        this.segments = new double[this.edgeCount * 4];
+        int edge = 0;
+        for (AutomatonEdge automatonEdge : graph.getEdges()) {
+            this.edges[edge] = automatonEdge;
+            Vector2D source = automatonEdge.getSource().getPosition();
+            Vector2D target = automatonEdge.getTarget().getPosition();
+            this.segments[edge * 4] = source.getX();
+            this.segments[edge * 4 + 1] = source.getY();
+            this.segments[edge * 4 + 2] = target.getX();
+            this.segments[edge * 4 + 3] = target.getY();
+            this.sources[edge] = getRow(automatonEdge.getSource().getIdentifier());
+            this.targets[edge] = getRow(automatonEdge.getTarget().getIdentifier());
+            if (this.sources[edge] != UNKNOWN_ROW) {
+                this.incidenceOffsets[this.sources[edge] + 1]++;
+            }
+            if (this.targets[edge] != UNKNOWN_ROW) {
+                this.incidenceOffsets[this.targets[edge] + 1]++;
+            }
+            edge++;
+        }
+        for (row = 0; row < this.nodeCount; row++) {
+            this.incidenceOffsets[row + 1] += this.incidenceOffsets[row];
+        }
+        this.incidentEdges = new int[this.incidenceOffsets[this.nodeCount]];
+        int[] fill = Arrays.copyOf(this.incidenceOffsets, this.nodeCount);
+        for (edge = 0; edge < this.edgeCount; edge++) {
+            if (this.sources[edge] != UNKNOWN_ROW) {
+                this.incidentEdges[fill[this.sources[edge]]++] = edge;
+            }
+            if (this.targets[edge] != UNKNOWN_ROW) {
+                this.incidentEdges[fill[this.targets[edge]]++] = edge;
+            }
+        }
+    }
+
+    /**
+     * Creates a copy of the given geometry with the nodes at other positions. The structure is shared.
+     */
+    private GraphGeometry(GraphGeometry geometry, double[] x, double[] y) {
+        this.graph = geometry.graph;
+        this.nodeCount = geometry.nodeCount;
+        this.edgeCount = geometry.edgeCount;
+        this.nodes = geometry.nodes;
+        this.identifiers = geometry.identifiers;
+        this.rows = geometry.rows;
+        this.x = Arrays.copyOf(x, this.nodeCount);
+        this.y = Arrays.copyOf(y, this.nodeCount);
+        this.edges = geometry.edges;
+        this.sources = geometry.sources;
+        this.targets = geometry.targets;
+        this.incidenceOffsets = geometry.incidenceOffsets;
+        this.incidentEdges = geometry.incidentEdges;
+        this.segments = Arrays.copyOf(geometry.segments, geometry.segments.length);
+        for (int edge = 0; edge < this.edgeCount; edge++) {
+            // edges to nodes outside of the graph keep their end points
+            if (this.sources[edge] != UNKNOWN_ROW) {
+                this.segments[edge * 4] = this.x[this.sources[edge]];
+                this.segments[edge * 4 + 1] = this.y[this.sources[edge]];
+            }
+            if (this.targets[edge] != UNKNOWN_ROW) {
+                this.segments[edge * 4 + 2] = this.x[this.targets[edge]];
+                this.segments[edge * 4 + 3] = this.y[this.targets[edge]];
+            }
+        }
+    }
+
+    /**
+     * Returns a geometry of the same graph with the nodes at the given positions, e.g. to show an intermediate layout
+     * without moving the nodes of the graph.
+     *
+     * @param x The x coordinates of the rows.
+     * @param y The y coordinates of the rows.
+     * @return The geometry.
+     */
+    public GraphGeometry withPositions(double[] x, double[] y) {
+        return new GraphGeometry(this, x, y);
+    }
+
+    /**
+     * Determines whether this geometry still describes the given graph. Moved nodes are not detected.
+     *
+     * @param graph The graph.
+     * @return True, if the graph is the same and the number of nodes and edges did not change.
+     */
+    public boolean describes(AutomatonGraph graph) {
+        return graph == this.graph && graph.getNodes().size() == this.nodeCount &&
+                graph.getEdges().size() == this.edgeCount;
+    }
+
+    /**
+     * Determines whether the given geometry contains the same nodes in the same rows, e.g. because it only shows the
+     * nodes at other positions (see {@link #withPositions(double[], double[])}).
+     *
+     * @param geometry The geometry.
+     * @return True, if the rows of both geometries refer to the same nodes.
+     */
+    public boolean hasSameNodes(GraphGeometry geometry) {
+        return geometry != null && geometry.nodes == this.nodes;
+    }
+
+    public AutomatonGraph getGraph() {
+        return this.graph;
+    }
+
+    public int getNodeCount() {
+        return this.nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return this.edgeCount;
+    }
+
+    public AutomatonNode getNode(int row) {
+        return this.nodes[row];
+    }
+
+    public int getIdentifier(int row) {
+        return this.identifiers[row];
+    }
+
+    /**
+     * Returns the row of the node with the given identifier.
+     *
+     * @param identifier The identifier.
+     * @return The row or {@link #UNKNOWN_ROW} if the node is not part of the graph.
+     */
+    public int getRow(int identifier) {
+        if (identifier < 0 || identifier >= this.rows.length) {
+            return UNKNOWN_ROW;
+        }
+        return this.rows[identifier];
+    }
+
+    public double getX(int row) {
+        return this.x[row];
+    }
+
+    public double getY(int row) {
+        return this.y[row];
+    }
+
+    public AutomatonEdge getEdge(int edge) {
+        return this.edges[edge];
+    }
+
+    public int getSource(int edge) {
+        return this.sources[edge];
+    }
+
+    public int getTarget(int edge) {
+        return this.targets[edge];
+    }
+
+    /**
+     * Returns the first position of the edges incident to the given row in {@link #getIncidentEdge(int)}.
+     *
+     * @param row The row.
+     * @return The first position (inclusive).
+     */
+    public int getIncidenceStart(int row) {
+        return this.incidenceOffsets[row];
+    }
+
+    /**
+     * Returns the last position of the edges incident to the given row in {@link #getIncidentEdge(int)}.
+     *
+     * @param row The row.
+     * @return The last position (exclusive).
+     */
+    public int getIncidenceEnd(int row) {
+        return this.incidenceOffsets[row + 1];
+    }
+
+    public int getIncidentEdge(int position) {
+        return this.incidentEdges[position];
+    }
+
+    /**
+     * Returns the end points of all edges, four values (source x, source y, target x, target y) per edge. The array
+     * must not be modified.
+     *
+     * @return The end points.
+     */
+    public double[] getSegments() {
+        return this.segments;
+    }
+
+    /**
+     * Returns the end points of the two parallels of every edge in the given distance, eight values (the end points of
+     * the upper and of the lower parallel) per edge. The parallels are cached until a different distance is requested.
+     * The array must not be modified, it is replaced instead of being overwritten, such that the geometry can be shared
+     * with the background renderer.
+     *
+     * @param distance The distance between the edge and its parallels.
+     * @return The end points of the parallels.
+     */
+    public synchronized double[] getParallels(double distance) {
+        if (this.parallels == null || distance != this.parallelDistance) {
+            double[] parallels = new double[this.edgeCount * 8];
+            for (int edge = 0; edge < this.edgeCount; edge++) {
+                double sourceX = this.segments[edge * 4];
+                double sourceY = this.segments[edge * 4 + 1];
+                double targetX = this.segments[edge * 4 + 2];
+                double targetY = this.segments[edge * 4 + 3];
+                double length = Math.hypot(targetX - sourceX, targetY - sourceY);
+                double offsetX = 0;
+                double offsetY = 0;
+                if (length > 0) {
+                    // normal of the edge scaled to the distance
+                    offsetX = -(targetY - sourceY) / length * distance;
+                    offsetY = (targetX - sourceX) / length * distance;
+                }
+                int offset = edge * 8;
+                parallels[offset] = sourceX + offsetX;
+                parallels[offset + 1] = sourceY + offsetY;
+                parallels[offset + 2] = targetX + offsetX;
+                parallels[offset + 3] = targetY + offsetY;
+                parallels[offset + 4] = sourceX - offsetX;
+                parallels[offset + 5] = sourceY - offsetY;
+                parallels[offset + 6] = targetX - offsetX;
+                parallels[offset + 7] = targetY - offsetY;
+            }
+            this.parallels = parallels;
+            this.parallelDistance = distance;
+        }
+        return this.parallels;
+    }
+
+    /**
+     * Returns the mean length of all edges, i.e. the distance between neighbouring nodes in the coordinates of the
+     * graph.
+     *
+     * @return The mean length or NaN if there are no edges.
+     */
+    public synchronized double getMeanEdgeLength() {
+        measureEdges();
+        return this.meanEdgeLength;
+    }
+
+    /**
+     * Returns the length of the longest edge. Every edge whose bounding box intersects a rectangle connects nodes
+     * that are at most this far from the rectangle.
+     *
+     * @return The maximal length or zero if there are no edges.
+     */
+    public synchronized double getMaximalEdgeLength() {
+        measureEdges();
+        return this.maximalEdgeLength;
+    }
+
+    private void measureEdges() {
+        if (!Double.isNaN(this.maximalEdgeLength)) {
+            return;
+        }
+        double sum = 0;
+        double maximum = 0;
+        for (int edge = 0; edge < this.edgeCount; edge++) {
+            int offset = edge * 4;
+            double length = Math.hypot(this.segments[offset + 2] - this.segments[offset],
+                    this.segments[offset + 3] - this.segments[offset + 1]);
+            sum += length;
+            maximum = Math.max(maximum, length);
+        }
+        this.meanEdgeLength = this.edgeCount > 0 ? sum / this.edgeCount : Double.NaN;
+        this.maximalEdgeLength = maximum;
+    }
+
+    /**
+     * Returns the row at the other end of the edge.
+     *
+     * @param edge The edge.
+     * @param row One end of the edge.
+     * @return The other end.
+     */
+    public int getOpposite(int edge, int row) {
+        return this.sources[edge] == row ? this.targets[edge] : this.sources[edge];
+    }
+
+}
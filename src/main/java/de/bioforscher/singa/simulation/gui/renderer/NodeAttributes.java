@@ -0,0 +1,196 @@
+package de.bioforscher.singa.simulation.gui.renderer;
+
+import de.bioforscher.singa.simulation.gui.snapshots.SimulationSnapshot;
+import de.bioforscher.singa.simulation.model.compartments.NodeState;
+import de.bioforscher.singa.simulation.model.graphs.AutomatonEdge;
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The attributes of the nodes that only change if the graph is edited: the ordinal of the state, the index of the
+ * color of the cell section and the observation flag of every row of a {@link GraphGeometry}. The attributes are read once, such that drawing
+ * states or compartments reads flat arrays instead of looking up the section color of every node in every frame. If a
+ * snapshot is displayed, states and sections are read from the snapshot rather than from the live graph, such that
+ * replayed snapshots are drawn with the states and sections they were captured with, and frames drawn on other threads
+ * do not read the live nodes.
+ * <p>
+ * The attributes are not updated, they have to be rebuilt if the state or the section of a node has been changed. The
+ * colors of the sections are validated against the version of the {@link ColorManager}. Once built, the attributes are
+ * only read and can be shared with other threads.
+ *
+ * @author cl
+ */
+public class NodeAttributes {
+
+    private static final NodeState[] STATES = NodeState.values();
+    private static final int UNRESOLVED_SECTION = -2;
+    private static final int UNKNOWN_SECTION = -1;
+
+    private final GraphGeometry geometry;
+    private final long sectionColorVersion;
+    private final boolean snapshotBased;
+    private final Map<String, Integer> sectionIndices;
+    private final int[] stateOrdinals;
+    private final int[] sectionColorIndices;
+    private final boolean[] observed;
+    private final Color[] stateColors;
+    private final Color[] sectionColors;
+
+    /**
+     * Reads the attributes of all nodes of the given geometry from the live graph.
+     *
+     * @param geometry The geometry.
+     */
+    public NodeAttributes(GraphGeometry geometry) {
+        this(geometry, null);
+    }
+
+    /**
+     * Reads the attributes of all nodes of the given geometry from the snapshot. Nodes that are not part of the
+     * snapshot are read from the live graph.
+     *
+     * @param geometry The geometry.
+     * @param snapshot The displayed snapshot, may be null.
+     */
+    public NodeAttributes(GraphGeometry geometry, SimulationSnapshot snapshot) {
+        this.geometry = geometry;
+        this.sectionColorVersion = ColorManager.getInstance().getSectionColorVersion();
+        this.snapshotBased = snapshot != null;
+        int nodeCount = geometry.getNodeCount();
+        this.stateOrdinals = new int[nodeCount];
+        this.sectionColorIndices = new int[nodeCount];
+        this.observed = new boolean[nodeCount];
+        this.stateColors = new Color[STATES.length];
+        for (NodeState state : STATES) {
+            this.stateColors[state.ordinal()] = BioGraphRenderOptions.getStateColor(state);
+        }
+        this.sectionIndices = new HashMap<>();
+        List<Color> colors = new ArrayList<>();
+        for (int row = 0; row < nodeCount; row++) {
+            int snapshotRow = snapshot != null ? snapshot.getRow(geometry.getIdentifier(row)) :
+                    SimulationSnapshot.UNKNOWN_ROW;
+            String sectionIdentifier;
+            if (snapshotRow != SimulationSnapshot.UNKNOWN_ROW) {
+                this.stateOrdinals[row] = snapshot.getStateOrdinal(snapshotRow);
+                sectionIdentifier = snapshot.getSectionIdentifier(snapshot.getSectionIndex(snapshotRow));
+                this.observed[row] = snapshot.isObserved(snapshotRow);
+            } else {
+                this.stateOrdinals[row] = geometry.getNode(row).getState().ordinal();
+                sectionIdentifier = geometry.getNode(row).getCellSection().getIdentifier();
+                this.observed[row] = geometry.getNode(row).isObserved();
+            }
+            Integer sectionIndex = this.sectionIndices.get(sectionIdentifier);
+            if (sectionIndex == null) {
+                sectionIndex = colors.size();
+                this.sectionIndices.put(sectionIdentifier, sectionIndex);
+                colors.add(BioGraphRenderOptions.getSectionColor(sectionIdentifier));
+            }
+            this.sectionColorIndices[row] = sectionIndex;
+        }
+        this.sectionColors = colors.toArray(new Color[colors.size()]);
+    }
+
+    /**
+     * Determines whether the attributes are still valid for the given geometry, i.e. the geometry refers to the same
+     * nodes and no section color has been changed since.
+     *
+     * @param geometry The geometry.
+     * @return True, if the attributes can be used to draw the geometry.
+     */
+    public boolean matches(GraphGeometry geometry) {
+        return this.geometry.hasSameNodes(geometry) &&
+                this.sectionColorVersion == ColorManager.getInstance().getSectionColorVersion();
+    }
+
+    /**
+     * Determines whether the attributes are still valid for the given geometry and the displayed snapshot, i.e. they
+     * are valid for the geometry and every node of the snapshot has the state, the section and the observation flag it
+     * has been read with.
+     *
+     * @param geometry The geometry.
+     * @param snapshot The displayed snapshot, may be null.
+     * @return True, if the attributes can be used to draw the snapshot.
+     */
+    public boolean matches(GraphGeometry geometry, SimulationSnapshot snapshot) {
+        if (!matches(geometry)) {
+            return false;
+        }
+        if (snapshot == null) {
+            return !this.snapshotBased;
+        }
+        // the index of the color of every section of the snapshot, resolved on first use
+        int[] sectionColorIndices = new int[snapshot.getSectionCount()];
+        Arrays.fill(sectionColorIndices, UNRESOLVED_SECTION);
+        for (int row = 0; row < this.stateOrdinals.length; row++) {
+            int snapshotRow = snapshot.getRow(this.geometry.getIdentifier(row));
+            if (snapshotRow == SimulationSnapshot.UNKNOWN_ROW) {
+                continue;
+            }
+            if (this.stateOrdinals[row] != snapshot.getStateOrdinal(snapshotRow) ||
+                    this.observed[row] != snapshot.isObserved(snapshotRow)) {
+                return false;
+            }
+            int sectionIndex = snapshot.getSectionIndex(snapshotRow);
+            if (sectionColorIndices[sectionIndex] == UNRESOLVED_SECTION) {
+                Integer colorIndex = this.sectionIndices.get(snapshot.getSectionIdentifier(sectionIndex));
+                sectionColorIndices[sectionIndex] = colorIndex != null ? colorIndex : UNKNOWN_SECTION;
+            }
+            if (sectionColorIndices[sectionIndex] != this.sectionColorIndices[row]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public GraphGeometry getGeometry() {
+        return this.geometry;
+    }
+
+    public int getStateOrdinal(int row) {
+        return this.stateOrdinals[row];
+    }
+
+    public int getSectionColorIndex(int row) {
+        return this.sectionColorIndices[row];
+    }
+
+    public boolean isObserved(int row) {
+        return this.observed[row];
+    }
+
+    public Color getStateColor(int row) {
+        return this.stateColors[this.stateOrdinals[row]];
+    }
+
+    public Color getSectionColor(int row) {
+        return this.sectionColors[this.sectionColorIndices[row]];
+    }
+
+    public boolean isMembrane(int row) {
+        return this.stateOrdinals[row] == NodeState.MEMBRANE.ordinal();
+    }
+
+    /**
+     * Determines whether both nodes of the given edge are membrane nodes. Edges to nodes that are not part of the
+     * geometry are looked up in the graph.
+     *
+     * @param edge The edge.
+     * @return True, if the edge connects two membrane nodes.
+     */
+    public boolean isMembraneEdge(int edge) {
+        int source = this.geometry.getSource(edge);
+        int target = this.geometry.getTarget(edge);
+        if (source != GraphGeometry.UNKNOWN_ROW && target != GraphGeometry.UNKNOWN_ROW) {
+            return isMembrane(source) && isMembrane(target);
+        }
+        AutomatonEdge automatonEdge = this.geometry.getEdge(edge);
+        return automatonEdge.getSource().getState() == NodeState.MEMBRANE &&
+                automatonEdge.getTarget().getState() == NodeState.MEMBRANE;
+    }
+
+}
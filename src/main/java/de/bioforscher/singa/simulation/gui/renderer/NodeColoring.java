@@ -0,0 +1,183 @@
+package de.bioforscher.singa.simulation.gui.renderer;
+
+import de.bioforscher.singa.chemistry.descriptive.entities.ChemicalEntity;
+import de.bioforscher.singa.simulation.gui.snapshots.SimulationSnapshot;
+import de.bioforscher.singa.simulation.model.graphs.AutomatonEdge;
+import javafx.scene.paint.Color;
+
+/**
+ * An immutable copy of everything {@link BioGraphRenderOptions} colors nodes with: the rendering mode, the highlighted
+ * entity, the scaling, the concentration range and the {@link ColorLookupTable}. Frames that are drawn on other threads
+ * capture the coloring together with the camera, such that changes of the options on the JavaFX Application Thread do
+ * not affect frames that are already being drawn. The scaled bounds of the range are computed once per coloring
+ * instead of once per node, and the concentrations of the highlighted entity are resolved once per frame with
+ * {@link #getConcentrations(SimulationSnapshot)}.
+ *
+ * @author cl
+ */
+public final class NodeColoring {
+
+    /**
+     * The number of decades shown by a logarithmic scale, if the lower bound of the range is not positive.
+     */
+    private static final int LOGARITHMIC_DECADES = 6;
+
+    private final RenderingMode renderingMode;
+    private final ChemicalEntity<?> entity;
+    private final ConcentrationScaling concentrationScaling;
+    private final boolean automaticRange;
+    private final double minimalConcentration;
+    private final double maximalConcentration;
+    private final ColorLookupTable nodeColors;
+    private final double scaledLowerBound;
+    private final double scaledSpan;
+
+    NodeColoring(RenderingMode renderingMode, ChemicalEntity<?> entity, ConcentrationScaling concentrationScaling,
+                 boolean automaticRange, double minimalConcentration, double maximalConcentration,
+                 ColorLookupTable nodeColors) {
+        this.renderingMode = renderingMode;
+        this.entity = entity;
+        this.concentrationScaling = concentrationScaling;
+        this.automaticRange = automaticRange;
+        this.minimalConcentration = minimalConcentration;
+        this.maximalConcentration = maximalConcentration;
+        this.nodeColors = nodeColors;
+        this.scaledLowerBound = scale(concentrationScaling,
+                lowerBound(concentrationScaling, minimalConcentration, maximalConcentration));
+        this.scaledSpan = scale(concentrationScaling, maximalConcentration) - this.scaledLowerBound;
+    }
+
+    public RenderingMode getRenderingMode() {
+        return this.renderingMode;
+    }
+
+    public ChemicalEntity<?> getEntity() {
+        return this.entity;
+    }
+
+    public ConcentrationScaling getConcentrationScaling() {
+        return this.concentrationScaling;
+    }
+
+    public boolean isAutomaticRange() {
+        return this.automaticRange;
+    }
+
+    public double getMinimalConcentration() {
+        return this.minimalConcentration;
+    }
+
+    public double getMaximalConcentration() {
+        return this.maximalConcentration;
+    }
+
+    public ColorLookupTable getNodeColors() {
+        return this.nodeColors;
+    }
+
+    /**
+     * Returns the index of the color in {@link #getNodeColors()} the given concentration is shown with.
+     *
+     * @param concentration The concentration.
+     * @return The index.
+     */
+    public int getColorIndex(double concentration) {
+        return this.nodeColors.getIndex((scale(this.concentrationScaling, concentration) - this.scaledLowerBound) /
+                this.scaledSpan);
+    }
+
+    public Color getNodeColor(int colorIndex) {
+        return this.nodeColors.getColor(colorIndex);
+    }
+
+    /**
+     * Returns the concentrations of the highlighted entity in the snapshot, indexed by the rows of the snapshot, such
+     * that the entity is only looked up once per frame.
+     *
+     * @param snapshot The snapshot, may be null.
+     * @return The concentrations or null, if nodes are not colored by concentration or the snapshot does not contain
+     * the entity.
+     */
+    public double[] getConcentrations(SimulationSnapshot snapshot) {
+        if (this.renderingMode != RenderingMode.ENTITY_BASED || this.entity == null || snapshot == null) {
+            return null;
+        }
+        int entityIndex = snapshot.getEntityIndex(this.entity);
+        return entityIndex >= 0 ? snapshot.getConcentrations(entityIndex) : null;
+    }
+
+    /**
+     * Returns the concentration of the highlighted entity in the node in the given row of the geometry, as stored in
+     * the snapshot. The live node is never read, such that the coloring can be used on any thread.
+     *
+     * @param geometry The geometry.
+     * @param row The row of the node.
+     * @param snapshot The snapshot, may be null.
+     * @param concentrations The concentrations resolved with {@link #getConcentrations(SimulationSnapshot)}.
+     * @return The concentration or {@link Double#NaN}, if the snapshot does not contain the node or the entity.
+     */
+    public double getConcentration(GraphGeometry geometry, int row, SimulationSnapshot snapshot,
+                                   double[] concentrations) {
+        if (concentrations != null) {
+            int snapshotRow = snapshot.getRow(geometry.getIdentifier(row));
+            if (snapshotRow != SimulationSnapshot.UNKNOWN_ROW) {
+                return concentrations[snapshotRow];
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Returns the color the node in the given row is filled with. States and compartments are read from the
+     * precomputed attributes, concentrations from the snapshot. Nodes whose concentration is not part of the snapshot
+     * are drawn gray.
+     *
+     * @param attributes The attributes of the nodes.
+     * @param row The row of the node.
+     * @param snapshot The snapshot concentrations are read from, may be null.
+     * @param concentrations The concentrations resolved with {@link #getConcentrations(SimulationSnapshot)}.
+     * @return The color.
+     */
+    public Color getNodeFill(NodeAttributes attributes, int row, SimulationSnapshot snapshot,
+                             double[] concentrations) {
+        switch (this.renderingMode) {
+            case ENTITY_BASED: {
+                if (this.entity == null) {
+                    return Color.GRAY;
+                }
+                double concentration = getConcentration(attributes.getGeometry(), row, snapshot, concentrations);
+                return Double.isNaN(concentration) ? Color.GRAY : getNodeColor(getColorIndex(concentration));
+            }
+            case COMPARTMENT_BASED: {
+                return attributes.getSectionColor(row);
+            }
+            default: {
+                return attributes.getStateColor(row);
+            }
+        }
+    }
+
+    public Color getEdgeColor(AutomatonEdge edge) {
+        return Color.LIGHTGREY;
+    }
+
+    /**
+     * Returns the concentration mapped to the first color. The lower bound of a logarithmic scale has to be positive,
+     * a range starting at zero shows the given number of decades below the upper bound.
+     */
+    static double lowerBound(ConcentrationScaling concentrationScaling, double minimalConcentration,
+                             double maximalConcentration) {
+        if (concentrationScaling == ConcentrationScaling.LOGARITHMIC && !(minimalConcentration > 0)) {
+            return maximalConcentration * Math.pow(10, -LOGARITHMIC_DECADES);
+        }
+        return minimalConcentration;
+    }
+
+    static double scale(ConcentrationScaling concentrationScaling, double concentration) {
+        if (concentrationScaling == ConcentrationScaling.LOGARITHMIC) {
+            return concentration > 0 ? Math.log10(concentration) : Double.NEGATIVE_INFINITY;
+        }
+        return concentration;
+    }
+
+}
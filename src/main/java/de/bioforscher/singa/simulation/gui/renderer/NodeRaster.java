@@ -0,0 +1,429 @@
+package de.bioforscher.singa.simulation.gui.renderer;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Rasterizes nodes as fixed size sprites into a transparent pixel buffer that is drawn onto the canvas with a single
+ * image, instead of issuing fill and stroke calls for every node. The sprites are an anti-aliased disk for the node and
+ * a ring that marks observed nodes. Nodes can either be drawn into the cleared buffer, or into previously cleared areas
+ * only, such that single nodes can be repainted. Nodes that are too small to be drawn can be aggregated into tiles
+ * instead, and edges can be drawn as lines, such that a whole frame can be rasterized without a graphics context (e.g.
+ * on a background thread, see {@link #swapPixels(int[])}).
+ *
+ * @author cl
+ */
+public class NodeRaster {
+
+    private static final PixelFormat<IntBuffer> PIXEL_FORMAT = PixelFormat.getIntArgbPreInstance();
+    private static final int RING_COLOR = premultiply(Color.BLUEVIOLET);
+
+    private int width;
+    private int height;
+    private int[] pixels = new int[0];
+    private boolean[] clipMask = new boolean[0];
+    private WritableImage image;
+
+    private double diameter = Double.NaN;
+    private double ringWidth = Double.NaN;
+    private int spriteSize;
+    private float[] diskCoverage;
+    private float[] ringCoverage;
+
+    private int tileSize;
+    private int tileColumns;
+    private int tileRows;
+    private int[] tileCounts = new int[0];
+    private float[] tileReds = new float[0];
+    private float[] tileGreens = new float[0];
+    private float[] tileBlues = new float[0];
+
+    private boolean clipped;
+    private int modifiedMinimalX;
+    private int modifiedMinimalY;
+    private int modifiedMaximalX;
+    private int modifiedMaximalY;
+
+    /**
+     * Prepares the buffer and the sprites for the given size of the canvas and the given node diameter.
+     *
+     * @param width The width of the canvas.
+     * @param height The height of the canvas.
+     * @param diameter The diameter of the nodes.
+     * @param ringWidth The width of the ring around observed nodes.
+     */
+    public void prepare(double width, double height, double diameter, double ringWidth) {
+        int pixelWidth = Math.max((int) Math.ceil(width), 1);
+        int pixelHeight = Math.max((int) Math.ceil(height), 1);
+        if (pixelWidth != this.width || pixelHeight != this.height) {
+            this.width = pixelWidth;
+            this.height = pixelHeight;
+            this.pixels = new int[pixelWidth * pixelHeight];
+            this.clipMask = new boolean[pixelWidth * pixelHeight];
+            // the image is only created, once the buffer is drawn on a graphics context
+            this.image = null;
+            this.clipped = false;
+            resetModifiedArea();
+        }
+        if (diameter != this.diameter || ringWidth != this.ringWidth) {
+            this.diameter = diameter;
+            this.ringWidth = ringWidth;
+            prepareSprites();
+        }
+    }
+
+    private void prepareSprites() {
+        double radius = this.diameter / 2.0;
+        this.spriteSize = (int) Math.ceil(this.diameter + this.ringWidth) + 2;
+        this.diskCoverage = new float[this.spriteSize * this.spriteSize];
+        this.ringCoverage = new float[this.spriteSize * this.spriteSize];
+        double center = this.spriteSize / 2.0;
+        for (int spriteY = 0; spriteY < this.spriteSize; spriteY++) {
+            for (int spriteX = 0; spriteX < this.spriteSize; spriteX++) {
+                // distance of the center of the pixel
+                double distance = Math.hypot(spriteX + 0.5 - center, spriteY + 0.5 - center);
+                int index = spriteY * this.spriteSize + spriteX;
+                this.diskCoverage[index] = (float) clamp(radius + 0.5 - distance);
+                this.ringCoverage[index] = (float) clamp(this.ringWidth / 2.0 + 0.5 - Math.abs(distance - radius));
+            }
+        }
+    }
+
+    /**
+     * Clears the whole buffer. Nodes are drawn without restrictions afterwards.
+     */
+    public void clear() {
+        Arrays.fill(this.pixels, 0);
+        this.clipped = false;
+        this.modifiedMinimalX = 0;
+        this.modifiedMinimalY = 0;
+        this.modifiedMaximalX = this.width;
+        this.modifiedMaximalY = this.height;
+    }
+
+    /**
+     * Clears the given area. After the first area has been cleared, nodes are only drawn into cleared areas, until the
+     * buffer is drawn.
+     *
+     * @param x The left bound.
+     * @param y The upper bound.
+     * @param width The width.
+     * @param height The height.
+     */
+    public void clear(double x, double y, double width, double height) {
+        int fromX = clampX((int) Math.floor(x));
+        int fromY = clampY((int) Math.floor(y));
+        int toX = clampX((int) Math.ceil(x + width));
+        int toY = clampY((int) Math.ceil(y + height));
+        for (int pixelY = fromY; pixelY < toY; pixelY++) {
+            int offset = pixelY * this.width;
+            Arrays.fill(this.pixels, offset + fromX, offset + toX, 0);
+            Arrays.fill(this.clipMask, offset + fromX, offset + toX, true);
+        }
+        this.clipped = true;
+        includeModifiedArea(fromX, fromY, toX, toY);
+    }
+
+    /**
+     * Draws a node centered at the given position.
+     *
+     * @param x The x coordinate of the center.
+     * @param y The y coordinate of the center.
+     * @param fill The color of the node.
+     * @param observed True, if the ring marking observed nodes should be drawn.
+     */
+    public void drawNode(double x, double y, Color fill, boolean observed) {
+        int left = (int) Math.round(x - this.spriteSize / 2.0);
+        int top = (int) Math.round(y - this.spriteSize / 2.0);
+        int color = premultiply(fill);
+        drawSprite(this.diskCoverage, left, top, color);
+        if (observed) {
+            drawSprite(this.ringCoverage, left, top, RING_COLOR);
+        }
+    }
+
+    /**
+     * Fills every pixel with the color of the cell it belongs to. The whole buffer is replaced.
+     *
+     * @param cells The row of the cell of every pixel or {@link CellMap#EMPTY}, with the size of the buffer.
+     * @param colors The premultiplied color of every row.
+     */
+    public void fillCells(int[] cells, int[] colors) {
+        if (cells.length != this.pixels.length) {
+            throw new IllegalArgumentException("The cells have to cover the buffer.");
+        }
+        for (int index = 0; index < cells.length; index++) {
+            int row = cells[index];
+            this.pixels[index] = row == CellMap.EMPTY ? 0 : colors[row];
+        }
+        this.clipped = false;
+        this.modifiedMinimalX = 0;
+        this.modifiedMinimalY = 0;
+        this.modifiedMaximalX = this.width;
+        this.modifiedMaximalY = this.height;
+    }
+
+    /**
+     * Draws a line with a width of one pixel.
+     *
+     * @param fromX The x coordinate of the start.
+     * @param fromY The y coordinate of the start.
+     * @param toX The x coordinate of the end.
+     * @param toY The y coordinate of the end.
+     * @param color The color.
+     */
+    public void drawLine(double fromX, double fromY, double toX, double toY, Color color) {
+        int x = (int) Math.round(fromX);
+        int y = (int) Math.round(fromY);
+        int endX = (int) Math.round(toX);
+        int endY = (int) Math.round(toY);
+        if ((x < 0 && endX < 0) || (y < 0 && endY < 0) || (x >= this.width && endX >= this.width) ||
+                (y >= this.height && endY >= this.height)) {
+            return;
+        }
+        int premultipliedColor = premultiply(color);
+        int deltaX = Math.abs(endX - x);
+        int deltaY = -Math.abs(endY - y);
+        int stepX = x < endX ? 1 : -1;
+        int stepY = y < endY ? 1 : -1;
+        int error = deltaX + deltaY;
+        while (true) {
+            if (x >= 0 && x < this.width && y >= 0 && y < this.height) {
+                int pixel = y * this.width + x;
+                if (!this.clipped || this.clipMask[pixel]) {
+                    this.pixels[pixel] = blend(this.pixels[pixel], premultipliedColor, 1f);
+                }
+            }
+            if (x == endX && y == endY) {
+                return;
+            }
+            int doubledError = 2 * error;
+            if (doubledError >= deltaY) {
+                error += deltaY;
+                x += stepX;
+            }
+            if (doubledError <= deltaX) {
+                error += deltaX;
+                y += stepY;
+            }
+        }
+    }
+
+    /**
+     * Starts to aggregate nodes into square tiles of the given size.
+     *
+     * @param tileSize The edge length of the tiles in pixels.
+     */
+    public void beginTiles(int tileSize) {
+        this.tileSize = tileSize;
+        this.tileColumns = (this.width + tileSize - 1) / tileSize;
+        this.tileRows = (this.height + tileSize - 1) / tileSize;
+        int tileCount = this.tileColumns * this.tileRows;
+        if (this.tileCounts.length < tileCount) {
+            this.tileCounts = new int[tileCount];
+            this.tileReds = new float[tileCount];
+            this.tileGreens = new float[tileCount];
+            this.tileBlues = new float[tileCount];
+        } else {
+            Arrays.fill(this.tileCounts, 0, tileCount, 0);
+            Arrays.fill(this.tileReds, 0, tileCount, 0);
+            Arrays.fill(this.tileGreens, 0, tileCount, 0);
+            Arrays.fill(this.tileBlues, 0, tileCount, 0);
+        }
+    }
+
+    /**
+     * Adds a node to the tile that contains the given position.
+     *
+     * @param x The x coordinate of the node.
+     * @param y The y coordinate of the node.
+     * @param fill The color of the node.
+     */
+    public void addToTile(double x, double y, Color fill) {
+        if (x < 0 || y < 0) {
+            return;
+        }
+        int column = (int) (x / this.tileSize);
+        int row = (int) (y / this.tileSize);
+        if (column >= this.tileColumns || row >= this.tileRows) {
+            return;
+        }
+        int tile = row * this.tileColumns + column;
+        this.tileCounts[tile]++;
+        this.tileReds[tile] += fill.getRed();
+        this.tileGreens[tile] += fill.getGreen();
+        this.tileBlues[tile] += fill.getBlue();
+    }
+
+    /**
+     * Fills every tile that contains nodes with the mean color of its nodes. Tiles become more opaque the more nodes
+     * they contain.
+     *
+     * @param saturation The number of nodes from which on tiles are opaque.
+     */
+    public void fillTiles(int saturation) {
+        for (int tile = 0; tile < this.tileColumns * this.tileRows; tile++) {
+            int count = this.tileCounts[tile];
+            if (count > 0) {
+                float opacity = Math.min(1f, (float) count / saturation);
+                fillTile((tile % this.tileColumns) * this.tileSize, (tile / this.tileColumns) * this.tileSize,
+                        this.tileSize, this.tileReds[tile] / count, this.tileGreens[tile] / count,
+                        this.tileBlues[tile] / count, opacity);
+            }
+        }
+    }
+
+    private void fillTile(int x, int y, int size, float red, float green, float blue, float opacity) {
+        int color = Math.round(opacity * 255) << 24 | Math.round(red * opacity * 255) << 16 |
+                Math.round(green * opacity * 255) << 8 | Math.round(blue * opacity * 255);
+        int toX = clampX(x + size);
+        int toY = clampY(y + size);
+        for (int pixelY = clampY(y); pixelY < toY; pixelY++) {
+            int offset = pixelY * this.width;
+            for (int pixelX = clampX(x); pixelX < toX; pixelX++) {
+                if (!this.clipped || this.clipMask[offset + pixelX]) {
+                    this.pixels[offset + pixelX] = color;
+                }
+            }
+        }
+    }
+
+    private void drawSprite(float[] coverage, int left, int top, int color) {
+        int fromY = Math.max(0, -top);
+        int toY = Math.min(this.spriteSize, this.height - top);
+        int fromX = Math.max(0, -left);
+        int toX = Math.min(this.spriteSize, this.width - left);
+        for (int spriteY = fromY; spriteY < toY; spriteY++) {
+            int pixel = (top + spriteY) * this.width + left + fromX;
+            int sprite = spriteY * this.spriteSize + fromX;
+            for (int spriteX = fromX; spriteX < toX; spriteX++, pixel++, sprite++) {
+                float pixelCoverage = coverage[sprite];
+                if (pixelCoverage <= 0 || (this.clipped && !this.clipMask[pixel])) {
+                    continue;
+                }
+                if (pixelCoverage >= 1 && (color >>> 24) == 0xFF) {
+                    this.pixels[pixel] = color;
+                } else {
+                    this.pixels[pixel] = blend(this.pixels[pixel], color, pixelCoverage);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws the buffer onto the graphics context. Only the modified part of the buffer is transferred to the image,
+     * areas cleared before are released afterwards.
+     *
+     * @param graphicsContext The graphics context.
+     */
+    public void draw(GraphicsContext graphicsContext) {
+        if (this.image == null) {
+            this.image = new WritableImage(this.width, this.height);
+            this.modifiedMinimalX = 0;
+            this.modifiedMinimalY = 0;
+            this.modifiedMaximalX = this.width;
+            this.modifiedMaximalY = this.height;
+        }
+        if (this.modifiedMaximalX > this.modifiedMinimalX && this.modifiedMaximalY > this.modifiedMinimalY) {
+            int modifiedWidth = this.modifiedMaximalX - this.modifiedMinimalX;
+            int modifiedHeight = this.modifiedMaximalY - this.modifiedMinimalY;
+            this.image.getPixelWriter().setPixels(this.modifiedMinimalX, this.modifiedMinimalY, modifiedWidth,
+                    modifiedHeight, PIXEL_FORMAT, this.pixels, this.modifiedMinimalY * this.width + this.modifiedMinimalX,
+                    this.width);
+            if (this.clipped) {
+                for (int pixelY = this.modifiedMinimalY; pixelY < this.modifiedMaximalY; pixelY++) {
+                    int offset = pixelY * this.width;
+                    Arrays.fill(this.clipMask, offset + this.modifiedMinimalX, offset + this.modifiedMaximalX, false);
+                }
+            }
+        }
+        graphicsContext.drawImage(this.image, 0, 0);
+        this.clipped = false;
+        resetModifiedArea();
+    }
+
+    /**
+     * Exchanges the pixel buffer with the given array of the same size and returns the former buffer, such that a
+     * finished frame can be handed over without copying it. The content of the new buffer is undefined until the
+     * buffer is cleared.
+     *
+     * @param replacement The new buffer.
+     * @return The former buffer with the rasterized frame.
+     */
+    public int[] swapPixels(int[] replacement) {
+        if (replacement.length != this.pixels.length) {
+            throw new IllegalArgumentException("The replacement has to be of the same size as the buffer.");
+        }
+        int[] former = this.pixels;
+        this.pixels = replacement;
+        return former;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    private void resetModifiedArea() {
+        this.modifiedMinimalX = Integer.MAX_VALUE;
+        this.modifiedMinimalY = Integer.MAX_VALUE;
+        this.modifiedMaximalX = Integer.MIN_VALUE;
+        this.modifiedMaximalY = Integer.MIN_VALUE;
+    }
+
+    private void includeModifiedArea(int fromX, int fromY, int toX, int toY) {
+        this.modifiedMinimalX = Math.min(this.modifiedMinimalX, fromX);
+        this.modifiedMinimalY = Math.min(this.modifiedMinimalY, fromY);
+        this.modifiedMaximalX = Math.max(this.modifiedMaximalX, toX);
+        this.modifiedMaximalY = Math.max(this.modifiedMaximalY, toY);
+    }
+
+    private int clampX(int x) {
+        return x < 0 ? 0 : x > this.width ? this.width : x;
+    }
+
+    private int clampY(int y) {
+        return y < 0 ? 0 : y > this.height ? this.height : y;
+    }
+
+    private static double clamp(double value) {
+        return value < 0 ? 0 : value > 1 ? 1 : value;
+    }
+
+    /**
+     * Converts the color to a premultiplied ARGB value, as required by the pixel format of the image.
+     *
+     * @param color The color.
+     * @return The premultiplied ARGB value.
+     */
+    static int premultiply(Color color) {
+        double opacity = color.getOpacity();
+        int alpha = (int) Math.round(opacity * 255);
+        int red = (int) Math.round(color.getRed() * opacity * 255);
+        int green = (int) Math.round(color.getGreen() * opacity * 255);
+        int blue = (int) Math.round(color.getBlue() * opacity * 255);
+        return alpha << 24 | red << 16 | green << 8 | blue;
+    }
+
+    /**
+     * Composes the source color with the given coverage over the destination color (both premultiplied).
+     */
+    private static int blend(int destination, int source, float coverage) {
+        float sourceAlpha = (source >>> 24) * coverage / 255f;
+        float remaining = 1f - sourceAlpha;
+        int alpha = Math.round((source >>> 24) * coverage + (destination >>> 24) * remaining);
+        int red = Math.round((source >>> 16 & 0xFF) * coverage + (destination >>> 16 & 0xFF) * remaining);
+        int green = Math.round((source >>> 8 & 0xFF) * coverage + (destination >>> 8 & 0xFF) * remaining);
+        int blue = Math.round((source & 0xFF) * coverage + (destination & 0xFF) * remaining);
+        return Math.min(alpha, 255) << 24 | Math.min(red, 255) << 16 | Math.min(green, 255) << 8 | Math.min(blue, 255);
+    }
+
+}
@@ -0,0 +1,24 @@
+package de.bioforscher.singa.simulation.gui.renderer;
+
+/**
+ * The shape nodes are drawn with: as points connected by edges, or as the cells of the Voronoi tessellation of the
+ * node positions, such that concentrations appear as a continuous field.
+ *
+ * @author cl
+ */
+public enum NodeStyle {
+
+    POINTS("Points"),
+    CELLS("Voronoi cells");
+
+    private final String representativeName;
+
+    NodeStyle(String representativeName) {
+        this.representativeName = representativeName;
+    }
+
+    public String getRepresentativeName() {
+        return this.representativeName;
+    }
+
+}
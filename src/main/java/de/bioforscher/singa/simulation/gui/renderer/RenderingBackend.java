@@ -0,0 +1,25 @@
+package de.bioforscher.singa.simulation.gui.renderer;
+
+/**
+ * The way nodes are drawn: as vector shapes on the graphics context, as sprites rasterized into a pixel buffer, or
+ * depending on the size of the graph.
+ *
+ * @author cl
+ */
+public enum RenderingBackend {
+
+    VECTOR("Vector"),
+    RASTER("Raster"),
+    AUTOMATIC("Automatic");
+
+    private final String representativeName;
+
+    RenderingBackend(String representativeName) {
+        this.representativeName = representativeName;
+    }
+
+    public String getRepresentativeName() {
+        return this.representativeName;
+    }
+
+}
@@ -0,0 +1,192 @@
+package de.bioforscher.singa.simulation.gui.renderer;
+
+import de.bioforscher.singa.chemistry.descriptive.entities.ChemicalEntity;
+import de.bioforscher.singa.simulation.gui.snapshots.SimulationSnapshot;
+import de.bioforscher.singa.simulation.gui.spatial.NodeIndex;
+import de.bioforscher.singa.simulation.model.graphs.AutomatonGraph;
+import javafx.scene.canvas.GraphicsContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Draws the same graph once per entity into canvases of the same size, as {@link NodeStyle#CELLS Voronoi cells}
+ * colored by the concentration of the entity. Everything that only depends on the positions of the nodes is shared by
+ * all canvases: the {@link GraphGeometry}, the view fitting the graph into a canvas and the {@link CellMap}. A frame
+ * reads the concentrations of all entities from the snapshot in a single pass over the nodes and then fills the pixels
+ * of every canvas from the shared cell map, so the cost of a frame grows with the number of pixels rather than with
+ * the number of entities times the cost of drawing the graph.
+ * <p>
+ * Every entity has its own concentration range, the scaling, the automatic range and the colors are taken from the
+ * {@link NodeColoring} passed with every frame. If the range is not automatic, all entities share the range of the
+ * coloring, such that colors can be compared.
+ *
+ * @author cl
+ */
+public class SmallMultiplesRenderer {
+
+    private final List<Panel> panels;
+    private final Camera camera;
+    private GraphGeometry geometry;
+    private NodeIndex nodeIndex;
+    private CellMap cellMap;
+    private int fittedWidth;
+    private int fittedHeight;
+    private int[] snapshotRows;
+
+    public SmallMultiplesRenderer() {
+        this.panels = new ArrayList<>();
+        this.camera = new Camera();
+    }
+
+    /**
+     * Sets the entities, one canvas is drawn per entity.
+     *
+     * @param entities The entities.
+     */
+    public void setEntities(List<ChemicalEntity<?>> entities) {
+        this.panels.clear();
+        for (ChemicalEntity<?> entity : entities) {
+            this.panels.add(new Panel(entity));
+        }
+    }
+
+    public int getEntityCount() {
+        return this.panels.size();
+    }
+
+    /**
+     * Draws the concentrations of the snapshot. The canvases have to be of the same size and in the order of the
+     * entities.
+     *
+     * @param snapshot The snapshot.
+     * @param coloring The coloring the scaling, the range and the colors are taken from.
+     * @param graphicsContexts The graphics contexts of the canvases.
+     */
+    public void render(SimulationSnapshot snapshot, NodeColoring coloring, List<GraphicsContext> graphicsContexts) {
+        if (graphicsContexts.size() != this.panels.size()) {
+            throw new IllegalArgumentException("A canvas is required for every entity.");
+        }
+        if (this.panels.isEmpty()) {
+            return;
+        }
+        int width = (int) graphicsContexts.get(0).getCanvas().getWidth();
+        int height = (int) graphicsContexts.get(0).getCanvas().getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        prepareCells(snapshot.getGraph(), width, height);
+        readConcentrations(snapshot, coloring);
+        for (int index = 0; index < this.panels.size(); index++) {
+            Panel panel = this.panels.get(index);
+            GraphicsContext graphicsContext = graphicsContexts.get(index);
+            panel.raster.prepare(width, height, 1, 1);
+            panel.raster.fillCells(this.cellMap.getCells(), panel.colors);
+            graphicsContext.clearRect(0, 0, width, height);
+            panel.raster.draw(graphicsContext);
+        }
+    }
+
+    /**
+     * Rebuilds the geometry, the view and the cell map, if the graph, its nodes or the size of the canvases changed.
+     */
+    private void prepareCells(AutomatonGraph graph, int width, int height) {
+        if (this.geometry == null || !this.geometry.describes(graph)) {
+            this.geometry = new GraphGeometry(graph);
+            this.nodeIndex = new NodeIndex(this.geometry);
+            this.fittedWidth = 0;
+        }
+        double edgeLength = this.geometry.getMeanEdgeLength();
+        if (width != this.fittedWidth || height != this.fittedHeight) {
+            this.camera.fit(this.geometry, Double.isNaN(edgeLength) ? 0 : edgeLength / 2.0, width, height);
+            this.fittedWidth = width;
+            this.fittedHeight = height;
+        }
+        // cover every pixel between the nodes, even if they are smaller than a pixel
+        double maximalDistance = Math.max(Double.isNaN(edgeLength) ? 0 : edgeLength *
+                BioGraphRenderer.CELL_RADIUS_FRACTION, 1.0 / this.camera.getScale());
+        if (this.cellMap == null || !this.cellMap.matches(this.geometry, this.camera, width, height, maximalDistance)) {
+            this.cellMap = new CellMap(this.nodeIndex, this.camera, width, height, maximalDistance);
+        }
+    }
+
+    /**
+     * Determines the color of every node for every entity in one pass over the nodes.
+     */
+    private void readConcentrations(SimulationSnapshot snapshot, NodeColoring coloring) {
+        int nodeCount = this.geometry.getNodeCount();
+        if (this.snapshotRows == null || this.snapshotRows.length < nodeCount) {
+            this.snapshotRows = new int[nodeCount];
+        }
+        for (int row = 0; row < nodeCount; row++) {
+            this.snapshotRows[row] = snapshot.getRow(this.geometry.getIdentifier(row));
+        }
+        for (Panel panel : this.panels) {
+            panel.prepare(snapshot, coloring, nodeCount);
+        }
+        for (int row = 0; row < nodeCount; row++) {
+            int snapshotRow = this.snapshotRows[row];
+            for (Panel panel : this.panels) {
+                double concentration = snapshotRow == SimulationSnapshot.UNKNOWN_ROW || panel.entityIndex < 0 ? 0 :
+                        panel.concentrations[snapshotRow];
+                panel.colors[row] = panel.palette[panel.coloring.getColorIndex(concentration)];
+            }
+        }
+    }
+
+    /**
+     * The state of the canvas of a single entity.
+     */
+    private class Panel {
+
+        private final ChemicalEntity<?> entity;
+        private final BioGraphRenderOptions options;
+        private final NodeRaster raster;
+        private NodeColoring coloring;
+        private ColorLookupTable paletteColors;
+        private int[] palette;
+        private int entityIndex;
+        private double[] concentrations;
+        private int[] colors;
+
+        Panel(ChemicalEntity<?> entity) {
+            this.entity = entity;
+            // only keeps the range of the entity
+            this.options = new BioGraphRenderOptions();
+            this.raster = new NodeRaster();
+        }
+
+        /**
+         * Takes over the scaling and the colors of the shared coloring and adjusts the range to the snapshot.
+         */
+        void prepare(SimulationSnapshot snapshot, NodeColoring sharedColoring, int nodeCount) {
+            if (this.paletteColors != sharedColoring.getNodeColors()) {
+                this.paletteColors = sharedColoring.getNodeColors();
+                this.palette = new int[this.paletteColors.getSize()];
+                for (int index = 0; index < this.palette.length; index++) {
+                    this.palette[index] = NodeRaster.premultiply(this.paletteColors.getColor(index));
+                }
+            }
+            this.options.setConcentrationScaling(sharedColoring.getConcentrationScaling());
+            this.options.setAutomaticRange(sharedColoring.isAutomaticRange());
+            this.entityIndex = snapshot.getEntityIndex(this.entity);
+            this.concentrations = this.entityIndex >= 0 ? snapshot.getConcentrations(this.entityIndex) : null;
+            if (!sharedColoring.isAutomaticRange()) {
+                this.options.setConcentrationRange(sharedColoring.getMinimalConcentration(),
+                        sharedColoring.getMaximalConcentration());
+            } else if (this.entityIndex >= 0) {
+                this.options.adjustConcentrationRange(snapshot.getMinimalConcentration(this.entityIndex),
+                        snapshot.getMaximalConcentration(this.entityIndex),
+                        snapshot.getMinimalPositiveConcentration(this.entityIndex));
+            }
+            this.coloring = new NodeColoring(RenderingMode.ENTITY_BASED, this.entity,
+                    this.options.getConcentrationScaling(), this.options.isAutomaticRange(),
+                    this.options.getMinimalConcentration(), this.options.getMaximalConcentration(), this.paletteColors);
+            if (this.colors == null || this.colors.length < nodeCount) {
+                this.colors = new int[nodeCount];
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,451 @@
+package de.bioforscher.singa.simulation.gui.snapshots;
+
+import de.bioforscher.singa.chemistry.descriptive.entities.ChemicalEntity;
+import de.bioforscher.singa.simulation.model.graphs.AutomatonGraph;
+import de.bioforscher.singa.simulation.model.graphs.AutomatonNode;
+import de.bioforscher.singa.simulation.modules.model.Simulation;
+
+import javax.measure.Unit;
+import javax.measure.quantity.Time;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A copy of the state of a simulation at the boundary between two epochs, stored in primitive arrays. Every node of
+ * the graph is assigned to a row, the concentrations are stored per entity with one value per row. The range of the
+ * concentrations of every entity is tracked while they are copied. Snapshots are
+ * reference counted and recycled by the {@link SnapshotPool} they were acquired from: every consumer that keeps a
+ * snapshot beyond the call it was received in has to {@link #retain()} and later {@link #release()} it.
+ *
+ * @author cl
+ */
+public class SimulationSnapshot {
+
+    public static final int UNKNOWN_ROW = -1;
+
+    private final SnapshotPool pool;
+    private final AtomicInteger references;
+
+    private AutomatonGraph graph;
+    private long epoch;
+    private long captureNanos;
+    private double elapsedTime;
+    private Unit<Time> elapsedTimeUnit;
+
+    private int nodeCount;
+    private AutomatonNode[] nodes;
+    private int[] identifiers;
+    private int[] rows;
+    private int[] states;
+    private int[] sections;
+    private boolean[] observed;
+    private final List<String> sectionIdentifiers;
+    private final Map<String, Integer> sectionIndices;
+
+    private List<ChemicalEntity<?>> entities;
+    private double[][] concentrations;
+    private double[] minimalConcentrations;
+    private double[] maximalConcentrations;
+    private double[] minimalPositiveConcentrations;
+
+    SimulationSnapshot(SnapshotPool pool) {
+        this.pool = pool;
+        this.references = new AtomicInteger();
+        this.nodes = new AutomatonNode[0];
+        this.identifiers = new int[0];
+        this.rows = new int[0];
+        this.states = new int[0];
+        this.sections = new int[0];
+        this.observed = new boolean[0];
+        this.sectionIdentifiers = new ArrayList<>();
+        this.sectionIndices = new HashMap<>();
+        this.entities = Collections.emptyList();
+        this.concentrations = new double[0][];
+        this.minimalConcentrations = new double[0];
+        this.maximalConcentrations = new double[0];
+        this.minimalPositiveConcentrations = new double[0];
+    }
+
+    /**
+     * Copies the clock and the structure of the simulation (node rows, states and sections). Must only be called by
+     * the thread that calculates the epochs, or while the simulation is paused.
+     *
+     * @param simulation The simulation.
+     * @param entities The entities whose concentrations are going to be copied, in the order they should be stored in.
+     */
+    void captureStructure(Simulation simulation, List<ChemicalEntity<?>> entities) {
+        this.graph = simulation.getGraph();
+        this.captureNanos = System.nanoTime();
+        this.epoch = simulation.getEpoch();
+        this.elapsedTime = simulation.getElapsedTime().getValue().doubleValue();
+        this.elapsedTimeUnit = simulation.getElapsedTime().getUnit();
+        this.entities = entities;
+        ensureCapacity(this.graph.getNodes().size(), entities.size());
+        resetConcentrationRanges();
+        Arrays.fill(this.rows, UNKNOWN_ROW);
+        int row = 0;
+        for (AutomatonNode node : this.graph.getNodes()) {
+            int identifier = node.getIdentifier();
+            this.nodes[row] = node;
+            this.identifiers[row] = identifier;
+            if (identifier >= this.rows.length) {
+                this.rows = Arrays.copyOf(this.rows, identifier * 2 + 1);
+                Arrays.fill(this.rows, identifier, this.rows.length, UNKNOWN_ROW);
+            }
+            this.rows[identifier] = row;
+            this.states[row] = node.getState().ordinal();
+            this.sections[row] = sectionIndex(node.getCellSection().getIdentifier());
+            this.observed[row] = node.isObserved();
+            row++;
+        }
+        this.nodeCount = row;
+        // do not keep nodes of a former, larger graph alive
+        Arrays.fill(this.nodes, row, this.nodes.length, null);
+    }
+
+    /**
+     * Sets the clock and the structure of a recorded frame. The concentrations are written to the arrays returned by
+     * {@link #getConcentrations(int)} afterwards.
+     */
+    void restoreStructure(AutomatonGraph graph, long epoch, double elapsedTime, Unit<Time> elapsedTimeUnit,
+                          List<ChemicalEntity<?>> entities, int nodeCount, int[] identifiers, int[] states,
+                          int[] sections, boolean[] observed, List<String> sectionIdentifiers) {
+        this.graph = graph;
+        this.captureNanos = System.nanoTime();
+        this.epoch = epoch;
+        this.elapsedTime = elapsedTime;
+        this.elapsedTimeUnit = elapsedTimeUnit;
+        this.entities = entities;
+        ensureCapacity(nodeCount, entities.size());
+        Arrays.fill(this.rows, UNKNOWN_ROW);
+        for (int row = 0; row < nodeCount; row++) {
+            int identifier = identifiers[row];
+            if (identifier >= this.rows.length) {
+                this.rows = Arrays.copyOf(this.rows, identifier * 2 + 1);
+                Arrays.fill(this.rows, identifier, this.rows.length, UNKNOWN_ROW);
+            }
+            this.rows[identifier] = row;
+        }
+        System.arraycopy(identifiers, 0, this.identifiers, 0, nodeCount);
+        System.arraycopy(states, 0, this.states, 0, nodeCount);
+        System.arraycopy(sections, 0, this.sections, 0, nodeCount);
+        System.arraycopy(observed, 0, this.observed, 0, nodeCount);
+        // recorded frames are not backed by live nodes
+        Arrays.fill(this.nodes, null);
+        this.sectionIdentifiers.clear();
+        this.sectionIndices.clear();
+        for (String sectionIdentifier : sectionIdentifiers) {
+            sectionIndex(sectionIdentifier);
+        }
+        this.nodeCount = nodeCount;
+    }
+
+    /**
+     * Creates a snapshot between two snapshots of the same graph, e.g. to animate the transition between two emitted
+     * snapshots. The structure is taken from the later snapshot, the concentrations of the given entities are
+     * interpolated linearly. Nodes that are not part of the earlier snapshot take the concentrations of the later one,
+     * entities that are not part of the later snapshot are left out. The snapshot is acquired from the pool of the
+     * later snapshot and the caller holds its only reference.
+     *
+     * @param earlier The earlier snapshot.
+     * @param later The later snapshot.
+     * @param fraction The position between both snapshots, from 0 (earlier) to 1 (later).
+     * @param entities The entities whose concentrations are interpolated.
+     * @return The interpolated snapshot.
+     */
+    public static SimulationSnapshot interpolate(SimulationSnapshot earlier, SimulationSnapshot later, double fraction,
+                                                 List<ChemicalEntity<?>> entities) {
+        List<ChemicalEntity<?>> interpolatedEntities = new ArrayList<>(entities.size());
+        for (ChemicalEntity<?> entity : entities) {
+            if (later.getEntityIndex(entity) >= 0) {
+                interpolatedEntities.add(entity);
+            }
+        }
+        double elapsedTime = later.elapsedTime;
+        if (earlier.elapsedTimeUnit != null && earlier.elapsedTimeUnit.equals(later.elapsedTimeUnit)) {
+            elapsedTime = earlier.elapsedTime + (later.elapsedTime - earlier.elapsedTime) * fraction;
+        }
+        SimulationSnapshot snapshot = later.pool.acquire();
+        snapshot.restoreStructure(later.graph, earlier.epoch + Math.round((later.epoch - earlier.epoch) * fraction),
+                elapsedTime, later.elapsedTimeUnit, interpolatedEntities, later.nodeCount, later.identifiers,
+                later.states, later.sections, later.observed, later.sectionIdentifiers);
+        // keep the time of the capture for the latency of the frame
+        snapshot.captureNanos = later.captureNanos;
+        for (int entity = 0; entity < interpolatedEntities.size(); entity++) {
+            double[] values = snapshot.concentrations[entity];
+            double[] laterValues = later.concentrations[later.getEntityIndex(interpolatedEntities.get(entity))];
+            int earlierIndex = earlier.getEntityIndex(interpolatedEntities.get(entity));
+            if (earlierIndex < 0) {
+                System.arraycopy(laterValues, 0, values, 0, later.nodeCount);
+                continue;
+            }
+            double[] earlierValues = earlier.concentrations[earlierIndex];
+            for (int row = 0; row < later.nodeCount; row++) {
+                int earlierRow = earlier.getRow(later.identifiers[row]);
+                if (earlierRow == UNKNOWN_ROW) {
+                    values[row] = laterValues[row];
+                } else {
+                    values[row] = earlierValues[earlierRow] + (laterValues[row] - earlierValues[earlierRow]) * fraction;
+                }
+            }
+        }
+        snapshot.updateConcentrationRanges();
+        return snapshot;
+    }
+
+    /**
+     * Copies the concentrations of all entities of all nodes, after the structure has been captured. Must only be
+     * called by the thread that calculates the epochs, or while the simulation is paused.
+     */
+    void copyConcentrations() {
+        for (int entity = 0; entity < this.entities.size(); entity++) {
+            ChemicalEntity<?> chemicalEntity = this.entities.get(entity);
+            double[] values = this.concentrations[entity];
+            double minimum = Double.POSITIVE_INFINITY;
+            double maximum = Double.NEGATIVE_INFINITY;
+            double minimalPositive = Double.POSITIVE_INFINITY;
+            for (int row = 0; row < this.nodeCount; row++) {
+                double value = this.nodes[row].getConcentration(chemicalEntity).getValue().doubleValue();
+                values[row] = value;
+                if (value < minimum) {
+                    minimum = value;
+                }
+                if (value > maximum) {
+                    maximum = value;
+                }
+                if (value > 0 && value < minimalPositive) {
+                    minimalPositive = value;
+                }
+            }
+            mergeConcentrationRange(entity, minimum, maximum, minimalPositive);
+        }
+    }
+
+    /**
+     * Calculates the range of the concentrations of all entities from the stored values, e.g. after they have been
+     * written to {@link #getConcentrations(int)} directly.
+     */
+    void updateConcentrationRanges() {
+        resetConcentrationRanges();
+        for (int entity = 0; entity < this.entities.size(); entity++) {
+            double[] values = this.concentrations[entity];
+            double minimum = Double.POSITIVE_INFINITY;
+            double maximum = Double.NEGATIVE_INFINITY;
+            double minimalPositive = Double.POSITIVE_INFINITY;
+            for (int row = 0; row < this.nodeCount; row++) {
+                double value = values[row];
+                if (value < minimum) {
+                    minimum = value;
+                }
+                if (value > maximum) {
+                    maximum = value;
+                }
+                if (value > 0 && value < minimalPositive) {
+                    minimalPositive = value;
+                }
+            }
+            mergeConcentrationRange(entity, minimum, maximum, minimalPositive);
+        }
+    }
+
+    private void resetConcentrationRanges() {
+        Arrays.fill(this.minimalConcentrations, Double.POSITIVE_INFINITY);
+        Arrays.fill(this.maximalConcentrations, Double.NEGATIVE_INFINITY);
+        Arrays.fill(this.minimalPositiveConcentrations, Double.POSITIVE_INFINITY);
+    }
+
+    private void mergeConcentrationRange(int entity, double minimum, double maximum, double minimalPositive) {
+        this.minimalConcentrations[entity] = Math.min(this.minimalConcentrations[entity], minimum);
+        this.maximalConcentrations[entity] = Math.max(this.maximalConcentrations[entity], maximum);
+        this.minimalPositiveConcentrations[entity] = Math.min(this.minimalPositiveConcentrations[entity], minimalPositive);
+    }
+
+    private void ensureCapacity(int nodes, int entities) {
+        if (this.identifiers.length < nodes) {
+            this.nodes = new AutomatonNode[nodes];
+            this.identifiers = new int[nodes];
+            this.states = new int[nodes];
+            this.sections = new int[nodes];
+            this.observed = new boolean[nodes];
+            this.rows = new int[nodes];
+        }
+        if (this.concentrations.length < entities) {
+            this.concentrations = Arrays.copyOf(this.concentrations, entities);
+            this.minimalConcentrations = new double[entities];
+            this.maximalConcentrations = new double[entities];
+            this.minimalPositiveConcentrations = new double[entities];
+        }
+        for (int entity = 0; entity < entities; entity++) {
+            if (this.concentrations[entity] == null || this.concentrations[entity].length < nodes) {
+                this.concentrations[entity] = new double[nodes];
+            }
+        }
+    }
+
+    private int sectionIndex(String sectionIdentifier) {
+        Integer index = this.sectionIndices.get(sectionIdentifier);
+        if (index == null) {
+            index = this.sectionIdentifiers.size();
+            this.sectionIdentifiers.add(sectionIdentifier);
+            this.sectionIndices.put(sectionIdentifier, index);
+        }
+        return index;
+    }
+
+    /**
+     * Registers an additional consumer of this snapshot.
+     *
+     * @return This snapshot.
+     */
+    public SimulationSnapshot retain() {
+        this.references.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Releases the reference of a consumer. The snapshot is returned to its pool as soon as no references are left.
+     */
+    public void release() {
+        int remaining = this.references.decrementAndGet();
+        if (remaining == 0) {
+            this.pool.recycle(this);
+        } else if (remaining < 0) {
+            throw new IllegalStateException("The snapshot has been released more often than retained.");
+        }
+    }
+
+    void setReferences(int references) {
+        this.references.set(references);
+    }
+
+    public AutomatonGraph getGraph() {
+        return this.graph;
+    }
+
+    public long getEpoch() {
+        return this.epoch;
+    }
+
+    /**
+     * Returns the value of {@link System#nanoTime()} when this snapshot was taken.
+     *
+     * @return The time of the capture.
+     */
+    public long getCaptureNanos() {
+        return this.captureNanos;
+    }
+
+    public double getElapsedTime() {
+        return this.elapsedTime;
+    }
+
+    public Unit<Time> getElapsedTimeUnit() {
+        return this.elapsedTimeUnit;
+    }
+
+    public int getNodeCount() {
+        return this.nodeCount;
+    }
+
+    public int getIdentifier(int row) {
+        return this.identifiers[row];
+    }
+
+    /**
+     * Returns the row the node with the given identifier is stored in.
+     *
+     * @param identifier The identifier of the node.
+     * @return The row or {@link #UNKNOWN_ROW} if the node was not part of the graph when the snapshot was taken.
+     */
+    public int getRow(int identifier) {
+        if (identifier < 0 || identifier >= this.rows.length) {
+            return UNKNOWN_ROW;
+        }
+        return this.rows[identifier];
+    }
+
+    public int getStateOrdinal(int row) {
+        return this.states[row];
+    }
+
+    public int getSectionIndex(int row) {
+        return this.sections[row];
+    }
+
+    public String getSectionIdentifier(int sectionIndex) {
+        return this.sectionIdentifiers.get(sectionIndex);
+    }
+
+    public int getSectionCount() {
+        return this.sectionIdentifiers.size();
+    }
+
+    public boolean isObserved(int row) {
+        return this.observed[row];
+    }
+
+    public List<ChemicalEntity<?>> getEntities() {
+        return this.entities;
+    }
+
+    /**
+     * Returns the index of the entity in this snapshot.
+     *
+     * @param entity The entity.
+     * @return The index or -1 if the concentrations of the entity were not copied.
+     */
+    public int getEntityIndex(ChemicalEntity<?> entity) {
+        return this.entities.indexOf(entity);
+    }
+
+    public double getConcentration(int entityIndex, int row) {
+        return this.concentrations[entityIndex][row];
+    }
+
+    /**
+     * Returns the smallest concentration of the entity in any node.
+     *
+     * @param entityIndex The index of the entity.
+     * @return The smallest concentration or positive infinity if no concentration was copied.
+     */
+    public double getMinimalConcentration(int entityIndex) {
+        return this.minimalConcentrations[entityIndex];
+    }
+
+    /**
+     * Returns the largest concentration of the entity in any node.
+     *
+     * @param entityIndex The index of the entity.
+     * @return The largest concentration or negative infinity if no concentration was copied.
+     */
+    public double getMaximalConcentration(int entityIndex) {
+        return this.maximalConcentrations[entityIndex];
+    }
+
+    /**
+     * Returns the smallest concentration of the entity larger than zero, as required for logarithmic scales.
+     *
+     * @param entityIndex The index of the entity.
+     * @return The smallest positive concentration or positive infinity if there is none.
+     */
+    public double getMinimalPositiveConcentration(int entityIndex) {
+        return this.minimalPositiveConcentrations[entityIndex];
+    }
+
+    /**
+     * Returns the concentrations of an entity for all rows. The array may be longer than the number of nodes and must
+     * not be modified.
+     *
+     * @param entityIndex The index of the entity.
+     * @return The concentrations.
+     */
+    public double[] getConcentrations(int entityIndex) {
+        return this.concentrations[entityIndex];
+    }
+
+}
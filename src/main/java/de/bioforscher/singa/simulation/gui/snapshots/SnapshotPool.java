@@ -0,0 +1,83 @@
+package de.bioforscher.singa.simulation.gui.snapshots;
+
+import de.bioforscher.singa.chemistry.descriptive.entities.ChemicalEntity;
+import de.bioforscher.singa.simulation.modules.model.Simulation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides {@link SimulationSnapshot}s for a simulation and takes them back, once they are no longer referenced.
+ * Recycled snapshots keep their arrays, so taking a snapshot of a graph that did not grow allocates nothing.
+ *
+ * @author cl
+ */
+public class SnapshotPool {
+
+    /**
+     * The maximal number of idle snapshots that are kept for reuse.
+     */
+    private static final int MAXIMAL_IDLE_SNAPSHOTS = 8;
+
+    private final Simulation simulation;
+    private final ConcurrentLinkedQueue<SimulationSnapshot> idleSnapshots;
+    private final AtomicInteger idleCount;
+
+    private volatile List<ChemicalEntity<?>> entities;
+
+    public SnapshotPool(Simulation simulation) {
+        this.simulation = simulation;
+        this.idleSnapshots = new ConcurrentLinkedQueue<>();
+        this.idleCount = new AtomicInteger();
+        this.entities = Collections.emptyList();
+    }
+
+    /**
+     * Copies the current state of the simulation into a snapshot. The caller holds the only reference to the returned
+     * snapshot and is responsible to release it.
+     *
+     * @return The snapshot.
+     */
+    public SimulationSnapshot capture() {
+        SimulationSnapshot snapshot = acquire();
+        snapshot.captureStructure(this.simulation, currentEntities());
+        snapshot.copyConcentrations();
+        return snapshot;
+    }
+
+    /**
+     * Returns an idle or new snapshot with a single reference, without copying anything into it.
+     *
+     * @return The snapshot.
+     */
+    SimulationSnapshot acquire() {
+        SimulationSnapshot snapshot = this.idleSnapshots.poll();
+        if (snapshot == null) {
+            snapshot = new SimulationSnapshot(this);
+        } else {
+            this.idleCount.decrementAndGet();
+        }
+        snapshot.setReferences(1);
+        return snapshot;
+    }
+
+    void recycle(SimulationSnapshot snapshot) {
+        if (this.idleCount.incrementAndGet() <= MAXIMAL_IDLE_SNAPSHOTS) {
+            this.idleSnapshots.offer(snapshot);
+        } else {
+            this.idleCount.decrementAndGet();
+        }
+    }
+
+    private List<ChemicalEntity<?>> currentEntities() {
+        // entities are only ever added, a new list is only required if the number changed
+        if (this.entities.size() != this.simulation.getChemicalEntities().size()) {
+            this.entities = Collections.unmodifiableList(new ArrayList<>(this.simulation.getChemicalEntities()));
+        }
+        return this.entities;
+    }
+
+}
@@ -0,0 +1,548 @@
+package de.bioforscher.singa.simulation.gui.snapshots;
+
+import de.bioforscher.singa.chemistry.descriptive.entities.ChemicalEntity;
+import de.bioforscher.singa.core.events.UpdateEventListener;
+import de.bioforscher.singa.simulation.gui.metrics.MetricsRegistry;
+import de.bioforscher.singa.simulation.model.graphs.AutomatonGraph;
+import de.bioforscher.singa.simulation.modules.model.Simulation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.measure.Unit;
+import javax.measure.quantity.Time;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the {@link SimulationSnapshot}s emitted by a simulation, such that every recorded frame can be displayed
+ * again without calculating the simulation a second time. Frames are encoded by a background thread: the bits of
+ * every concentration are combined with the bits of the former frame by exclusive or and only the significant bytes
+ * of the result are stored. Concentrations that did not change take half a byte, slowly changing concentrations a few
+ * bytes. Every {@value #KEYFRAME_INTERVAL}th frame (and every frame after the structure of the graph changed) is
+ * encoded against zero and can be decoded on its own.
+ * <p>
+ * Encoded frames are kept in memory up to a limit, older frames are spilled to a file that is used as a ring buffer.
+ * If the spill file is full the oldest group of frames (a key frame and its successors) is discarded.
+ *
+ * @author cl
+ */
+public class SnapshotRecorder implements UpdateEventListener<SimulationSnapshot> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotRecorder.class);
+
+    public static final String RECORDED_FRAMES = "recording.frames.recorded";
+    public static final String DROPPED_FRAMES = "recording.frames.dropped";
+    public static final String DISCARDED_FRAMES = "recording.frames.discarded";
+    public static final String SPILLED_BYTES = "recording.bytes.spilled";
+
+    public static final long DEFAULT_MEMORY_LIMIT = 256L * 1024 * 1024;
+    public static final long DEFAULT_DISK_LIMIT = 4L * 1024 * 1024 * 1024;
+
+    /**
+     * The number of frames between two key frames.
+     */
+    private static final int KEYFRAME_INTERVAL = 32;
+
+    /**
+     * The maximal number of snapshots waiting to be encoded, further snapshots are not recorded.
+     */
+    private static final int MAXIMAL_PENDING_SNAPSHOTS = 4;
+
+    private final SnapshotPool replayPool;
+    private final MetricsRegistry metrics;
+    private final ExecutorService encoder;
+    private final AtomicInteger pendingSnapshots;
+    private final long memoryLimit;
+    private final long diskLimit;
+
+    private volatile boolean recording;
+    private volatile Runnable frameRecordedHandler;
+
+    // guarded by this
+    private final List<Frame> frames;
+    private long discardedFrames;
+    private int firstFrameInMemory;
+    private long memoryBytes;
+    private FileChannel spillChannel;
+    private Path spillFile;
+    private long spillPosition;
+    private long[][] replayBits;
+    private int replayIndex;
+
+    // only accessed by the encoder
+    private FrameStructure structure;
+    private long[][] previousBits;
+    private int framesSinceKeyframe;
+    private byte[] buffer;
+
+    public SnapshotRecorder(Simulation simulation, MetricsRegistry metrics) {
+        this(simulation, metrics, DEFAULT_MEMORY_LIMIT, DEFAULT_DISK_LIMIT);
+    }
+
+    public SnapshotRecorder(Simulation simulation, MetricsRegistry metrics, long memoryLimit, long diskLimit) {
+        this.replayPool = new SnapshotPool(simulation);
+        this.metrics = metrics;
+        this.memoryLimit = memoryLimit;
+        this.diskLimit = diskLimit;
+        this.encoder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-recorder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pendingSnapshots = new AtomicInteger();
+        this.frames = new ArrayList<>();
+        this.previousBits = new long[0][];
+        this.buffer = new byte[0];
+        this.replayIndex = -1;
+    }
+
+    public boolean isRecording() {
+        return this.recording;
+    }
+
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Sets the handler that is notified every time a frame has been recorded or frames have been discarded. The handler
+     * is not called by the application thread.
+     *
+     * @param frameRecordedHandler The handler.
+     */
+    public void setFrameRecordedHandler(Runnable frameRecordedHandler) {
+        this.frameRecordedHandler = frameRecordedHandler;
+    }
+
+    @Override
+    public void onEventReceived(SimulationSnapshot snapshot) {
+        if (!this.recording) {
+            return;
+        }
+        if (this.pendingSnapshots.incrementAndGet() > MAXIMAL_PENDING_SNAPSHOTS) {
+            this.pendingSnapshots.decrementAndGet();
+            this.metrics.increment(DROPPED_FRAMES);
+            return;
+        }
+        snapshot.retain();
+        this.encoder.execute(() -> {
+            try {
+                encode(snapshot);
+            } catch (RuntimeException e) {
+                logger.error("Could not record frame of epoch {}.", snapshot.getEpoch(), e);
+            } finally {
+                snapshot.release();
+                this.pendingSnapshots.decrementAndGet();
+            }
+            notifyHandler();
+        });
+    }
+
+    /**
+     * Discards all recorded frames. Snapshots that are waiting to be encoded are recorded afterwards.
+     */
+    public void clear() {
+        this.encoder.execute(() -> {
+            synchronized (this) {
+                this.discardedFrames += this.frames.size();
+                this.frames.clear();
+                this.firstFrameInMemory = 0;
+                this.memoryBytes = 0;
+                this.spillPosition = 0;
+                this.replayIndex = -1;
+            }
+            // the next frame starts a new key frame
+            this.structure = null;
+            notifyHandler();
+        });
+    }
+
+    private void notifyHandler() {
+        Runnable handler = this.frameRecordedHandler;
+        if (handler != null) {
+            handler.run();
+        }
+    }
+
+    /**
+     * Returns the number of the oldest frame that is still available. Frames are numbered continuously from the start
+     * of the recording, discarded frames keep their numbers.
+     *
+     * @return The number of the first frame.
+     */
+    public synchronized long getFirstFrame() {
+        return this.discardedFrames;
+    }
+
+    /**
+     * Returns the number of the latest recorded frame.
+     *
+     * @return The number of the last frame or {@link #getFirstFrame()} - 1 if no frames are available.
+     */
+    public synchronized long getLastFrame() {
+        return this.discardedFrames + this.frames.size() - 1;
+    }
+
+    public synchronized int getFrameCount() {
+        return this.frames.size();
+    }
+
+    public synchronized long getEpoch(long frameNumber) {
+        return this.frames.get(index(frameNumber)).epoch;
+    }
+
+    public synchronized double getElapsedTime(long frameNumber) {
+        return this.frames.get(index(frameNumber)).elapsedTime;
+    }
+
+    /**
+     * Decodes the recorded frame with the given number. The caller is responsible to release the snapshot.
+     *
+     * @param frameNumber The number of the frame.
+     * @return The snapshot.
+     */
+    public synchronized SimulationSnapshot reconstruct(long frameNumber) {
+        int index = index(frameNumber);
+        Frame frame = this.frames.get(index);
+        FrameStructure frameStructure = frame.structure;
+        int keyframeIndex = index;
+        while (!this.frames.get(keyframeIndex).keyframe) {
+            keyframeIndex--;
+        }
+        // continue from the frame decoded last, if it precedes the requested one in the same group
+        int decodeFrom = keyframeIndex;
+        if (this.replayIndex >= keyframeIndex && this.replayIndex <= index &&
+                this.frames.get(this.replayIndex).structure == frameStructure) {
+            decodeFrom = this.replayIndex + 1;
+        } else {
+            this.replayBits = ensureBits(this.replayBits, frameStructure.entities.size(), frameStructure.nodeCount);
+        }
+        for (int current = decodeFrom; current <= index; current++) {
+            decode(this.frames.get(current), this.replayBits);
+        }
+        this.replayIndex = index;
+
+        SimulationSnapshot snapshot = this.replayPool.acquire();
+        snapshot.restoreStructure(frameStructure.graph, frame.epoch, frame.elapsedTime, frameStructure.elapsedTimeUnit,
+                frameStructure.entities, frameStructure.nodeCount, frameStructure.identifiers, frameStructure.states,
+                frameStructure.sections, frameStructure.observed, frameStructure.sectionIdentifiers);
+        for (int entity = 0; entity < frameStructure.entities.size(); entity++) {
+            double[] concentrations = snapshot.getConcentrations(entity);
+            long[] bits = this.replayBits[entity];
+            for (int row = 0; row < frameStructure.nodeCount; row++) {
+                concentrations[row] = Double.longBitsToDouble(bits[row]);
+            }
+        }
+        snapshot.updateConcentrationRanges();
+        return snapshot;
+    }
+
+    private int index(long frameNumber) {
+        long index = frameNumber - this.discardedFrames;
+        if (index < 0 || index >= this.frames.size()) {
+            throw new IndexOutOfBoundsException("Frame " + frameNumber + " is not available.");
+        }
+        return (int) index;
+    }
+
+    private void encode(SimulationSnapshot snapshot) {
+        boolean keyframe = false;
+        if (this.structure == null || !this.structure.matches(snapshot)) {
+            this.structure = new FrameStructure(snapshot);
+            keyframe = true;
+        } else if (this.framesSinceKeyframe >= KEYFRAME_INTERVAL - 1) {
+            keyframe = true;
+        }
+        int nodes = this.structure.nodeCount;
+        int entities = this.structure.entities.size();
+        this.previousBits = ensureBits(this.previousBits, entities, nodes);
+        int maximalLength = entities * (nodes * Long.BYTES + (nodes + 1) / 2);
+        if (this.buffer.length < maximalLength) {
+            this.buffer = new byte[maximalLength];
+        }
+
+        int position = 0;
+        for (int entity = 0; entity < entities; entity++) {
+            double[] concentrations = snapshot.getConcentrations(entity);
+            long[] previous = this.previousBits[entity];
+            for (int row = 0; row < nodes; row += 2) {
+                long bits = Double.doubleToRawLongBits(concentrations[row]);
+                long difference = keyframe ? bits : bits ^ previous[row];
+                previous[row] = bits;
+                int length = significantBytes(difference);
+                long secondDifference = 0;
+                int secondLength = 0;
+                if (row + 1 < nodes) {
+                    long secondBits = Double.doubleToRawLongBits(concentrations[row + 1]);
+                    secondDifference = keyframe ? secondBits : secondBits ^ previous[row + 1];
+                    previous[row + 1] = secondBits;
+                    secondLength = significantBytes(secondDifference);
+                }
+                this.buffer[position++] = (byte) (length << 4 | secondLength);
+                position = writeBytes(difference, length, position);
+                position = writeBytes(secondDifference, secondLength, position);
+            }
+        }
+        this.framesSinceKeyframe = keyframe ? 0 : this.framesSinceKeyframe + 1;
+
+        Frame frame = new Frame(snapshot.getEpoch(), snapshot.getElapsedTime(), this.structure, keyframe,
+                Arrays.copyOf(this.buffer, position));
+        synchronized (this) {
+            this.frames.add(frame);
+            this.memoryBytes += frame.length;
+            spillFrames();
+        }
+        this.metrics.increment(RECORDED_FRAMES);
+    }
+
+    private static int significantBytes(long value) {
+        return (Long.SIZE - Long.numberOfLeadingZeros(value) + 7) / 8;
+    }
+
+    private int writeBytes(long value, int length, int position) {
+        for (int i = 0; i < length; i++) {
+            this.buffer[position++] = (byte) (value >>> (i * 8));
+        }
+        return position;
+    }
+
+    private void decode(Frame frame, long[][] bits) {
+        byte[] data = readData(frame);
+        int nodes = frame.structure.nodeCount;
+        int position = 0;
+        for (int entity = 0; entity < frame.structure.entities.size(); entity++) {
+            long[] values = bits[entity];
+            for (int row = 0; row < nodes; row += 2) {
+                int lengths = data[position++] & 0xFF;
+                int length = lengths >>> 4;
+                long difference = 0;
+                for (int i = 0; i < length; i++) {
+                    difference |= (data[position++] & 0xFFL) << (i * 8);
+                }
+                values[row] = frame.keyframe ? difference : values[row] ^ difference;
+                if (row + 1 < nodes) {
+                    int secondLength = lengths & 0x0F;
+                    long secondDifference = 0;
+                    for (int i = 0; i < secondLength; i++) {
+                        secondDifference |= (data[position++] & 0xFFL) << (i * 8);
+                    }
+                    values[row + 1] = frame.keyframe ? secondDifference : values[row + 1] ^ secondDifference;
+                }
+            }
+        }
+    }
+
+    private static long[][] ensureBits(long[][] bits, int entities, int nodes) {
+        if (bits == null || bits.length < entities) {
+            bits = bits == null ? new long[entities][] : Arrays.copyOf(bits, entities);
+        }
+        for (int entity = 0; entity < entities; entity++) {
+            if (bits[entity] == null || bits[entity].length < nodes) {
+                bits[entity] = new long[nodes];
+            }
+        }
+        return bits;
+    }
+
+    private byte[] readData(Frame frame) {
+        if (frame.data != null) {
+            return frame.data;
+        }
+        ByteBuffer data = ByteBuffer.allocate(frame.length);
+        try {
+            while (data.hasRemaining()) {
+                if (this.spillChannel.read(data, frame.spillOffset + data.position()) < 0) {
+                    throw new IOException("The spill file ended unexpectedly.");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read recorded frame from " + this.spillFile + ".", e);
+        }
+        return data.array();
+    }
+
+    private void spillFrames() {
+        while (this.memoryBytes > this.memoryLimit && this.firstFrameInMemory < this.frames.size()) {
+            Frame frame = this.frames.get(this.firstFrameInMemory);
+            if (frame.length > this.diskLimit) {
+                discardOldestGroup();
+                continue;
+            }
+            long offset = this.spillPosition;
+            if (offset + frame.length > this.diskLimit) {
+                // wrap around
+                offset = 0;
+            }
+            // discard the frames that are going to be overwritten
+            boolean overlapping = true;
+            while (overlapping && this.firstFrameInMemory > 0) {
+                Frame oldestFrame = this.frames.get(0);
+                overlapping = oldestFrame.spillOffset < offset + frame.length &&
+                        offset < oldestFrame.spillOffset + oldestFrame.length;
+                if (overlapping) {
+                    discardOldestGroup();
+                }
+            }
+            if (this.firstFrameInMemory >= this.frames.size() || this.frames.get(this.firstFrameInMemory) != frame) {
+                // the group of the frame has been discarded
+                continue;
+            }
+            try {
+                writeSpilledData(frame.data, offset);
+            } catch (IOException e) {
+                logger.error("Could not spill recorded frames to disk, discarding them instead.", e);
+                discardOldestGroup();
+                continue;
+            }
+            this.memoryBytes -= frame.length;
+            this.metrics.add(SPILLED_BYTES, frame.length);
+            frame.spillOffset = offset;
+            frame.data = null;
+            this.spillPosition = offset + frame.length;
+            this.firstFrameInMemory++;
+        }
+    }
+
+    private void writeSpilledData(byte[] data, long offset) throws IOException {
+        if (this.spillChannel == null) {
+            this.spillFile = Files.createTempFile("singa-recording", ".bin");
+            this.spillFile.toFile().deleteOnExit();
+            this.spillChannel = FileChannel.open(this.spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+            logger.info("Spilling recorded frames to {}.", this.spillFile);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            this.spillChannel.write(buffer, offset + buffer.position());
+        }
+    }
+
+    private void discardOldestGroup() {
+        int end = 1;
+        while (end < this.frames.size() && !this.frames.get(end).keyframe) {
+            end++;
+        }
+        for (int index = 0; index < end; index++) {
+            Frame frame = this.frames.get(index);
+            if (frame.data != null) {
+                this.memoryBytes -= frame.length;
+            }
+        }
+        this.frames.subList(0, end).clear();
+        this.discardedFrames += end;
+        this.firstFrameInMemory = Math.max(0, this.firstFrameInMemory - end);
+        this.replayIndex = this.replayIndex >= end ? this.replayIndex - end : -1;
+        this.metrics.add(DISCARDED_FRAMES, end);
+    }
+
+    /**
+     * Stops recording and releases the spill file.
+     */
+    public void shutdown() {
+        this.recording = false;
+        this.encoder.shutdownNow();
+        synchronized (this) {
+            if (this.spillChannel != null) {
+                try {
+                    this.spillChannel.close();
+                } catch (IOException e) {
+                    logger.warn("Could not close spill file {}.", this.spillFile, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A recorded and encoded frame.
+     */
+    private static class Frame {
+
+        private final long epoch;
+        private final double elapsedTime;
+        private final FrameStructure structure;
+        private final boolean keyframe;
+        private final int length;
+        private byte[] data;
+        private long spillOffset;
+
+        Frame(long epoch, double elapsedTime, FrameStructure structure, boolean keyframe, byte[] data) {
+            this.epoch = epoch;
+            this.elapsedTime = elapsedTime;
+            this.structure = structure;
+            this.keyframe = keyframe;
+            this.data = data;
+            this.length = data.length;
+        }
+
+    }
+
+    /**
+     * The structure of the graph shared by consecutive frames.
+     */
+    private static class FrameStructure {
+
+        private final AutomatonGraph graph;
+        private final Unit<Time> elapsedTimeUnit;
+        private final List<ChemicalEntity<?>> entities;
+        private final int nodeCount;
+        private final int[] identifiers;
+        private final int[] states;
+        private final int[] sections;
+        private final boolean[] observed;
+        private final List<String> sectionIdentifiers;
+
+        FrameStructure(SimulationSnapshot snapshot) {
+            this.graph = snapshot.getGraph();
+            this.elapsedTimeUnit = snapshot.getElapsedTimeUnit();
+            this.entities = snapshot.getEntities();
+            this.nodeCount = snapshot.getNodeCount();
+            this.identifiers = new int[this.nodeCount];
+            this.states = new int[this.nodeCount];
+            this.sections = new int[this.nodeCount];
+            this.observed = new boolean[this.nodeCount];
+            this.sectionIdentifiers = new ArrayList<>();
+            for (int section = 0; section < snapshot.getSectionCount(); section++) {
+                this.sectionIdentifiers.add(snapshot.getSectionIdentifier(section));
+            }
+            for (int row = 0; row < this.nodeCount; row++) {
+                this.identifiers[row] = snapshot.getIdentifier(row);
+                this.states[row] = snapshot.getStateOrdinal(row);
+                this.sections[row] = snapshot.getSectionIndex(row);
+                this.observed[row] = snapshot.isObserved(row);
+            }
+        }
+
+        boolean matches(SimulationSnapshot snapshot) {
+            if (snapshot.getGraph() != this.graph || snapshot.getEntities() != this.entities ||
+                    snapshot.getNodeCount() != this.nodeCount) {
+                return false;
+            }
+            for (int row = 0; row < this.nodeCount; row++) {
+                if (this.identifiers[row] != snapshot.getIdentifier(row) ||
+                        this.states[row] != snapshot.getStateOrdinal(row) ||
+                        this.observed[row] != snapshot.isObserved(row)) {
+                    return false;
+                }
+                // section indices are assigned per snapshot, the identifiers are compared instead
+                if (!this.sectionIdentifiers.get(this.sections[row])
+                        .equals(snapshot.getSectionIdentifier(snapshot.getSectionIndex(row)))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,193 @@
+package de.bioforscher.singa.simulation.gui.spatial;
+
+import de.bioforscher.singa.simulation.gui.renderer.GraphGeometry;
+
+import java.util.function.IntConsumer;
+
+/**
+ * A uniform grid over the positions of the nodes of a {@link GraphGeometry}. The size of the cells is chosen such that
+ * every cell contains about {@value #NODES_PER_CELL} nodes, the rows of the nodes in every cell are stored in
+ * compressed sparse rows. Queries only visit the cells that overlap the queried area, such that picking a node takes
+ * the same time regardless of the size of the graph. The index is a copy: it has to be rebuilt together with the
+ * geometry.
+ *
+ * @author cl
+ */
+public class NodeIndex {
+
+    private static final int NODES_PER_CELL = 2;
+
+    private final GraphGeometry geometry;
+    private final double minimalX;
+    private final double minimalY;
+    private final double cellSize;
+    private final int columns;
+    private final int cellRows;
+    private final int[] cellOffsets;
+    private final int[] rows;
+
+    public NodeIndex(GraphGeometry geometry) {
+        this.geometry = geometry;
+        int nodeCount = geometry.getNodeCount();
+        double minimalX = Double.POSITIVE_INFINITY;
+        double minimalY = Double.POSITIVE_INFINITY;
+        double maximalX = Double.NEGATIVE_INFINITY;
+        double maximalY = Double.NEGATIVE_INFINITY;
+        for (int row = 0; row < nodeCount; row++) {
+            minimalX = Math.min(minimalX, geometry.getX(row));
+            minimalY = Math.min(minimalY, geometry.getY(row));
+            maximalX = Math.max(maximalX, geometry.getX(row));
+            maximalY = Math.max(maximalY, geometry.getY(row));
+        }
+        if (nodeCount == 0) {
+            minimalX = minimalY = maximalX = maximalY = 0;
+        }
+        this.minimalX = minimalX;
+        this.minimalY = minimalY;
+        double width = Math.max(maximalX - minimalX, 1.0);
+        double height = Math.max(maximalY - minimalY, 1.0);
+        this.cellSize = Math.max(Math.sqrt(width * height * NODES_PER_CELL / Math.max(nodeCount, 1)), 1.0);
+        this.columns = (int) (width / this.cellSize) + 1;
+        this.cellRows = (int) (height / this.cellSize) + 1;
+
+        // count nodes per cell, accumulate offsets and fill
+        this.cellOffsets = new int[this.columns * this.cellRows + 1];
+        int[] cells = new int[nodeCount];
+        for (int row = 0; row < nodeCount; row++) {
+            cells[row] = cell(column(geometry.getX(row)), cellRow(geometry.getY(row)));
+            this.cellOffsets[cells[row] + 1]++;
+        }
+        for (int cell = 0; cell < this.columns * this.cellRows; cell++) {
+            this.cellOffsets[cell + 1] += this.cellOffsets[cell];
+        }
+        this.rows = new int[nodeCount];
+        int[] fill = new int[this.columns * this.cellRows];
+        System.arraycopy(this.cellOffsets, 0, fill, 0, fill.length);
+        for (int row = 0; row < nodeCount; row++) {
+            this.rows[fill[cells[row]]++] = row;
+        }
+    }
+
+    public GraphGeometry getGeometry() {
+        return this.geometry;
+    }
+
+    /**
+     * Returns the node closest to the given position that is not farther away than the given radius.
+     *
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @param radius The maximal distance.
+     * @return The row of the node or {@link GraphGeometry#UNKNOWN_ROW} if there is none.
+     */
+    public int nearest(double x, double y, double radius) {
+        int nearestRow = GraphGeometry.UNKNOWN_ROW;
+        double nearestDistance = radius * radius;
+        int fromColumn = column(x - radius);
+        int toColumn = column(x + radius);
+        int toRow = cellRow(y + radius);
+        for (int cellRow = cellRow(y - radius); cellRow <= toRow; cellRow++) {
+            for (int column = fromColumn; column <= toColumn; column++) {
+                int cell = cell(column, cellRow);
+                for (int position = this.cellOffsets[cell]; position < this.cellOffsets[cell + 1]; position++) {
+                    int row = this.rows[position];
+                    double deltaX = this.geometry.getX(row) - x;
+                    double deltaY = this.geometry.getY(row) - y;
+                    double distance = deltaX * deltaX + deltaY * deltaY;
+                    if (distance <= nearestDistance) {
+                        nearestDistance = distance;
+                        nearestRow = row;
+                    }
+                }
+            }
+        }
+        return nearestRow;
+    }
+
+    /**
+     * Passes the rows of all nodes inside the given rectangle (bounds inclusive) to the consumer.
+     *
+     * @param minimalX The left bound.
+     * @param minimalY The upper bound.
+     * @param maximalX The right bound.
+     * @param maximalY The lower bound.
+     * @param consumer The consumer of the rows.
+     */
+    public void forEachInRectangle(double minimalX, double minimalY, double maximalX, double maximalY,
+                                   IntConsumer consumer) {
+        int fromColumn = column(minimalX);
+        int toColumn = column(maximalX);
+        int toRow = cellRow(maximalY);
+        for (int cellRow = cellRow(minimalY); cellRow <= toRow; cellRow++) {
+            for (int column = fromColumn; column <= toColumn; column++) {
+                int cell = cell(column, cellRow);
+                for (int position = this.cellOffsets[cell]; position < this.cellOffsets[cell + 1]; position++) {
+                    int row = this.rows[position];
+                    double x = this.geometry.getX(row);
+                    double y = this.geometry.getY(row);
+                    if (x >= minimalX && x <= maximalX && y >= minimalY && y <= maximalY) {
+                        consumer.accept(row);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes the rows of all nodes inside the given polygon to the consumer. The polygon is closed implicitly, nodes
+     * are tested with the even-odd rule.
+     *
+     * @param xs The x coordinates of the vertices.
+     * @param ys The y coordinates of the vertices.
+     * @param vertexCount The number of vertices.
+     * @param consumer The consumer of the rows.
+     */
+    public void forEachInPolygon(double[] xs, double[] ys, int vertexCount, IntConsumer consumer) {
+        if (vertexCount < 3) {
+            return;
+        }
+        double minimalX = Double.POSITIVE_INFINITY;
+        double minimalY = Double.POSITIVE_INFINITY;
+        double maximalX = Double.NEGATIVE_INFINITY;
+        double maximalY = Double.NEGATIVE_INFINITY;
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            minimalX = Math.min(minimalX, xs[vertex]);
+            minimalY = Math.min(minimalY, ys[vertex]);
+            maximalX = Math.max(maximalX, xs[vertex]);
+            maximalY = Math.max(maximalY, ys[vertex]);
+        }
+        forEachInRectangle(minimalX, minimalY, maximalX, maximalY, row -> {
+            if (isInPolygon(xs, ys, vertexCount, this.geometry.getX(row), this.geometry.getY(row))) {
+                consumer.accept(row);
+            }
+        });
+    }
+
+    private static boolean isInPolygon(double[] xs, double[] ys, int vertexCount, double x, double y) {
+        boolean inside = false;
+        for (int current = 0, previous = vertexCount - 1; current < vertexCount; previous = current++) {
+            if ((ys[current] > y) != (ys[previous] > y) &&
+                    x < (xs[previous] - xs[current]) * (y - ys[current]) / (ys[previous] - ys[current]) + xs[current]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    private int column(double x) {
+        return clamp((int) Math.floor((x - this.minimalX) / this.cellSize), this.columns);
+    }
+
+    private int cellRow(double y) {
+        return clamp((int) Math.floor((y - this.minimalY) / this.cellSize), this.cellRows);
+    }
+
+    private int cell(int column, int cellRow) {
+        return cellRow * this.columns + column;
+    }
+
+    private static int clamp(int value, int size) {
+        return value < 0 ? 0 : value >= size ? size - 1 : value;
+    }
+
+}